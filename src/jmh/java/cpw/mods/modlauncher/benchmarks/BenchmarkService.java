@@ -0,0 +1,84 @@
+/*
+ * ModLauncher - for launching Java programs with in-flight transformation ability.
+ *
+ *     Copyright (C) 2017-2019 cpw
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Lesser General Public License as published by
+ *     the Free Software Foundation, version 3 of the License.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Lesser General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Lesser General Public License
+ *     along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package cpw.mods.modlauncher.benchmarks;
+
+import cpw.mods.modlauncher.*;
+import cpw.mods.modlauncher.api.*;
+import org.powermock.reflect.Whitebox;
+
+import java.util.*;
+import java.util.function.Consumer;
+
+/**
+ * A transformation service with a fixed list of transformers, which always vote to transform
+ */
+final class BenchmarkService implements ITransformationService {
+    private final List<ITransformer<?>> transformers = new ArrayList<>();
+
+    record Transformer<T>(TargetType<T> type, Set<Target<T>> targets, Consumer<T> action) implements ITransformer<T> {
+        @Override
+        public T transform(final T input, final ITransformerVotingContext context) {
+            action.accept(input);
+            return input;
+        }
+
+        @Override
+        public TransformerVoteResult castVote(final ITransformerVotingContext context) {
+            return TransformerVoteResult.YES;
+        }
+
+        @Override
+        public TargetType<T> getTargetType() {
+            return type;
+        }
+    }
+
+    <T> BenchmarkService add(final TargetType<T> type, final ITransformer.Target<T> target, final Consumer<T> action) {
+        transformers.add(new Transformer<>(type, Set.of(target), action));
+        return this;
+    }
+
+    /**
+     * @return a frozen store holding this service's transformers
+     */
+    TransformStore buildStore() throws Exception {
+        final TransformStore transformStore = new TransformStore();
+        new TransformationServiceDecorator(this).gatherTransformers(transformStore);
+        Whitebox.invokeMethod(transformStore, "freeze");
+        return transformStore;
+    }
+
+    @Override
+    public String name() {
+        return "benchmark";
+    }
+
+    @Override
+    public void initialize(final IEnvironment environment) {
+    }
+
+    @Override
+    public void onLoad(final IEnvironment env, final Set<String> otherServices) {
+    }
+
+    @Override
+    public List<? extends ITransformer<?>> transformers() {
+        return transformers;
+    }
+}
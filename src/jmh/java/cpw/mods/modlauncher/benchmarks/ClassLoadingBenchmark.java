@@ -0,0 +1,95 @@
+/*
+ * ModLauncher - for launching Java programs with in-flight transformation ability.
+ *
+ *     Copyright (C) 2017-2019 cpw
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Lesser General Public License as published by
+ *     the Free Software Foundation, version 3 of the License.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Lesser General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Lesser General Public License
+ *     along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package cpw.mods.modlauncher.benchmarks;
+
+import cpw.mods.modlauncher.TransformingClassLoader;
+import cpw.mods.modlauncher.api.ITransformer;
+import cpw.mods.modlauncher.api.TargetType;
+import org.objectweb.asm.Opcodes;
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Loads a module of generated classes through a fresh {@link TransformingClassLoader} from several threads at once.
+ * Every fourth class is transformed.
+ */
+@State(Scope.Benchmark)
+public class ClassLoadingBenchmark {
+    @Param({"1", "4", "16"})
+    public int threads;
+    @Param({"500"})
+    public int classes;
+
+    private Path jar;
+    private BenchmarkService service;
+    private List<String> classNames;
+    private ExecutorService executor;
+    private TransformingClassLoader classLoader;
+
+    @Setup
+    public void setup() throws Exception {
+        final Map<String, byte[]> generated = new LinkedHashMap<>();
+        service = new BenchmarkService();
+        classNames = new ArrayList<>();
+        for (int i = 0; i < classes; i++) {
+            final String name = GeneratedClasses.PACKAGE + "Loaded" + i;
+            generated.put(name, GeneratedClasses.generate(name, "java/lang/Object", GeneratedClasses.Size.SMALL));
+            classNames.add(name.replace('/', '.'));
+            if (i % 4 == 0) {
+                service.add(TargetType.FIELD, ITransformer.Target.targetField(name.replace('/', '.'), "field0"), field -> field.access |= Opcodes.ACC_VOLATILE);
+            }
+        }
+        jar = GeneratedClasses.writeJar(generated);
+        executor = Executors.newFixedThreadPool(threads);
+    }
+
+    @Setup(Level.Invocation)
+    public void newClassLoader() throws Exception {
+        classLoader = FrameComputationBenchmark.classLoader(jar, service.buildStore());
+    }
+
+    @TearDown
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    @Benchmark
+    public int loadClasses() throws Exception {
+        final List<Callable<Class<?>>> tasks = new ArrayList<>(threads);
+        for (int t = 0; t < threads; t++) {
+            final int offset = t;
+            tasks.add(() -> {
+                Class<?> last = null;
+                // each thread starts at a different class, so they meet on the same classes from different sides
+                for (int i = 0; i < classNames.size(); i++) {
+                    last = Class.forName(classNames.get((i + offset * classNames.size() / threads) % classNames.size()), false, classLoader);
+                }
+                return last;
+            });
+        }
+        int loaded = 0;
+        for (Future<Class<?>> result : executor.invokeAll(tasks)) {
+            if (result.get() != null) loaded++;
+        }
+        return loaded;
+    }
+}
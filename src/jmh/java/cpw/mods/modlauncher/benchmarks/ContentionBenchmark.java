@@ -0,0 +1,118 @@
+/*
+ * ModLauncher - for launching Java programs with in-flight transformation ability.
+ *
+ *     Copyright (C) 2017-2019 cpw
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Lesser General Public License as published by
+ *     the Free Software Foundation, version 3 of the License.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Lesser General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Lesser General Public License
+ *     along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package cpw.mods.modlauncher.benchmarks;
+
+import cpw.mods.modlauncher.TransformingClassLoader;
+import cpw.mods.modlauncher.api.ITransformer;
+import cpw.mods.modlauncher.api.TargetType;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.tree.InsnNode;
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Loads and links a tree of interdependent classes through a fresh {@link TransformingClassLoader}, with an empty
+ * hierarchy cache, from an increasing number of threads. Every class is transformed and needs its frames
+ * recomputed from the hierarchies of other classes in the tree.
+ *
+ * In {@code loadShared} every thread loads every class, so threads collide on the same classes. In
+ * {@code loadPartitioned} each thread loads its own share, so the time per operation against the thread count
+ * shows how class loading scales.
+ */
+@State(Scope.Benchmark)
+public class ContentionBenchmark {
+    @Param({"1", "2", "4", "8", "16", "32"})
+    public int threads;
+    @Param({"4000"})
+    public int classes;
+
+    private Path jar;
+    private BenchmarkService service;
+    private List<String> classNames;
+    private ExecutorService executor;
+    private TransformingClassLoader classLoader;
+
+    @Setup
+    public void setup() throws Exception {
+        final Map<String, byte[]> tree = GeneratedClasses.tree(classes);
+        service = new BenchmarkService();
+        classNames = new ArrayList<>();
+        for (String name : tree.keySet()) {
+            final String className = name.replace('/', '.');
+            classNames.add(className);
+            service.add(TargetType.METHOD, ITransformer.Target.targetMethod(className, "pick", "(Z)Ljava/lang/Object;"), method -> method.instructions.insert(new InsnNode(Opcodes.NOP)));
+        }
+        jar = GeneratedClasses.writeJar(tree);
+        executor = Executors.newFixedThreadPool(threads);
+    }
+
+    @Setup(Level.Invocation)
+    public void newClassLoader() throws Exception {
+        FrameComputationBenchmark.clearHierarchyCache();
+        classLoader = FrameComputationBenchmark.classLoader(jar, service.buildStore());
+    }
+
+    @TearDown
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    @Benchmark
+    public int loadShared() throws Exception {
+        final int size = classNames.size();
+        return run(thread -> {
+            for (int i = 0; i < size; i++) {
+                Class.forName(classNames.get((i + thread * size / threads) % size), true, classLoader);
+            }
+        });
+    }
+
+    @Benchmark
+    public int loadPartitioned() throws Exception {
+        return run(thread -> {
+            for (int i = thread; i < classNames.size(); i += threads) {
+                Class.forName(classNames.get(i), true, classLoader);
+            }
+        });
+    }
+
+    private interface Loader {
+        void load(int thread) throws Exception;
+    }
+
+    private int run(final Loader loader) throws Exception {
+        final List<Callable<Void>> tasks = new ArrayList<>(threads);
+        for (int t = 0; t < threads; t++) {
+            final int thread = t;
+            tasks.add(() -> {
+                loader.load(thread);
+                return null;
+            });
+        }
+        int finished = 0;
+        for (Future<Void> result : executor.invokeAll(tasks)) {
+            result.get();
+            finished++;
+        }
+        return finished;
+    }
+}
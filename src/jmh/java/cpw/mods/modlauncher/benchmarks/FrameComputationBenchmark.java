@@ -0,0 +1,103 @@
+/*
+ * ModLauncher - for launching Java programs with in-flight transformation ability.
+ *
+ *     Copyright (C) 2017-2019 cpw
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Lesser General Public License as published by
+ *     the Free Software Foundation, version 3 of the License.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Lesser General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Lesser General Public License
+ *     along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package cpw.mods.modlauncher.benchmarks;
+
+import cpw.mods.cl.JarModuleFinder;
+import cpw.mods.jarhandling.SecureJar;
+import cpw.mods.modlauncher.*;
+import cpw.mods.modlauncher.api.ITransformer;
+import cpw.mods.modlauncher.api.ITransformerActivity;
+import cpw.mods.modlauncher.api.TargetType;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.tree.InsnNode;
+import org.openjdk.jmh.annotations.*;
+import org.powermock.reflect.Whitebox;
+
+import java.lang.module.Configuration;
+import java.lang.module.ModuleFinder;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Rewrites a method merging two classes at the bottom of a deep hierarchy, so {@code TransformerClassWriter} has to
+ * find their common super class. Cold runs start from an empty hierarchy cache and read every class in the chain.
+ */
+@State(Scope.Benchmark)
+public class FrameComputationBenchmark {
+    private static final String CLASS_NAME = GeneratedClasses.PACKAGE.replace('/', '.') + "Merge";
+
+    @Param({"4", "32", "128"})
+    public int depth;
+
+    private ClassTransformer classTransformer;
+    private byte[] classBytes;
+
+    @Setup
+    public void setup() throws Exception {
+        final Map<String, byte[]> classes = GeneratedClasses.hierarchy(depth);
+        classBytes = classes.get(GeneratedClasses.PACKAGE + "Merge");
+        final BenchmarkService service = new BenchmarkService()
+                .add(TargetType.METHOD, ITransformer.Target.targetMethod(CLASS_NAME, "pick", "(Z)Ljava/lang/Object;"), method -> method.instructions.insert(new InsnNode(Opcodes.NOP)));
+        final TransformingClassLoader tcl = classLoader(GeneratedClasses.writeJar(classes), service.buildStore());
+        classTransformer = Whitebox.getInternalState(tcl, "classTransformer");
+    }
+
+    /**
+     * A class loader for the generated module in the given jar, in a layer of its own
+     */
+    static TransformingClassLoader classLoader(final Path jar, final TransformStore transformStore) throws Exception {
+        final JarModuleFinder finder = JarModuleFinder.of(SecureJar.from(jar));
+        final Configuration configuration = ModuleLayer.boot().configuration().resolveAndBind(finder, ModuleFinder.ofSystem(), Set.of(GeneratedClasses.MODULE));
+        final Environment environment = Whitebox.invokeConstructor(Environment.class, new Class[] { Launcher.class }, new Object[] { null });
+        final ModuleLayerHandler layerHandler = Whitebox.invokeConstructor(ModuleLayerHandler.class);
+        final TransformingClassLoader tcl = new TransformingClassLoader(transformStore, new LaunchPluginHandler(layerHandler), environment, configuration, List.of(ModuleLayer.boot()));
+        ModuleLayer.boot().defineModules(configuration, s -> tcl);
+        return tcl;
+    }
+
+    @State(Scope.Thread)
+    public static class EmptyHierarchyCache {
+        @Setup(Level.Invocation)
+        public void clear() throws Exception {
+            clearHierarchyCache();
+        }
+    }
+
+    static void clearHierarchyCache() throws Exception {
+        final Object table = Whitebox.invokeMethod(Class.forName("cpw.mods.modlauncher.TransformerClassWriter"), "getClassHierarchies");
+        Whitebox.invokeMethod(table, "clear");
+    }
+
+    @TearDown(Level.Iteration)
+    public void clearLog() {
+        PipelineBenchmark.clearAuditTrail(classTransformer);
+    }
+
+    @Benchmark
+    public byte[] computeFramesWarm() throws Throwable {
+        return (byte[]) PipelineBenchmark.TRANSFORM.invokeExact(classTransformer, classBytes, CLASS_NAME, ITransformerActivity.CLASSLOADING_REASON);
+    }
+
+    @Benchmark
+    public byte[] computeFramesCold(final EmptyHierarchyCache cache) throws Throwable {
+        return (byte[]) PipelineBenchmark.TRANSFORM.invokeExact(classTransformer, classBytes, CLASS_NAME, ITransformerActivity.CLASSLOADING_REASON);
+    }
+}
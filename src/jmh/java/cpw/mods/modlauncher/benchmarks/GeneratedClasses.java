@@ -0,0 +1,234 @@
+/*
+ * ModLauncher - for launching Java programs with in-flight transformation ability.
+ *
+ *     Copyright (C) 2017-2019 cpw
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Lesser General Public License as published by
+ *     the Free Software Foundation, version 3 of the License.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Lesser General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Lesser General Public License
+ *     along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package cpw.mods.modlauncher.benchmarks;
+
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Label;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.jar.Attributes;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+
+/**
+ * Generates the classes the benchmarks transform and load
+ */
+final class GeneratedClasses {
+    static final String MODULE = "cpw.mods.modlauncher.benchmarks.generated";
+    static final String PACKAGE = "cpw/mods/modlauncher/benchmarks/generated/";
+
+    enum Size {
+        SMALL(2, 4, 8),
+        MEDIUM(20, 40, 64),
+        HUGE(200, 400, 512);
+
+        final int fields;
+        final int methods;
+        final int instructions;
+
+        Size(final int fields, final int methods, final int instructions) {
+            this.fields = fields;
+            this.methods = methods;
+            this.instructions = instructions;
+        }
+    }
+
+    private GeneratedClasses() {
+    }
+
+    /**
+     * A class with fields {@code field0..}, and methods {@code method0..} each holding a loop, so they have frames
+     */
+    static byte[] generate(final String internalName, final String superName, final Size size) {
+        final ClassWriter cw = new ClassWriter(ClassWriter.COMPUTE_FRAMES) {
+            @Override
+            protected String getCommonSuperClass(final String type1, final String type2) {
+                return "java/lang/Object";
+            }
+        };
+        cw.visit(Opcodes.V17, Opcodes.ACC_PUBLIC | Opcodes.ACC_SUPER, internalName, null, superName, null);
+        for (int i = 0; i < size.fields; i++) {
+            cw.visitField(Opcodes.ACC_PUBLIC, "field" + i, "I", null, null).visitEnd();
+        }
+        constructor(cw, superName);
+        for (int i = 0; i < size.methods; i++) {
+            final MethodVisitor mv = cw.visitMethod(Opcodes.ACC_PUBLIC, "method" + i, "(I)I", null, null);
+            mv.visitCode();
+            final Label loop = new Label();
+            final Label end = new Label();
+            mv.visitInsn(Opcodes.ICONST_0);
+            mv.visitVarInsn(Opcodes.ISTORE, 2);
+            mv.visitLabel(loop);
+            mv.visitVarInsn(Opcodes.ILOAD, 1);
+            mv.visitJumpInsn(Opcodes.IFLE, end);
+            for (int j = 0; j < size.instructions / 8; j++) {
+                mv.visitVarInsn(Opcodes.ILOAD, 2);
+                mv.visitVarInsn(Opcodes.ALOAD, 0);
+                mv.visitFieldInsn(Opcodes.GETFIELD, internalName, "field" + (j % size.fields), "I");
+                mv.visitInsn(Opcodes.IADD);
+                mv.visitIntInsn(Opcodes.BIPUSH, j % 64);
+                mv.visitInsn(Opcodes.IXOR);
+                mv.visitVarInsn(Opcodes.ISTORE, 2);
+                mv.visitIincInsn(1, -1);
+            }
+            mv.visitJumpInsn(Opcodes.GOTO, loop);
+            mv.visitLabel(end);
+            mv.visitVarInsn(Opcodes.ILOAD, 2);
+            mv.visitInsn(Opcodes.IRETURN);
+            mv.visitMaxs(0, 0);
+            mv.visitEnd();
+        }
+        cw.visitEnd();
+        return cw.toByteArray();
+    }
+
+    /**
+     * A chain of {@code depth} classes, two leaves at its bottom, and a {@code Merge} class whose {@code pick} method
+     * merges the two leaves, so computing its frames has to walk the whole chain
+     */
+    static Map<String, byte[]> hierarchy(final int depth) {
+        final Map<String, byte[]> classes = new LinkedHashMap<>();
+        String superName = "java/lang/Object";
+        for (int i = 0; i < depth; i++) {
+            final String name = PACKAGE + "Level" + i;
+            classes.put(name, emptyClass(name, superName));
+            superName = name;
+        }
+        classes.put(PACKAGE + "LeafA", emptyClass(PACKAGE + "LeafA", superName));
+        classes.put(PACKAGE + "LeafB", emptyClass(PACKAGE + "LeafB", superName));
+
+        final ClassWriter cw = new ClassWriter(0);
+        cw.visit(Opcodes.V17, Opcodes.ACC_PUBLIC | Opcodes.ACC_SUPER, PACKAGE + "Merge", null, "java/lang/Object", null);
+        constructor(cw, "java/lang/Object");
+        final MethodVisitor mv = cw.visitMethod(Opcodes.ACC_PUBLIC | Opcodes.ACC_STATIC, "pick", "(Z)Ljava/lang/Object;", null, null);
+        mv.visitCode();
+        final Label other = new Label();
+        final Label done = new Label();
+        mv.visitVarInsn(Opcodes.ILOAD, 0);
+        mv.visitJumpInsn(Opcodes.IFEQ, other);
+        newInstance(mv, PACKAGE + "LeafA");
+        mv.visitJumpInsn(Opcodes.GOTO, done);
+        mv.visitLabel(other);
+        mv.visitFrame(Opcodes.F_SAME, 0, null, 0, null);
+        newInstance(mv, PACKAGE + "LeafB");
+        mv.visitLabel(done);
+        mv.visitFrame(Opcodes.F_SAME1, 0, null, 1, new Object[] { superName });
+        mv.visitInsn(Opcodes.ARETURN);
+        mv.visitMaxs(2, 1);
+        mv.visitEnd();
+        cw.visitEnd();
+        classes.put(PACKAGE + "Merge", cw.toByteArray());
+        return classes;
+    }
+
+    /**
+     * {@code count} classes {@code Node<i>} forming a binary tree, where {@code Node<i>} extends
+     * {@code Node<(i - 1) / 2>}. Each has a static {@code pick} method merging two other nodes, so computing its
+     * frames needs the hierarchies of classes elsewhere in the tree.
+     */
+    static Map<String, byte[]> tree(final int count) {
+        final Map<String, byte[]> classes = new LinkedHashMap<>();
+        for (int i = 0; i < count; i++) {
+            final String name = PACKAGE + "Node" + i;
+            final String superName = i == 0 ? "java/lang/Object" : PACKAGE + "Node" + (i - 1) / 2;
+            final ClassWriter cw = new ClassWriter(ClassWriter.COMPUTE_FRAMES) {
+                @Override
+                protected String getCommonSuperClass(final String type1, final String type2) {
+                    int a = Integer.parseInt(type1.substring(PACKAGE.length() + 4));
+                    int b = Integer.parseInt(type2.substring(PACKAGE.length() + 4));
+                    while (a != b) {
+                        if (a > b) a = (a - 1) / 2;
+                        else b = (b - 1) / 2;
+                    }
+                    return PACKAGE + "Node" + a;
+                }
+            };
+            cw.visit(Opcodes.V17, Opcodes.ACC_PUBLIC | Opcodes.ACC_SUPER, name, null, superName, null);
+            constructor(cw, superName);
+            final MethodVisitor mv = cw.visitMethod(Opcodes.ACC_PUBLIC | Opcodes.ACC_STATIC, "pick", "(Z)Ljava/lang/Object;", null, null);
+            mv.visitCode();
+            final Label other = new Label();
+            final Label done = new Label();
+            mv.visitVarInsn(Opcodes.ILOAD, 0);
+            mv.visitJumpInsn(Opcodes.IFEQ, other);
+            newInstance(mv, PACKAGE + "Node" + (i * 7 + 1) % count);
+            mv.visitJumpInsn(Opcodes.GOTO, done);
+            mv.visitLabel(other);
+            newInstance(mv, PACKAGE + "Node" + (i * 13 + 5) % count);
+            mv.visitLabel(done);
+            mv.visitInsn(Opcodes.ARETURN);
+            mv.visitMaxs(0, 0);
+            mv.visitEnd();
+            cw.visitEnd();
+            classes.put(name, cw.toByteArray());
+        }
+        return classes;
+    }
+
+    private static byte[] emptyClass(final String name, final String superName) {
+        final ClassWriter cw = new ClassWriter(ClassWriter.COMPUTE_MAXS);
+        cw.visit(Opcodes.V17, Opcodes.ACC_PUBLIC | Opcodes.ACC_SUPER, name, null, superName, null);
+        constructor(cw, superName);
+        cw.visitEnd();
+        return cw.toByteArray();
+    }
+
+    private static void constructor(final ClassWriter cw, final String superName) {
+        final MethodVisitor mv = cw.visitMethod(Opcodes.ACC_PUBLIC, "<init>", "()V", null, null);
+        mv.visitCode();
+        mv.visitVarInsn(Opcodes.ALOAD, 0);
+        mv.visitMethodInsn(Opcodes.INVOKESPECIAL, superName, "<init>", "()V", false);
+        mv.visitInsn(Opcodes.RETURN);
+        mv.visitMaxs(1, 1);
+        mv.visitEnd();
+    }
+
+    private static void newInstance(final MethodVisitor mv, final String type) {
+        mv.visitTypeInsn(Opcodes.NEW, type);
+        mv.visitInsn(Opcodes.DUP);
+        mv.visitMethodInsn(Opcodes.INVOKESPECIAL, type, "<init>", "()V", false);
+    }
+
+    /**
+     * Write the classes into a jar which is the automatic module {@value MODULE}
+     */
+    static Path writeJar(final Map<String, byte[]> classes) throws IOException {
+        final Path jar = Files.createTempFile("modlauncher-benchmark", ".jar");
+        jar.toFile().deleteOnExit();
+        final Manifest manifest = new Manifest();
+        manifest.getMainAttributes().put(Attributes.Name.MANIFEST_VERSION, "1.0");
+        manifest.getMainAttributes().put(new Attributes.Name("Automatic-Module-Name"), MODULE);
+        try (OutputStream out = Files.newOutputStream(jar); JarOutputStream jarOut = new JarOutputStream(out, manifest)) {
+            for (Map.Entry<String, byte[]> entry : classes.entrySet()) {
+                jarOut.putNextEntry(new JarEntry(entry.getKey() + ".class"));
+                jarOut.write(entry.getValue());
+                jarOut.closeEntry();
+            }
+        }
+        return jar;
+    }
+}
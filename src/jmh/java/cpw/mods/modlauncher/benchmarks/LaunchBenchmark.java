@@ -0,0 +1,73 @@
+/*
+ * ModLauncher - for launching Java programs with in-flight transformation ability.
+ *
+ *     Copyright (C) 2017-2019 cpw
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Lesser General Public License as published by
+ *     the Free Software Foundation, version 3 of the License.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Lesser General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Lesser General Public License
+ *     along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package cpw.mods.modlauncher.benchmarks;
+
+import cpw.mods.modlauncher.Launcher;
+import cpw.mods.modlauncher.modpack.ModpackGenerator;
+import cpw.mods.modlauncher.modpack.ModpackLaunch;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+/**
+ * Launches end to end through the {@code testharness} launch handler with a generated modpack in the GAME layer,
+ * and loads all of its classes. The time per operation is the time to launch; run with {@code -prof gc} for the
+ * allocation.
+ */
+@State(Scope.Benchmark)
+public class LaunchBenchmark {
+    @Param({"10", "50"})
+    public int mods;
+    @Param({"200"})
+    public int classes;
+    @Param({"8"})
+    public int depth;
+    @Param({"0", "300"})
+    public int transformers;
+
+    private Path gameDir;
+    private Path modpackDir;
+
+    @Setup
+    public void setup() throws IOException {
+        gameDir = Files.createTempDirectory("modlauncher-modpack");
+        modpackDir = gameDir.resolve("mods");
+        ModpackGenerator.generate(modpackDir, mods, classes, depth);
+        System.setProperty("test.harness.callable", ModpackLaunch.class.getName());
+    }
+
+    @TearDown
+    public void cleanup() throws IOException {
+        try (Stream<Path> files = Files.walk(gameDir)) {
+            for (Path file : files.sorted(Comparator.reverseOrder()).toList()) {
+                Files.delete(file);
+            }
+        }
+    }
+
+    @Benchmark
+    public int launch() {
+        Launcher.main("--launchTarget", "testharness", "--gameDir", gameDir.toString(), "--modpack.dir", modpackDir.toString(), "--modpack.transformers", Integer.toString(transformers));
+        return ModpackLaunch.loadedClasses();
+    }
+}
@@ -0,0 +1,61 @@
+/*
+ * ModLauncher - for launching Java programs with in-flight transformation ability.
+ *
+ *     Copyright (C) 2017-2019 cpw
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Lesser General Public License as published by
+ *     the Free Software Foundation, version 3 of the License.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Lesser General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Lesser General Public License
+ *     along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package cpw.mods.modlauncher.benchmarks;
+
+import cpw.mods.modlauncher.ClassTransformer;
+import cpw.mods.modlauncher.api.ITransformer;
+import cpw.mods.modlauncher.api.ITransformerActivity;
+import cpw.mods.modlauncher.api.TargetType;
+import org.objectweb.asm.Opcodes;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Classes no transformer targets should come straight back, whatever their size, even with transformers for
+ * other classes registered
+ */
+@State(Scope.Benchmark)
+public class PassThroughBenchmark {
+    private static final String CLASS_NAME = "cpw.mods.modlauncher.benchmarks.generated.Untouched";
+
+    @Param({"SMALL", "MEDIUM", "HUGE"})
+    public String size;
+
+    private ClassTransformer classTransformer;
+    private byte[] classBytes;
+
+    @Setup
+    public void setup() throws Exception {
+        classBytes = GeneratedClasses.generate(CLASS_NAME.replace('.', '/'), "java/lang/Object", GeneratedClasses.Size.valueOf(size));
+        final BenchmarkService service = new BenchmarkService();
+        for (int i = 0; i < 100; i++) {
+            service.add(TargetType.FIELD, ITransformer.Target.targetField("cpw.mods.modlauncher.benchmarks.generated.Other" + i, "field0"), field -> field.access |= Opcodes.ACC_VOLATILE);
+        }
+        classTransformer = PipelineBenchmark.classTransformer(service.buildStore());
+    }
+
+    @TearDown(Level.Iteration)
+    public void clearLog() {
+        PipelineBenchmark.clearAuditTrail(classTransformer);
+    }
+
+    @Benchmark
+    public byte[] passThrough() throws Throwable {
+        return (byte[]) PipelineBenchmark.TRANSFORM.invokeExact(classTransformer, classBytes, CLASS_NAME, ITransformerActivity.CLASSLOADING_REASON);
+    }
+}
@@ -0,0 +1,101 @@
+/*
+ * ModLauncher - for launching Java programs with in-flight transformation ability.
+ *
+ *     Copyright (C) 2017-2019 cpw
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Lesser General Public License as published by
+ *     the Free Software Foundation, version 3 of the License.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Lesser General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Lesser General Public License
+ *     along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package cpw.mods.modlauncher.benchmarks;
+
+import cpw.mods.modlauncher.*;
+import cpw.mods.modlauncher.api.ITransformer;
+import cpw.mods.modlauncher.api.ITransformerActivity;
+import cpw.mods.modlauncher.api.TargetType;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.tree.InsnNode;
+import org.openjdk.jmh.annotations.*;
+import org.powermock.reflect.Whitebox;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.Map;
+
+/**
+ * Transforms generated classes of each size with a number of transformers of one type. With more transformers
+ * than members, some members go through several voting rounds.
+ */
+@State(Scope.Benchmark)
+public class PipelineBenchmark {
+    static final MethodHandle TRANSFORM;
+    private static final String CLASS_NAME = "cpw.mods.modlauncher.benchmarks.generated.Subject";
+
+    static {
+        try {
+            TRANSFORM = MethodHandles.privateLookupIn(ClassTransformer.class, MethodHandles.lookup())
+                    .findVirtual(ClassTransformer.class, "transform", MethodType.methodType(byte[].class, byte[].class, String.class, String.class));
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    @Param({"SMALL", "MEDIUM", "HUGE"})
+    public String size;
+    @Param({"METHOD", "FIELD", "CLASS"})
+    public String targetType;
+    @Param({"1", "8"})
+    public int transformers;
+
+    private ClassTransformer classTransformer;
+    private byte[] classBytes;
+
+    @Setup
+    public void setup() throws Exception {
+        final GeneratedClasses.Size classSize = GeneratedClasses.Size.valueOf(size);
+        classBytes = GeneratedClasses.generate(CLASS_NAME.replace('.', '/'), "java/lang/Object", classSize);
+        final BenchmarkService service = new BenchmarkService();
+        for (int i = 0; i < transformers; i++) {
+            if (targetType.equals("METHOD")) {
+                service.add(TargetType.METHOD, ITransformer.Target.targetMethod(CLASS_NAME, "method" + (i % classSize.methods), "(I)I"), method -> method.instructions.insert(new InsnNode(Opcodes.NOP)));
+            } else if (targetType.equals("FIELD")) {
+                service.add(TargetType.FIELD, ITransformer.Target.targetField(CLASS_NAME, "field" + (i % classSize.fields)), field -> field.access |= Opcodes.ACC_VOLATILE);
+            } else {
+                service.add(TargetType.CLASS, ITransformer.Target.targetClass(CLASS_NAME), clazz -> clazz.sourceFile = "Subject.java");
+            }
+        }
+        classTransformer = classTransformer(service.buildStore());
+    }
+
+    static ClassTransformer classTransformer(final TransformStore transformStore) throws Exception {
+        final ModuleLayerHandler layerHandler = Whitebox.invokeConstructor(ModuleLayerHandler.class);
+        final LaunchPluginHandler lph = new LaunchPluginHandler(layerHandler);
+        return Whitebox.invokeConstructor(ClassTransformer.class, new Class[] { TransformStore.class, LaunchPluginHandler.class, TransformingClassLoader.class }, new Object[] { transformStore, lph, null });
+    }
+
+    static void clearAuditTrail(final ClassTransformer classTransformer) {
+        final TransformerAuditTrail auditTrail = Whitebox.getInternalState(classTransformer, "auditTrail");
+        final Map<String, ?> audit = Whitebox.getInternalState(auditTrail, "audit");
+        audit.clear();
+    }
+
+    @TearDown(Level.Iteration)
+    public void clearLog() {
+        clearAuditTrail(classTransformer);
+    }
+
+    @Benchmark
+    public byte[] transform() throws Throwable {
+        return (byte[]) TRANSFORM.invokeExact(classTransformer, classBytes, CLASS_NAME, ITransformerActivity.CLASSLOADING_REASON);
+    }
+}
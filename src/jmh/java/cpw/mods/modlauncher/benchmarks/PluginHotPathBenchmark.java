@@ -0,0 +1,117 @@
+/*
+ * ModLauncher - for launching Java programs with in-flight transformation ability.
+ *
+ *     Copyright (C) 2017-2019 cpw
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Lesser General Public License as published by
+ *     the Free Software Foundation, version 3 of the License.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Lesser General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Lesser General Public License
+ *     along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package cpw.mods.modlauncher.benchmarks;
+
+import cpw.mods.modlauncher.LaunchPluginHandler;
+import cpw.mods.modlauncher.TransformerAuditTrail;
+import cpw.mods.modlauncher.api.ITransformerActivity;
+import cpw.mods.modlauncher.serviceapi.ILaunchPluginService;
+import org.objectweb.asm.Type;
+import org.objectweb.asm.tree.ClassNode;
+import org.openjdk.jmh.annotations.*;
+import org.powermock.reflect.Whitebox;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Stream;
+
+/**
+ * The launch plugin calls made for every class. Run with {@code -prof gc}: with DEBUG logging off, as it is for
+ * the LAUNCHPLUGIN marker by default, and no audit trail, offering a class to plugins and finding no plugin for
+ * it should not allocate. Finding the plugins for a claimed class only allocates the result.
+ */
+@State(Scope.Benchmark)
+public class PluginHotPathBenchmark {
+    private static final MethodHandle OFFER;
+
+    static {
+        try {
+            final Class<?> metrics = Class.forName("cpw.mods.modlauncher.TransformerMetrics");
+            OFFER = MethodHandles.privateLookupIn(LaunchPluginHandler.class, MethodHandles.lookup())
+                    .findVirtual(LaunchPluginHandler.class, "offerClassNodeToPlugins", MethodType.methodType(int.class, ILaunchPluginService.Phase.class, List.class, ClassNode.class, Type.class, TransformerAuditTrail.class, metrics, String.class))
+                    .asType(MethodType.methodType(int.class, LaunchPluginHandler.class, ILaunchPluginService.Phase.class, List.class, ClassNode.class, Type.class, TransformerAuditTrail.class, Object.class, String.class));
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private LaunchPluginHandler handler;
+    private List<ILaunchPluginService> declining;
+    private List<ILaunchPluginService> rewriting;
+    private final ClassNode node = new ClassNode();
+    private final Type claimed = Type.getObjectType("claimed/Hot");
+    private final Type unclaimed = Type.getObjectType("unclaimed/Cold");
+    private final TransformerAuditTrail auditTrail = new TransformerAuditTrail(TransformerAuditTrail.Retention.OFF);
+    private Object metrics;
+
+    @Setup
+    public void setup() throws Exception {
+        final ILaunchPluginService decline = new Plugin("decline", ILaunchPluginService.ComputeFlags.NO_REWRITE);
+        final ILaunchPluginService rewrite = new Plugin("rewrite", ILaunchPluginService.ComputeFlags.COMPUTE_FRAMES);
+        handler = new LaunchPluginHandler(Stream.of(decline, rewrite));
+        declining = List.of(decline, decline, decline);
+        rewriting = List.of(rewrite, rewrite, rewrite);
+        metrics = Whitebox.invokeConstructor(Class.forName("cpw.mods.modlauncher.TransformerMetrics"));
+    }
+
+    @Benchmark
+    public int offerDeclined() throws Throwable {
+        return (int) OFFER.invokeExact(handler, ILaunchPluginService.Phase.BEFORE, declining, node, claimed, auditTrail, metrics, ITransformerActivity.CLASSLOADING_REASON);
+    }
+
+    @Benchmark
+    public int offerRewritten() throws Throwable {
+        return (int) OFFER.invokeExact(handler, ILaunchPluginService.Phase.AFTER, rewriting, node, claimed, auditTrail, metrics, ITransformerActivity.CLASSLOADING_REASON);
+    }
+
+    @Benchmark
+    public Object pluginSetUnclaimed() {
+        return handler.computeLaunchPluginTransformerSet(unclaimed, false, ITransformerActivity.CLASSLOADING_REASON, auditTrail);
+    }
+
+    @Benchmark
+    public Object pluginSetClaimed() {
+        return handler.computeLaunchPluginTransformerSet(claimed, false, ITransformerActivity.CLASSLOADING_REASON, auditTrail);
+    }
+
+    private record Plugin(String name, int flags) implements ILaunchPluginService {
+        private static final EnumSet<Phase> PHASES = EnumSet.of(Phase.BEFORE);
+        private static final EnumSet<Phase> NONE = EnumSet.noneOf(Phase.class);
+
+        @Override
+        public EnumSet<Phase> handlesClass(final Type classType, final boolean isEmpty) {
+            return classType.getInternalName().startsWith("claimed/") ? PHASES : NONE;
+        }
+
+        @Override
+        public Optional<Set<String>> candidateClassPrefixes() {
+            return Optional.of(Set.of("claimed/"));
+        }
+
+        @Override
+        public int processClassWithFlags(final Phase phase, final ClassNode classNode, final Type classType, final String reason) {
+            return flags;
+        }
+    }
+}
@@ -19,7 +19,6 @@
 package cpw.mods.modlauncher.benchmarks;
 
 import cpw.mods.modlauncher.*;
-import cpw.mods.modlauncher.api.ITransformerActivity;
 import cpw.mods.modlauncher.serviceapi.ILaunchPluginService;
 import org.objectweb.asm.Type;
 import org.objectweb.asm.tree.ClassNode;
@@ -31,8 +30,8 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.lang.reflect.Method;
 import java.util.EnumSet;
-import java.util.List;
 import java.util.Map;
+import java.util.stream.Stream;
 
 import static cpw.mods.modlauncher.api.LambdaExceptionUtils.uncheck;
 
@@ -45,23 +44,7 @@ public class TransformBenchmark {
     @Setup
     public void setup() throws Exception {
         final TransformStore transformStore = new TransformStore();
-        final ModuleLayerHandler layerHandler = Whitebox.invokeConstructor(ModuleLayerHandler.class);
-        final LaunchPluginHandler lph = new LaunchPluginHandler(layerHandler);
-        classTransformer = uncheck(()->Whitebox.invokeConstructor(ClassTransformer.class, new Class[] { transformStore.getClass(),  lph.getClass(), TransformingClassLoader.class }, new Object[] { transformStore, lph, null}));
-        transform = uncheck(()->classTransformer.getClass().getDeclaredMethod("transform", byte[].class, String.class,String.class));
-        transform.setAccessible(true);
-        Map<String, ILaunchPluginService> plugins = Whitebox.getInternalState(lph, "plugins");
-        try (InputStream is = getClass().getClassLoader().getResourceAsStream("cpw/mods/modlauncher/testjar/TestClass.class")) {
-            ByteArrayOutputStream bos = new ByteArrayOutputStream();
-            byte[] buf = new byte[2048];
-            while (is.read(buf) >= 0) {
-                bos.write(buf);
-            }
-            classBytes = bos.toByteArray();
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
-        plugins.put("dummy1", new ILaunchPluginService() {
+        final ILaunchPluginService dummy = new ILaunchPluginService() {
             @Override
             public String name() {
                 return "dummy1";
@@ -81,7 +64,22 @@ public class TransformBenchmark {
             public EnumSet<Phase> handlesClass(final Type classType, final boolean isEmpty) {
                 return EnumSet.of(Phase.BEFORE, Phase.AFTER);
             }
-        });
+        };
+        // plugins are routed when the handler is built, so the dummy has to be there from the start
+        final LaunchPluginHandler lph = new LaunchPluginHandler(Stream.of(dummy));
+        classTransformer = uncheck(()->Whitebox.invokeConstructor(ClassTransformer.class, new Class[] { transformStore.getClass(),  lph.getClass(), TransformingClassLoader.class }, new Object[] { transformStore, lph, null}));
+        transform = uncheck(()->classTransformer.getClass().getDeclaredMethod("transform", byte[].class, String.class,String.class));
+        transform.setAccessible(true);
+        try (InputStream is = getClass().getClassLoader().getResourceAsStream("cpw/mods/modlauncher/testjar/TestClass.class")) {
+            ByteArrayOutputStream bos = new ByteArrayOutputStream();
+            byte[] buf = new byte[2048];
+            while (is.read(buf) >= 0) {
+                bos.write(buf);
+            }
+            classBytes = bos.toByteArray();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
     }
 
     @Benchmark
@@ -93,7 +91,7 @@ public class TransformBenchmark {
     @TearDown(Level.Iteration)
     public void clearLog() {
         TransformerAuditTrail auditTrail = Whitebox.getInternalState(classTransformer, "auditTrail");
-        Map<String, List<ITransformerActivity>> map = Whitebox.getInternalState(auditTrail, "audit");
+        Map<String, ?> map = Whitebox.getInternalState(auditTrail, "audit");
         map.clear();
     }
 
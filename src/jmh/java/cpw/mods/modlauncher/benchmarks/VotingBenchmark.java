@@ -0,0 +1,137 @@
+/*
+ * ModLauncher - for launching Java programs with in-flight transformation ability.
+ *
+ *     Copyright (C) 2017-2019 cpw
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Lesser General Public License as published by
+ *     the Free Software Foundation, version 3 of the License.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Lesser General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Lesser General Public License
+ *     along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package cpw.mods.modlauncher.benchmarks;
+
+import cpw.mods.modlauncher.*;
+import cpw.mods.modlauncher.api.*;
+import org.objectweb.asm.tree.MethodNode;
+import org.openjdk.jmh.annotations.*;
+import org.powermock.reflect.Whitebox;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.*;
+import java.util.function.Supplier;
+
+/**
+ * Measures the voting loop on its own. Run with {@code -prof gc}: voting on no transformers, or on transformers
+ * that all decline, should not allocate.
+ */
+@State(Scope.Benchmark)
+public class VotingBenchmark {
+    private static final MethodHandle PERFORM_VOTE;
+
+    static {
+        try {
+            final Class<?> votingContext = Class.forName("cpw.mods.modlauncher.VotingContext");
+            PERFORM_VOTE = MethodHandles.privateLookupIn(ClassTransformer.class, MethodHandles.lookup())
+                    .findVirtual(ClassTransformer.class, "performVote", MethodType.methodType(Object.class, List.class, Object.class, votingContext))
+                    .asType(MethodType.methodType(Object.class, ClassTransformer.class, List.class, Object.class, Object.class));
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private ClassTransformer classTransformer;
+    private Object context;
+    private final MethodNode method = new MethodNode();
+    private final List<ITransformer<MethodNode>> none = Collections.emptyList();
+    private List<ITransformer<MethodNode>> declining;
+    private List<ITransformer<MethodNode>> accepting;
+
+    @Setup
+    public void setup() throws Exception {
+        final TransformStore transformStore = new TransformStore();
+        final ModuleLayerHandler layerHandler = Whitebox.invokeConstructor(ModuleLayerHandler.class);
+        final LaunchPluginHandler lph = new LaunchPluginHandler(layerHandler);
+        classTransformer = Whitebox.invokeConstructor(ClassTransformer.class, new Class[] { TransformStore.class, LaunchPluginHandler.class, TransformingClassLoader.class }, new Object[] { transformStore, lph, null });
+        context = Whitebox.invokeConstructor(Class.forName("cpw.mods.modlauncher.VotingContext"), new Class[] { String.class, boolean.class, Supplier.class, List.class, String.class }, new Object[] { "test.Voting", true, (Supplier<byte[]>) () -> new byte[0], new ArrayList<ITransformerActivity>(), "jmh" });
+        declining = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            declining.add(new TransformerHolder<>(new VotingTransformer(TransformerVoteResult.NO), null));
+        }
+        accepting = new ArrayList<>(declining);
+        accepting.add(new TransformerHolder<>(new VotingTransformer(TransformerVoteResult.YES), new NamedService()));
+    }
+
+    @TearDown(Level.Iteration)
+    public void clearLog() {
+        TransformerAuditTrail auditTrail = Whitebox.getInternalState(classTransformer, "auditTrail");
+        Map<String, ?> map = Whitebox.getInternalState(auditTrail, "audit");
+        map.clear();
+    }
+
+    @Benchmark
+    public Object voteNoTransformers() throws Throwable {
+        return PERFORM_VOTE.invokeExact(classTransformer, (List<?>) none, (Object) method, context);
+    }
+
+    @Benchmark
+    public Object voteAllDecline() throws Throwable {
+        return PERFORM_VOTE.invokeExact(classTransformer, (List<?>) declining, (Object) method, context);
+    }
+
+    @Benchmark
+    public Object voteOneAccepts() throws Throwable {
+        return PERFORM_VOTE.invokeExact(classTransformer, (List<?>) accepting, (Object) method, context);
+    }
+
+    private record VotingTransformer(TransformerVoteResult vote) implements ITransformer<MethodNode> {
+        @Override
+        public MethodNode transform(MethodNode input, ITransformerVotingContext context) {
+            return input;
+        }
+
+        @Override
+        public TransformerVoteResult castVote(ITransformerVotingContext context) {
+            return vote;
+        }
+
+        @Override
+        public Set<Target<MethodNode>> targets() {
+            return Collections.emptySet();
+        }
+
+        @Override
+        public TargetType<MethodNode> getTargetType() {
+            return TargetType.METHOD;
+        }
+    }
+
+    private static class NamedService implements ITransformationService {
+        @Override
+        public String name() {
+            return "voting";
+        }
+
+        @Override
+        public void initialize(IEnvironment environment) {
+        }
+
+        @Override
+        public void onLoad(IEnvironment env, Set<String> otherServices) {
+        }
+
+        @Override
+        public List<? extends ITransformer<?>> transformers() {
+            return Collections.emptyList();
+        }
+    }
+}
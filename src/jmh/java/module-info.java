@@ -1,5 +1,7 @@
 module cpw.mods.modlauncher.benchmarks {
     requires cpw.mods.modlauncher;
+    requires cpw.mods.modlauncher.modpack;
+    requires cpw.mods.securejarhandler;
     requires org.objectweb.asm;
     requires org.objectweb.asm.tree;
     requires jmh.core;
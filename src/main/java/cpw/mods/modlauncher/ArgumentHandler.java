@@ -36,6 +36,13 @@ public class ArgumentHandler {
     private OptionSpec<String> nonOption;
     private OptionSpec<String> launchTarget;
     private OptionSpec<String> uuidOption;
+    private OptionSpec<Path> transformCacheOption;
+    private OptionSpec<Integer> pretransformOption;
+    private OptionSpec<String> auditTrailOption;
+    private OptionSpec<Path> startupReportOption;
+    private OptionSpec<Path> classDumpOption;
+    private OptionSpec<String> classDumpFilterOption;
+    private OptionSpec<Void> jmxOption;
 
     record DiscoveryData(Path gameDir, String launchTarget, String[] arguments) {}
 
@@ -57,6 +64,14 @@ public class ArgumentHandler {
         assetsDirOption = parser.accepts("assetsDir", "Assets directory").withRequiredArg().withValuesConvertedBy(new PathConverter(PathProperties.DIRECTORY_EXISTING));
         uuidOption = parser.accepts("uuid", "The UUID of the logging in player").withRequiredArg();
         launchTarget = parser.accepts("launchTarget", "LauncherService target to launch").withRequiredArg();
+        transformCacheOption = parser.accepts("transformCache", "Cache transformed classes on disk between launches, optionally in the given directory").withOptionalArg().withValuesConvertedBy(new PathConverter());
+        pretransformOption = parser.accepts("pretransform", "Transform classes in parallel before launching, optionally with the given number of threads").withOptionalArg().ofType(Integer.class);
+        startupReportOption = parser.accepts("startupReport", "Write the time taken by each launch step as JSON, optionally to the given file").withOptionalArg().withValuesConvertedBy(new PathConverter());
+        auditTrailOption = parser.accepts("auditTrail", "Which transformer activities to keep for diagnostics: full, transformed, ring:<classes> or off").withRequiredArg().withValuesConvertedBy(new CheckedString(TransformerAuditTrail::forPolicy, "full|transformed|ring:<classes>|off"));
+        classDumpOption = parser.accepts("classDump", "Write loaded classes to a directory, or a zip file, optionally the given one").withOptionalArg().withValuesConvertedBy(new PathConverter());
+        classDumpFilterOption = parser.accepts("classDumpFilter", "Which classes to dump: comma separated class names, package globs and transformed").withRequiredArg().withValuesConvertedBy(new CheckedString(ClassDumper.Filter::parse, "<class or package glob>,...,transformed"));
+
+        jmxOption = parser.accepts("jmx", "Register the transformation statistics MBean with the platform MBean server");
 
         parserConsumer.accept(parser);
         nonOption = parser.nonOptions();
@@ -66,6 +81,13 @@ public class ArgumentHandler {
         env.computePropertyIfAbsent(IEnvironment.Keys.ASSETSDIR.get(), f -> this.optionSet.valueOf(assetsDirOption));
         env.computePropertyIfAbsent(IEnvironment.Keys.LAUNCHTARGET.get(), f -> this.optionSet.valueOf(launchTarget));
         env.computePropertyIfAbsent(IEnvironment.Keys.UUID.get(), f -> this.optionSet.valueOf(uuidOption));
+        env.computePropertyIfAbsent(IEnvironment.Keys.TRANSFORMCACHE.get(), f -> this.optionSet.has(transformCacheOption) ? Optional.ofNullable(this.optionSet.valueOf(transformCacheOption)).orElseGet(() -> this.optionSet.valueOf(gameDirOption).resolve(".modlauncher")) : null);
+        env.computePropertyIfAbsent(IEnvironment.Keys.STARTUPREPORT.get(), f -> this.optionSet.has(startupReportOption) ? Optional.ofNullable(this.optionSet.valueOf(startupReportOption)).orElseGet(() -> this.optionSet.valueOf(gameDirOption).resolve(".modlauncher").resolve("startup.json")) : null);
+        env.computePropertyIfAbsent(IEnvironment.Keys.AUDITTRAILPOLICY.get(), f -> this.optionSet.valueOf(auditTrailOption));
+        env.computePropertyIfAbsent(IEnvironment.Keys.CLASSDUMP.get(), f -> this.optionSet.has(classDumpOption) ? Optional.ofNullable(this.optionSet.valueOf(classDumpOption)).orElseGet(() -> this.optionSet.valueOf(gameDirOption).resolve(".modlauncher").resolve("classdump.zip")) : null);
+        env.computePropertyIfAbsent(IEnvironment.Keys.CLASSDUMPFILTER.get(), f -> this.optionSet.valueOf(classDumpFilterOption));
+        env.computePropertyIfAbsent(IEnvironment.Keys.PRETRANSFORM.get(), f -> this.optionSet.has(pretransformOption) ? Optional.ofNullable(this.optionSet.valueOf(pretransformOption)).orElseGet(() -> Runtime.getRuntime().availableProcessors()) : null);
+        env.computePropertyIfAbsent(IEnvironment.Keys.JMX.get(), f -> this.optionSet.has(jmxOption) ? Boolean.TRUE : null);
         resultConsumer.accept(this.optionSet, this::optionResults);
     }
 
@@ -112,4 +134,24 @@ public class ArgumentHandler {
             appendTo.add(option.value(optionSet).toString());
         }
     }
+
+    /**
+     * Keeps a string argument as it is, once the check has accepted it, so bad values fail when arguments are processed
+     */
+    private record CheckedString(Consumer<String> check, String valuePattern) implements ValueConverter<String> {
+        @Override
+        public String convert(final String value) {
+            try {
+                check.accept(value);
+            } catch (IllegalArgumentException e) {
+                throw new ValueConversionException(e.getMessage(), e);
+            }
+            return value;
+        }
+
+        @Override
+        public Class<? extends String> valueType() {
+            return String.class;
+        }
+    }
 }
@@ -0,0 +1,258 @@
+/*
+ * ModLauncher - for launching Java programs with in-flight transformation ability.
+ *
+ *     Copyright (C) 2017-2019 cpw
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Lesser General Public License as published by
+ *     the Free Software Foundation, version 3 of the License.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Lesser General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Lesser General Public License
+ *     along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+
+package cpw.mods.modlauncher;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static cpw.mods.modlauncher.LogMarkers.MODLAUNCHER;
+
+/**
+ * Writes the classes handed to the class loader to a directory, or to a zip if the target ends in {@code .zip}, for
+ * debugging transformers.
+ *
+ * Classes are passed through a bounded queue to a writer thread, which writes them in batches. Class loading never
+ * waits for the disk: if the writer falls behind and the queue is full, classes are left out of the dump and
+ * counted. The dump is completed when the JVM shuts down, or on {@link #close()}.
+ *
+ * The filter is a comma separated list of class names and package globs, as for
+ * {@link cpw.mods.modlauncher.serviceapi.ClassClaims}, and of {@code transformed}, which keeps only the classes
+ * a transformer or launch plugin changed. An empty filter dumps every class.
+ */
+final class ClassDumper {
+    private static final Logger LOGGER = LogManager.getLogger();
+    private static final int QUEUE_SIZE = 1024;
+    private static final int BATCH_SIZE = 64;
+    private static final Dump END = new Dump("", new byte[0]);
+    private final Path target;
+    @Nullable
+    private final ZipOutputStream zip;
+    private final boolean transformedOnly;
+    private final Set<String> classes = new HashSet<>();
+    private final List<String> packages = new ArrayList<>();
+    private final List<String> subpackages = new ArrayList<>();
+    private final BlockingQueue<Dump> queue = new ArrayBlockingQueue<>(QUEUE_SIZE);
+    private final AtomicLong dropped = new AtomicLong();
+    private final Thread writer;
+    private volatile boolean closed;
+    // set by the writer when it gives up, so classes are no longer queued
+    private volatile boolean stopped;
+    private int written;
+
+    private record Dump(String internalName, byte[] bytes) {}
+
+    /**
+     * A parsed filter
+     * @param patterns class names and package globs, in internal form
+     */
+    record Filter(boolean transformedOnly, List<String> patterns) {
+        /**
+         * @throws IllegalArgumentException if the filter has a badly formed entry
+         */
+        static Filter parse(@Nullable final String filter) {
+            boolean transformedOnly = false;
+            final List<String> patterns = new ArrayList<>();
+            if (filter != null) {
+                for (String entry : filter.split(",")) {
+                    final String pattern = entry.trim().replace('.', '/');
+                    if (pattern.isEmpty()) continue;
+                    if (pattern.equals("transformed")) {
+                        transformedOnly = true;
+                        continue;
+                    }
+                    final String stem = PluginRoutingTable.stem(pattern);
+                    // wildcards are only allowed as a whole last segment
+                    if (stem.indexOf('*') >= 0 || stem.length() != pattern.length() && !stem.isEmpty() && !stem.endsWith("/")) {
+                        throw new IllegalArgumentException("Invalid class dump filter " + entry.trim());
+                    }
+                    patterns.add(pattern);
+                }
+            }
+            return new Filter(transformedOnly, patterns);
+        }
+    }
+
+    private ClassDumper(final Path target, @Nullable final ZipOutputStream zip, final Filter filter) {
+        this.target = target;
+        this.zip = zip;
+        this.transformedOnly = filter.transformedOnly();
+        for (String pattern : filter.patterns()) {
+            if (pattern.endsWith("**")) {
+                subpackages.add(PluginRoutingTable.stem(pattern));
+            } else if (pattern.endsWith("*")) {
+                packages.add(PluginRoutingTable.stem(pattern));
+            } else {
+                classes.add(pattern);
+            }
+        }
+        this.writer = new Thread(this::writeDumps, "ModLauncher class dump writer");
+        this.writer.setDaemon(true);
+    }
+
+    /**
+     * @param target the directory or zip file to write to
+     * @param filter the classes to dump, or null for all of them
+     * @return the dumper, or empty if the target can't be written
+     */
+    static Optional<ClassDumper> open(final Path target, @Nullable final String filter) {
+        final Filter parsed = Filter.parse(filter);
+        final ZipOutputStream zip;
+        try {
+            if (target.getFileName() != null && target.getFileName().toString().endsWith(".zip")) {
+                if (target.getParent() != null) Files.createDirectories(target.getParent());
+                zip = new ZipOutputStream(new BufferedOutputStream(Files.newOutputStream(target)));
+            } else {
+                Files.createDirectories(target);
+                zip = null;
+            }
+        } catch (IOException e) {
+            LOGGER.error(MODLAUNCHER, "Unable to create class dump {}, class dumping is disabled", target, e);
+            return Optional.empty();
+        }
+        final ClassDumper dumper = new ClassDumper(target, zip, parsed);
+        dumper.writer.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(dumper::close, "ModLauncher class dump completion"));
+        LOGGER.info(MODLAUNCHER, "Dumping classes to {}", target);
+        return Optional.of(dumper);
+    }
+
+    /**
+     * Queue a class for writing, if it passes the filter. Never blocks.
+     *
+     * @param className the class name
+     * @param bytes the class as handed to the class loader, which must not be modified afterwards
+     * @param transformed whether a transformer or launch plugin changed the class
+     */
+    void offer(final String className, final byte[] bytes, final boolean transformed) {
+        if (closed || stopped || transformedOnly && !transformed) return;
+        final String internalName = className.replace('.', '/');
+        if (!matches(internalName)) return;
+        if (!queue.offer(new Dump(internalName, bytes))) {
+            dropped.incrementAndGet();
+        }
+    }
+
+    private boolean matches(final String internalName) {
+        if (classes.isEmpty() && packages.isEmpty() && subpackages.isEmpty()) return true;
+        if (classes.contains(internalName)) return true;
+        for (int i = 0; i < subpackages.size(); i++) {
+            if (internalName.startsWith(subpackages.get(i))) return true;
+        }
+        for (int i = 0; i < packages.size(); i++) {
+            final String stem = packages.get(i);
+            if (internalName.startsWith(stem) && internalName.indexOf('/', stem.length()) < 0) return true;
+        }
+        return false;
+    }
+
+    /**
+     * @return the number of classes left out of the dump because the writer fell behind
+     */
+    long dropped() {
+        return dropped.get();
+    }
+
+    /**
+     * Write out the classes already queued and complete the dump. Classes offered afterwards are ignored.
+     */
+    void close() {
+        synchronized (this) {
+            if (closed) return;
+            closed = true;
+        }
+        try {
+            // the writer may have stopped, leaving nothing to make room in the queue
+            while (writer.isAlive() && !queue.offer(END, 100, TimeUnit.MILLISECONDS)) {
+                // retry while the writer is draining
+            }
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        }
+        if (dropped.get() > 0) {
+            LOGGER.warn(MODLAUNCHER, "Wrote {} classes to {}, {} more were left out because the class dump fell behind", written, target, dropped.get());
+        } else {
+            LOGGER.info(MODLAUNCHER, "Wrote {} classes to {}", written, target);
+        }
+    }
+
+    private void writeDumps() {
+        final List<Dump> batch = new ArrayList<>(BATCH_SIZE);
+        // the same class can be loaded by more than one class loader, only the first is kept
+        final Set<String> names = new HashSet<>();
+        try {
+            while (true) {
+                batch.add(queue.take());
+                queue.drainTo(batch, BATCH_SIZE - 1);
+                for (int i = 0; i < batch.size(); i++) {
+                    final Dump dump = batch.get(i);
+                    if (dump == END) return;
+                    if (stopped || !names.add(dump.internalName())) continue;
+                    try {
+                        write(dump);
+                        written++;
+                    } catch (IOException | RuntimeException e) {
+                        LOGGER.error(MODLAUNCHER, "Failed to write {} to class dump {}, class dumping is disabled", dump.internalName(), target, e);
+                        // keep draining the queue until closed, without writing
+                        stopped = true;
+                    }
+                }
+                batch.clear();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            if (zip != null) {
+                try {
+                    zip.close();
+                } catch (IOException e) {
+                    LOGGER.error(MODLAUNCHER, "Failed to complete class dump {}", target, e);
+                }
+            }
+        }
+    }
+
+    private void write(final Dump dump) throws IOException {
+        final String entry = dump.internalName() + ".class";
+        if (zip != null) {
+            zip.putNextEntry(new ZipEntry(entry));
+            zip.write(dump.bytes());
+            zip.closeEntry();
+        } else {
+            final Path file = target.resolve(entry);
+            Files.createDirectories(file.getParent());
+            Files.write(file, dump.bytes());
+        }
+    }
+}
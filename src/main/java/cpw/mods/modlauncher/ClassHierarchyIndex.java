@@ -0,0 +1,248 @@
+/*
+ * ModLauncher - for launching Java programs with in-flight transformation ability.
+ *
+ *     Copyright (C) 2017-2019 cpw
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Lesser General Public License as published by
+ *     the Free Software Foundation, version 3 of the License.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Lesser General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Lesser General Public License
+ *     along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package cpw.mods.modlauncher;
+
+import cpw.mods.niofs.union.UnionFileSystem;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.jetbrains.annotations.Nullable;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.Opcodes;
+
+import java.io.*;
+import java.lang.module.Configuration;
+import java.lang.module.ModuleReader;
+import java.lang.module.ResolvedModule;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.stream.Stream;
+
+import static cpw.mods.modlauncher.LogMarkers.MODLAUNCHER;
+
+/**
+ * Read-only index of the super class, interfaces and interface flag of every class in a module configuration, as
+ * declared in the untransformed class files.
+ *
+ * The index is written to a file named for the jars it was built from, and memory mapped by later launches with the
+ * same jars. Building happens in the background, so the first launch with a new set of jars goes without.
+ *
+ * File layout: a header, an open addressed table of (name hash, entry offset) slots, then the entries. Each entry
+ * is the class name, flags, super name and interface names, with strings stored as a short length and UTF-8 bytes.
+ */
+final class ClassHierarchyIndex {
+    private static final Logger LOGGER = LogManager.getLogger();
+    private static final int MAGIC = 0x4D4C4849;
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 16;
+    private static final int FLAG_INTERFACE = 1;
+    private final ByteBuffer buffer;
+    private final int tableMask;
+
+    record Entry(@Nullable String superName, String[] interfaces, boolean isInterface) {}
+
+    private ClassHierarchyIndex(final ByteBuffer buffer) {
+        this.buffer = buffer;
+        this.tableMask = buffer.getInt(12) - 1;
+    }
+
+    /**
+     * Map the index for the configuration from the directory, or start building it in the background if there isn't one.
+     *
+     * @param key the {@link #key(Configuration) key} of the configuration
+     */
+    static Optional<ClassHierarchyIndex> open(final Path dir, final Configuration configuration, final String key) {
+        final Path indexFile = dir.resolve(key + ".idx");
+        if (Files.exists(indexFile)) {
+            try {
+                return Optional.of(map(indexFile));
+            } catch (IOException | RuntimeException e) {
+                LOGGER.warn(MODLAUNCHER, "Discarding unreadable class hierarchy index {}", indexFile, e);
+            }
+        }
+        final Thread builder = new Thread(() -> {
+            try {
+                write(indexFile, configuration);
+                LOGGER.debug(MODLAUNCHER, "Wrote class hierarchy index {}", indexFile);
+            } catch (IOException e) {
+                LOGGER.warn(MODLAUNCHER, "Failed to write class hierarchy index {}", indexFile, e);
+            }
+        }, "ModLauncher class hierarchy indexer");
+        builder.setDaemon(true);
+        builder.start();
+        return Optional.empty();
+    }
+
+    /**
+     * Fingerprints the configuration by the location, size and modification time of each module. Modules in
+     * directories can change without their modification time changing, so they can't be fingerprinted.
+     */
+    static Optional<String> key(final Configuration configuration) {
+        final List<String> descriptions = new ArrayList<>();
+        for (ResolvedModule module : configuration.modules()) {
+            final Optional<URI> location = module.reference().location();
+            if (location.isEmpty()) return Optional.empty();
+            try {
+                final Path path = Path.of(location.get());
+                final Path file = path.getFileSystem() instanceof UnionFileSystem ufs ? ufs.getPrimaryPath() : path;
+                if (file == null || !Files.isRegularFile(file)) return Optional.empty();
+                descriptions.add(module.name() + ' ' + file.toAbsolutePath() + ' ' + Files.size(file) + ' ' + Files.getLastModifiedTime(file).toMillis());
+            } catch (IOException | RuntimeException e) {
+                return Optional.empty();
+            }
+        }
+        Collections.sort(descriptions);
+        final var digest = TransformCache.sha256();
+        descriptions.forEach(d -> digest.update((d + '\n').getBytes(StandardCharsets.UTF_8)));
+        return Optional.of(HexFormat.of().formatHex(digest.digest()));
+    }
+
+    static ClassHierarchyIndex map(final Path indexFile) throws IOException {
+        try (FileChannel channel = FileChannel.open(indexFile, StandardOpenOption.READ)) {
+            final ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+                throw new IOException("Not a class hierarchy index");
+            }
+            return new ClassHierarchyIndex(buffer);
+        }
+    }
+
+    static void write(final Path indexFile, final Configuration configuration) throws IOException {
+        final ByteArrayOutputStream entryBytes = new ByteArrayOutputStream();
+        final DataOutputStream entries = new DataOutputStream(entryBytes);
+        final List<String> names = new ArrayList<>();
+        final List<Integer> offsets = new ArrayList<>();
+        for (ResolvedModule module : configuration.modules()) {
+            try (ModuleReader reader = module.reference().open(); Stream<String> resources = reader.list()) {
+                for (String resource : (Iterable<String>) resources::iterator) {
+                    if (!resource.endsWith(".class") || resource.startsWith("META-INF/") || resource.endsWith("module-info.class")) continue;
+                    final Optional<InputStream> stream = reader.open(resource);
+                    if (stream.isEmpty()) continue;
+                    final ClassReader classReader;
+                    try (InputStream is = stream.get()) {
+                        classReader = new ClassReader(is.readAllBytes());
+                    } catch (RuntimeException e) {
+                        // Not a valid class file, it can't be used for frame computation anyway
+                        continue;
+                    }
+                    names.add(classReader.getClassName());
+                    offsets.add(entries.size());
+                    writeString(entries, classReader.getClassName());
+                    entries.writeByte((classReader.getAccess() & Opcodes.ACC_INTERFACE) != 0 ? FLAG_INTERFACE : 0);
+                    writeString(entries, classReader.getSuperName() != null ? classReader.getSuperName() : "");
+                    final String[] interfaces = classReader.getInterfaces();
+                    entries.writeShort(interfaces.length);
+                    for (String itf : interfaces) {
+                        writeString(entries, itf);
+                    }
+                }
+            }
+        }
+        final int tableSize = Math.max(16, Integer.highestOneBit(Math.max(1, names.size()) * 2 - 1) << 1);
+        final int entriesBase = HEADER_SIZE + tableSize * 8;
+        final int[] table = new int[tableSize * 2];
+        for (int i = 0; i < names.size(); i++) {
+            final int hash = names.get(i).hashCode();
+            int slot = hash & (tableSize - 1);
+            while (table[slot * 2 + 1] != 0) {
+                slot = (slot + 1) & (tableSize - 1);
+            }
+            table[slot * 2] = hash;
+            table[slot * 2 + 1] = entriesBase + offsets.get(i);
+        }
+
+        Files.createDirectories(indexFile.getParent());
+        final Path temp = Files.createTempFile(indexFile.getParent(), indexFile.getFileName().toString(), ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(names.size());
+            out.writeInt(tableSize);
+            for (int value : table) {
+                out.writeInt(value);
+            }
+            entryBytes.writeTo(out);
+        }
+        Files.move(temp, indexFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        try (Stream<Path> files = Files.list(indexFile.getParent())) {
+            files.filter(p -> !p.equals(indexFile) && p.getFileName().toString().endsWith(".idx")).forEach(p -> {
+                try {
+                    Files.deleteIfExists(p);
+                } catch (IOException e) {
+                    LOGGER.debug(MODLAUNCHER, "Unable to remove stale class hierarchy index {}", p, e);
+                }
+            });
+        }
+    }
+
+    private static void writeString(final DataOutputStream out, final String value) throws IOException {
+        final byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeShort(bytes.length);
+        out.write(bytes);
+    }
+
+    /**
+     * @param internalName the internal name of the class
+     * @return the declared hierarchy of the class, or null if it isn't in the index
+     */
+    @Nullable
+    Entry find(final String internalName) {
+        final byte[] name = internalName.getBytes(StandardCharsets.UTF_8);
+        final int hash = internalName.hashCode();
+        int slot = hash & tableMask;
+        while (true) {
+            final int offset = buffer.getInt(HEADER_SIZE + slot * 8 + 4);
+            if (offset == 0) return null;
+            if (buffer.getInt(HEADER_SIZE + slot * 8) == hash && nameMatches(offset, name)) {
+                return readEntry(offset + 2 + name.length);
+            }
+            slot = (slot + 1) & tableMask;
+        }
+    }
+
+    private boolean nameMatches(final int offset, final byte[] name) {
+        if (Short.toUnsignedInt(buffer.getShort(offset)) != name.length) return false;
+        for (int i = 0; i < name.length; i++) {
+            if (buffer.get(offset + 2 + i) != name[i]) return false;
+        }
+        return true;
+    }
+
+    private Entry readEntry(int offset) {
+        final boolean isInterface = (buffer.get(offset++) & FLAG_INTERFACE) != 0;
+        final String superName = readString(offset);
+        offset += 2 + Short.toUnsignedInt(buffer.getShort(offset));
+        final String[] interfaces = new String[Short.toUnsignedInt(buffer.getShort(offset))];
+        offset += 2;
+        for (int i = 0; i < interfaces.length; i++) {
+            interfaces[i] = readString(offset);
+            offset += 2 + Short.toUnsignedInt(buffer.getShort(offset));
+        }
+        return new Entry(superName.isEmpty() ? null : superName, interfaces, isInterface);
+    }
+
+    private String readString(final int offset) {
+        final byte[] bytes = new byte[Short.toUnsignedInt(buffer.getShort(offset))];
+        buffer.get(offset + 2, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
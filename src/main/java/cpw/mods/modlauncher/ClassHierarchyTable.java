@@ -0,0 +1,194 @@
+/*
+ * ModLauncher - for launching Java programs with in-flight transformation ability.
+ *
+ *     Copyright (C) 2017-2019 cpw
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Lesser General Public License as published by
+ *     the Free Software Foundation, version 3 of the License.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Lesser General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Lesser General Public License
+ *     along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package cpw.mods.modlauncher;
+
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Thread safe table of class hierarchies, used by {@link TransformerClassWriter} for frame computation.
+ *
+ * Class names are interned to int ids, and each class stores only its direct super class and interfaces as ids.
+ * Ancestor queries walk those links, so each name is held once however many classes extend it.
+ */
+final class ClassHierarchyTable {
+    private static final String OBJECT = "java/lang/Object";
+    private static final int CHUNK_BITS = 10;
+    private static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+    private static final int MAX_CHUNKS = 1 << 14;
+    private static final int FLAGS = 0;
+    private static final int SUPER = 1;
+    private static final int INTERFACES = 2;
+    private static final int FLAG_INTERFACE = 1;
+    private volatile Table table = new Table();
+
+    /**
+     * The hierarchies recorded since the table was last cleared. Frame computation for one class should use a single
+     * {@link #current()} snapshot throughout, so that clearing the table can't take entries away from under it.
+     *
+     * Ids are handed out sequentially, and names and entries are stored in lazily allocated fixed size chunks so
+     * they never need to be copied when the table grows.
+     */
+    static final class Table {
+        private final Map<String, Integer> ids = new ConcurrentHashMap<>();
+        private final AtomicReferenceArray<String[]> names = new AtomicReferenceArray<>(MAX_CHUNKS);
+        private final AtomicReferenceArray<AtomicReferenceArray<int[]>> entries = new AtomicReferenceArray<>(MAX_CHUNKS);
+        private int nextId;
+        private final AtomicInteger computed = new AtomicInteger();
+        private final int objectId = intern(OBJECT);
+
+        private int intern(final String name) {
+            final Integer id = ids.get(name);
+            return id != null ? id : ids.computeIfAbsent(name, this::allocate);
+        }
+
+        private synchronized int allocate(final String name) {
+            final int id = nextId++;
+            final int chunk = id >>> CHUNK_BITS;
+            if (chunk >= MAX_CHUNKS) throw new IllegalStateException("Too many classes in the hierarchy table");
+            if (names.get(chunk) == null) {
+                names.set(chunk, new String[CHUNK_SIZE]);
+                entries.set(chunk, new AtomicReferenceArray<>(CHUNK_SIZE));
+            }
+            names.get(chunk)[id & (CHUNK_SIZE - 1)] = name;
+            return id;
+        }
+
+        private String name(final int id) {
+            return names.get(id >>> CHUNK_BITS)[id & (CHUNK_SIZE - 1)];
+        }
+
+        @Nullable
+        private int[] entry(final int id) {
+            return entries.get(id >>> CHUNK_BITS).get(id & (CHUNK_SIZE - 1));
+        }
+
+        @Nullable
+        private int[] entry(final String name) {
+            final Integer id = ids.get(name);
+            return id != null ? entry(id) : null;
+        }
+
+        /**
+         * Whether the hierarchy of the class has been recorded
+         */
+        boolean contains(final String name) {
+            return entry(name) != null;
+        }
+
+        /**
+         * Record the hierarchy of a class. The hierarchies of its super class and interfaces must already be recorded.
+         */
+        void put(final String name, final boolean isInterface, @Nullable final String superName, final String[] interfaces) {
+            final int[] entry = new int[INTERFACES + interfaces.length];
+            entry[FLAGS] = isInterface ? FLAG_INTERFACE : 0;
+            entry[SUPER] = superName != null ? intern(superName) : -1;
+            for (int i = 0; i < interfaces.length; i++) {
+                entry[INTERFACES + i] = intern(interfaces[i]);
+            }
+            final int id = intern(name);
+            if (entries.get(id >>> CHUNK_BITS).compareAndSet(id & (CHUNK_SIZE - 1), null, entry)) {
+                computed.incrementAndGet();
+            }
+        }
+
+        boolean isInterface(final String name) {
+            final int[] entry = entry(name);
+            if (entry == null) throw new IllegalStateException("No hierarchy recorded for " + name);
+            return (entry[FLAGS] & FLAG_INTERFACE) != 0;
+        }
+
+        @Nullable
+        String getSuper(final String name) {
+            final int[] entry = entry(name);
+            return entry != null && entry[SUPER] >= 0 ? name(entry[SUPER]) : null;
+        }
+
+        /**
+         * Whether the ancestor is the class itself, or one of its super classes or interfaces.
+         * A class without a super class (java/lang/Object, or interfaces recorded from a loaded Class) does not
+         * count as its own ancestor, but always has java/lang/Object.
+         */
+        boolean hasAncestor(final String name, final String ancestor) {
+            final Integer id = ids.get(name);
+            final Integer ancestorId = ids.get(ancestor);
+            return id != null && ancestorId != null && hasAncestor(id, ancestorId);
+        }
+
+        private boolean hasAncestor(final int id, final int ancestor) {
+            final int[] entry = entry(id);
+            if (entry == null) return false;
+            if (entry[SUPER] >= 0) {
+                if (id == ancestor || hasAncestor(entry[SUPER], ancestor)) return true;
+            } else if (ancestor == objectId) {
+                return true;
+            }
+            for (int i = INTERFACES; i < entry.length; i++) {
+                if (entry[i] == ancestor || hasAncestor(entry[i], ancestor)) return true;
+            }
+            return false;
+        }
+    }
+
+    /**
+     * @return the table as it is now, which keeps its entries if the table is cleared
+     */
+    Table current() {
+        return table;
+    }
+
+    boolean contains(final String name) {
+        return table.contains(name);
+    }
+
+    void put(final String name, final boolean isInterface, @Nullable final String superName, final String[] interfaces) {
+        table.put(name, isInterface, superName, interfaces);
+    }
+
+    boolean isInterface(final String name) {
+        return table.isInterface(name);
+    }
+
+    @Nullable
+    String getSuper(final String name) {
+        return table.getSuper(name);
+    }
+
+    boolean hasAncestor(final String name, final String ancestor) {
+        return table.hasAncestor(name, ancestor);
+    }
+
+    /**
+     * @return the number of classes with a recorded hierarchy
+     */
+    int size() {
+        return table.computed.get();
+    }
+
+    /**
+     * Start a new, empty table. Frame computations already running keep the table they started with.
+     */
+    void clear() {
+        table = new Table();
+    }
+}
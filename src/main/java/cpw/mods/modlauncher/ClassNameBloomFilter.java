@@ -0,0 +1,70 @@
+/*
+ * ModLauncher - for launching Java programs with in-flight transformation ability.
+ *
+ *     Copyright (C) 2017-2019 cpw
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Lesser General Public License as published by
+ *     the Free Software Foundation, version 3 of the License.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Lesser General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Lesser General Public License
+ *     along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package cpw.mods.modlauncher;
+
+import java.util.Collection;
+
+/**
+ * Immutable Bloom filter over class names. Names may be given in binary ('.') or internal ('/') form, and both
+ * forms of a name hash the same, so lookups never need to convert the name first.
+ */
+final class ClassNameBloomFilter {
+    private static final int BITS_PER_NAME = 10;
+    private static final int PROBES = 4;
+    private final long[] bits;
+    private final int mask;
+
+    ClassNameBloomFilter(final Collection<String> names) {
+        int size = 64;
+        while (size < names.size() * BITS_PER_NAME) size <<= 1;
+        this.bits = new long[size >>> 6];
+        this.mask = size - 1;
+        for (String name : names) {
+            final long hash = hash(name);
+            int h1 = (int) hash;
+            final int h2 = (int) (hash >>> 32) | 1;
+            for (int i = 0; i < PROBES; i++, h1 += h2) {
+                bits[(h1 & mask) >>> 6] |= 1L << h1;
+            }
+        }
+    }
+
+    /**
+     * @return false if the name is definitely not in the filter
+     */
+    boolean mightContain(final String name) {
+        final long hash = hash(name);
+        int h1 = (int) hash;
+        final int h2 = (int) (hash >>> 32) | 1;
+        for (int i = 0; i < PROBES; i++, h1 += h2) {
+            if ((bits[(h1 & mask) >>> 6] & (1L << h1)) == 0) return false;
+        }
+        return true;
+    }
+
+    private static long hash(final String name) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0; i < name.length(); i++) {
+            final char c = name.charAt(i);
+            h ^= c == '/' ? '.' : c;
+            h *= 0x100000001b3L;
+        }
+        return h ^ (h >>> 29);
+    }
+}
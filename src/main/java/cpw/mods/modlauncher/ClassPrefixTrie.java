@@ -0,0 +1,87 @@
+/*
+ * ModLauncher - for launching Java programs with in-flight transformation ability.
+ *
+ *     Copyright (C) 2017-2019 cpw
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Lesser General Public License as published by
+ *     the Free Software Foundation, version 3 of the License.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Lesser General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Lesser General Public License
+ *     along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package cpw.mods.modlauncher;
+
+import java.util.Arrays;
+import java.util.Collection;
+
+/**
+ * Immutable trie of class name prefixes, such as packages. Prefixes and names may use '.' or '/' as separator,
+ * which are treated as the same character.
+ */
+final class ClassPrefixTrie {
+    private static final char[] NO_KEYS = new char[0];
+    private static final Node[] NO_CHILDREN = new Node[0];
+    private final Node root = new Node();
+
+    private static final class Node {
+        private char[] keys = NO_KEYS;
+        private Node[] children = NO_CHILDREN;
+        private boolean terminal;
+
+        private Node child(final char c) {
+            final int i = Arrays.binarySearch(keys, c);
+            return i >= 0 ? children[i] : null;
+        }
+
+        private Node addChild(final char c) {
+            int i = Arrays.binarySearch(keys, c);
+            if (i >= 0) return children[i];
+            i = -i - 1;
+            final char[] newKeys = new char[keys.length + 1];
+            final Node[] newChildren = new Node[keys.length + 1];
+            System.arraycopy(keys, 0, newKeys, 0, i);
+            System.arraycopy(children, 0, newChildren, 0, i);
+            System.arraycopy(keys, i, newKeys, i + 1, keys.length - i);
+            System.arraycopy(children, i, newChildren, i + 1, keys.length - i);
+            newKeys[i] = c;
+            newChildren[i] = new Node();
+            keys = newKeys;
+            children = newChildren;
+            return newChildren[i];
+        }
+    }
+
+    ClassPrefixTrie(final Collection<String> prefixes) {
+        for (String prefix : prefixes) {
+            Node node = root;
+            for (int i = 0; i < prefix.length(); i++) {
+                node = node.addChild(normalize(prefix.charAt(i)));
+            }
+            node.terminal = true;
+        }
+    }
+
+    private static char normalize(final char c) {
+        return c == '/' ? '.' : c;
+    }
+
+    /**
+     * @return whether the name starts with one of the prefixes
+     */
+    boolean matches(final String name) {
+        Node node = root;
+        for (int i = 0; !node.terminal; i++) {
+            if (i == name.length()) return false;
+            node = node.child(normalize(name.charAt(i)));
+            if (node == null) return false;
+        }
+        return true;
+    }
+}
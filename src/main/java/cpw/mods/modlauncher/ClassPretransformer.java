@@ -0,0 +1,206 @@
+/*
+ * ModLauncher - for launching Java programs with in-flight transformation ability.
+ *
+ *     Copyright (C) 2017-2019 cpw
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Lesser General Public License as published by
+ *     the Free Software Foundation, version 3 of the License.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Lesser General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Lesser General Public License
+ *     along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package cpw.mods.modlauncher;
+
+import cpw.mods.modlauncher.api.ITransformerActivity;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.module.Configuration;
+import java.lang.module.ModuleReader;
+import java.lang.module.ResolvedModule;
+import java.security.MessageDigest;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static cpw.mods.modlauncher.LogMarkers.*;
+
+/**
+ * Transforms every class that will need transforming ahead of time, in parallel, before the game launches.
+ *
+ * The results are parked until the {@link TransformingClassLoader} loads the class, and are only handed out if the
+ * class bytes being loaded are the ones that were transformed. The work is done by a speculative copy of the
+ * {@link ClassTransformer}, so classes which are never loaded leave nothing in the audit trail, metrics or class
+ * dump. Classes launch plugins claimed are included, but classes a plugin asked about each class could handle are
+ * left alone, as those plugins only expect to see the classes loaded.
+ *
+ * Parked classes which have not been loaded are released once loading stops taking them for a while.
+ */
+final class ClassPretransformer {
+    private static final Logger LOGGER = LogManager.getLogger();
+    private static final long IDLE_RELEASE_MILLIS = TimeUnit.SECONDS.toMillis(30);
+    private final ClassTransformer classTransformer;
+    private final Map<String, ParkedClass> parked = new ConcurrentHashMap<>();
+    private final AtomicLong parkedBytes = new AtomicLong();
+    private final long byteBudget;
+    private final long idleReleaseMillis;
+
+    /**
+     * @param inputDigest the SHA-256 of the untransformed class, so a different class is never handed out
+     */
+    private record ParkedClass(byte[] inputDigest, byte[] bytes, List<ITransformerActivity> activities) {}
+
+    ClassPretransformer(final ClassTransformer classTransformer) {
+        this(classTransformer, Runtime.getRuntime().maxMemory() / 8, IDLE_RELEASE_MILLIS);
+    }
+
+    /**
+     * @param idleReleaseMillis how long no parked class may be taken before the rest are released
+     */
+    ClassPretransformer(final ClassTransformer classTransformer, final long byteBudget, final long idleReleaseMillis) {
+        this.classTransformer = classTransformer;
+        this.byteBudget = byteBudget;
+        this.idleReleaseMillis = idleReleaseMillis;
+    }
+
+    /**
+     * Transform all candidate classes in the configuration, blocking until done or the memory budget is used up.
+     */
+    void pretransform(final Configuration configuration, final ClassLoader contextClassLoader, final int parallelism) {
+        final long start = System.nanoTime();
+        final List<ModuleReader> readers = new ArrayList<>();
+        final List<Candidate> candidates = new ArrayList<>();
+        final AtomicInteger transformed = new AtomicInteger();
+        final ClassTransformer speculative = classTransformer.speculative();
+        final ForkJoinPool pool = new ForkJoinPool(parallelism, p -> {
+            final ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(p);
+            thread.setName("ModLauncher pretransform-" + thread.getPoolIndex());
+            thread.setContextClassLoader(contextClassLoader);
+            return thread;
+        }, null, false);
+        try {
+            for (ResolvedModule module : configuration.modules()) {
+                try {
+                    final ModuleReader reader = module.reference().open();
+                    readers.add(reader);
+                    reader.list()
+                            .filter(n -> n.endsWith(".class") && !n.startsWith("META-INF/") && !n.endsWith("module-info.class") && !n.endsWith("package-info.class"))
+                            .map(n -> n.substring(0, n.length() - ".class".length()))
+                            .filter(classTransformer::mayPretransform)
+                            .forEach(n -> candidates.add(new Candidate(reader, n)));
+                } catch (IOException e) {
+                    LOGGER.warn(MODLAUNCHER, "Unable to list classes in {} for pretransformation", module.name(), e);
+                }
+            }
+            if (candidates.isEmpty()) {
+                LOGGER.info(MODLAUNCHER, "No classes can be pretransformed: none are targeted by transformers or claimed by launch plugins, " +
+                        "or launch plugins without candidate class prefixes may handle them all");
+                return;
+            }
+            pool.submit(() -> candidates.parallelStream().forEach(c -> {
+                if (parkedBytes.get() < byteBudget && pretransform(speculative, c)) {
+                    transformed.incrementAndGet();
+                }
+            })).join();
+        } finally {
+            pool.shutdown();
+            for (ModuleReader reader : readers) {
+                try {
+                    reader.close();
+                } catch (IOException e) {
+                    // ignored
+                }
+            }
+        }
+        LOGGER.info(MODLAUNCHER, "Pretransformed {} of {} candidate classes on {} threads in {}ms, {} bytes parked", transformed.get(), candidates.size(), parallelism, (System.nanoTime() - start) / 1_000_000, parkedBytes.get());
+        if (!parked.isEmpty()) {
+            releaseWhenIdle();
+        }
+    }
+
+    private void releaseWhenIdle() {
+        final Thread releaser = new Thread(() -> {
+            int remaining;
+            do {
+                remaining = parked.size();
+                try {
+                    Thread.sleep(idleReleaseMillis);
+                } catch (InterruptedException e) {
+                    return;
+                }
+            } while (!parked.isEmpty() && parked.size() != remaining);
+            release();
+        }, "ModLauncher pretransform release");
+        releaser.setDaemon(true);
+        releaser.start();
+    }
+
+    private boolean pretransform(final ClassTransformer speculative, final Candidate candidate) {
+        final String className = candidate.internalName().replace('/', '.');
+        final byte[] input;
+        try {
+            final Optional<InputStream> stream = candidate.reader().open(candidate.internalName() + ".class");
+            if (stream.isEmpty()) return false;
+            try (InputStream is = stream.get()) {
+                input = is.readAllBytes();
+            }
+        } catch (IOException e) {
+            LOGGER.debug(MODLAUNCHER, "Unable to read {} for pretransformation", className, e);
+            return false;
+        }
+        final byte[] output;
+        final List<ITransformerActivity> activities;
+        try (TransformerAuditTrail.Recording recording = speculative.getAuditTrail().record(className)) {
+            output = speculative.transform(input, className, ITransformerActivity.CLASSLOADING_REASON);
+            activities = recording.activities();
+        } catch (RuntimeException e) {
+            // Leave it for the classloader, which will report the failure in context
+            LOGGER.debug(MODLAUNCHER, "Failed to pretransform {}", className, e);
+            return false;
+        }
+        parked.put(className, new ParkedClass(ClassTransformer.getSha256().digest(input), output, activities));
+        parkedBytes.addAndGet(output.length);
+        return true;
+    }
+
+    /**
+     * Claim the pretransformed version of a class, if there is one and it was produced from the same input
+     */
+    @Nullable
+    byte[] take(final String className, final byte[] input) {
+        final ParkedClass parkedClass = parked.remove(className);
+        if (parkedClass == null) return null;
+        parkedBytes.addAndGet(-parkedClass.bytes().length);
+        if (!MessageDigest.isEqual(parkedClass.inputDigest(), ClassTransformer.getSha256().digest(input))) {
+            LOGGER.debug(MODLAUNCHER, "Discarding stale pretransformed class {}", className);
+            return null;
+        }
+        return classTransformer.replay(input, className, parkedClass.bytes(), parkedClass.activities());
+    }
+
+    /**
+     * Drop the classes which were pretransformed but not loaded
+     */
+    void release() {
+        if (parked.isEmpty()) return;
+        LOGGER.debug(MODLAUNCHER, "Releasing {} pretransformed classes which were not loaded", parked.size());
+        parked.clear();
+        parkedBytes.set(0);
+    }
+
+    private record Candidate(ModuleReader reader, String internalName) {}
+}
@@ -19,18 +19,18 @@
 package cpw.mods.modlauncher;
 
 import cpw.mods.modlauncher.api.*;
+import cpw.mods.modlauncher.jfr.*;
 import cpw.mods.modlauncher.serviceapi.ILaunchPluginService;
 import org.apache.logging.log4j.*;
+import org.jetbrains.annotations.Nullable;
 import org.objectweb.asm.*;
 import org.objectweb.asm.tree.*;
 
 import java.io.IOException;
 import java.nio.file.Files;
-import java.nio.file.Path;
 import java.security.*;
 import java.util.*;
 import java.util.function.Supplier;
-import java.util.stream.*;
 
 import static cpw.mods.modlauncher.LogMarkers.MODLAUNCHER;
 
@@ -39,87 +39,231 @@ import static cpw.mods.modlauncher.LogMarkers.MODLAUNCHER;
  */
 public class ClassTransformer {
     private static final byte[] EMPTY = new byte[0];
+    private static final int SPECULATIVE_TRAILS = 1024;
     private static final Logger LOGGER = LogManager.getLogger();
     private final Marker CLASSDUMP = MarkerManager.getMarker("CLASSDUMP");
     private final TransformStore transformers;
     private final LaunchPluginHandler pluginHandler;
     private final TransformingClassLoader transformingClassLoader;
     private final TransformerAuditTrail auditTrail;
+    @Nullable
+    private final TransformCache transformCache;
+    private final ComputingFramesMemo framesMemo = new ComputingFramesMemo();
+    private final TransformerMetrics metrics;
+    @Nullable
+    private final ClassDumper classDumper;
+    private static ClassDumper markerDumper;
 
     ClassTransformer(TransformStore transformStore, LaunchPluginHandler pluginHandler, final TransformingClassLoader transformingClassLoader) {
         this(transformStore, pluginHandler, transformingClassLoader, new TransformerAuditTrail());
     }
 
     ClassTransformer(final TransformStore transformStore, final LaunchPluginHandler pluginHandler, final TransformingClassLoader transformingClassLoader, final TransformerAuditTrail tat) {
+        this(transformStore, pluginHandler, transformingClassLoader, tat, null);
+    }
+
+    ClassTransformer(final TransformStore transformStore, final LaunchPluginHandler pluginHandler, final TransformingClassLoader transformingClassLoader, final TransformerAuditTrail tat, @Nullable final TransformCache transformCache) {
+        this(transformStore, pluginHandler, transformingClassLoader, tat, transformCache, new TransformerMetrics());
+    }
+
+    ClassTransformer(final TransformStore transformStore, final LaunchPluginHandler pluginHandler, final TransformingClassLoader transformingClassLoader, final TransformerAuditTrail tat, @Nullable final TransformCache transformCache, final TransformerMetrics metrics) {
+        this(transformStore, pluginHandler, transformingClassLoader, tat, transformCache, metrics, null);
+    }
+
+    ClassTransformer(final TransformStore transformStore, final LaunchPluginHandler pluginHandler, final TransformingClassLoader transformingClassLoader, final TransformerAuditTrail tat, @Nullable final TransformCache transformCache, final TransformerMetrics metrics, @Nullable final ClassDumper classDumper) {
         this.transformers = transformStore;
         this.pluginHandler = pluginHandler;
         this.transformingClassLoader = transformingClassLoader;
         this.auditTrail = tat;
+        this.transformCache = transformCache;
+        this.metrics = metrics;
+        this.classDumper = classDumper;
     }
 
     byte[] transform(byte[] inputClass, String className, final String reason) {
+        final ClassTransformEvent event = new ClassTransformEvent();
+        event.begin();
+        final long start = System.nanoTime();
+        // The activities of this transform are kept with the result by the cache and the frame computation memo.
+        // Only real classloading of classes no plugin can handle is cached: plugins must be offered every class they handle
+        final boolean cacheable = transformCache != null && ITransformerActivity.CLASSLOADING_REASON.equals(reason) && !pluginHandler.mayHandle(className);
+        final TransformerAuditTrail.Recording recording = cacheable || ITransformerActivity.COMPUTING_FRAMES_REASON.equals(reason) ? auditTrail.record(className) : null;
+        try {
+            final byte[] result = transformClass(inputClass, className, reason, cacheable, recording);
+            metrics.classProcessed(className, reason, inputClass.length, result.length, System.nanoTime() - start);
+            if (ITransformerActivity.CLASSLOADING_REASON.equals(reason)) {
+                dumpClass(result, className, result != inputClass);
+            }
+            if (event.shouldCommit()) {
+                event.className = className;
+                event.reason = reason;
+                event.inputSize = inputClass.length;
+                event.outputSize = result.length;
+                event.commit();
+            }
+            return result;
+        } finally {
+            if (recording != null) recording.close();
+            auditTrail.classProcessed(className);
+        }
+    }
+
+    /**
+     * A copy of this transformer for transforming classes before they are loaded. It has its own audit trail and
+     * metrics, and no class dump, so speculative work leaves no trace until {@link #replay} accounts for a result.
+     */
+    ClassTransformer speculative() {
+        final TransformerAuditTrail trail = auditTrail.isRecording() ? new TransformerAuditTrail(TransformerAuditTrail.Retention.RING, SPECULATIVE_TRAILS) : new TransformerAuditTrail(TransformerAuditTrail.Retention.OFF);
+        return new ClassTransformer(transformers, pluginHandler, transformingClassLoader, trail, transformCache, new TransformerMetrics(), null);
+    }
+
+    /**
+     * Account for a class transformed ahead of time by a {@link #speculative()} copy, now that it is being loaded:
+     * its activities are added to the audit trail, and it is counted and dumped as if it had just been transformed.
+     */
+    byte[] replay(final byte[] inputClass, final String className, final byte[] result, final List<ITransformerActivity> activities) {
+        try {
+            auditTrail.addReason(className, ITransformerActivity.CLASSLOADING_REASON);
+            for (ITransformerActivity activity : activities) {
+                auditTrail.addActivity(className, activity.getType(), activity.getContext());
+            }
+            metrics.classTransformed(ITransformerActivity.CLASSLOADING_REASON);
+            metrics.classProcessed(className, ITransformerActivity.CLASSLOADING_REASON, inputClass.length, result.length, 0);
+            dumpClass(result, className, result != inputClass);
+            return result;
+        } finally {
+            auditTrail.classProcessed(className);
+        }
+    }
+
+    private byte[] transformClass(byte[] inputClass, String className, final String reason, final boolean cacheable, @Nullable final TransformerAuditTrail.Recording recording) {
+        // Classes nobody could touch are returned after one cheap check
+        if (!transformers.mayNeedTransforming(className) && !pluginHandler.mayHandle(className)) {
+            return inputClass;
+        }
         final String internalName = className.replace('.', '/');
         final Type classDesc = Type.getObjectType(internalName);
 
-        final EnumMap<ILaunchPluginService.Phase, List<ILaunchPluginService>> launchPluginTransformerSet = pluginHandler.computeLaunchPluginTransformerSet(classDesc, inputClass.length == 0, reason, this.auditTrail);
-
         final boolean needsTransforming = transformers.needsTransforming(internalName);
+
+        // Looked up before the plugins are asked about the class, as none of them will be given it
+        final byte[] inputDigest = cacheable && needsTransforming ? getSha256().digest(inputClass) : null;
+        if (inputDigest != null) {
+            final Optional<TransformCache.CachedClass> cached = transformCache.get(className, inputDigest);
+            if (cached.isPresent()) {
+                metrics.classTransformed(reason);
+                final String binaryName = classDesc.getClassName();
+                auditTrail.addReason(binaryName, reason);
+                for (TransformCache.CachedActivity activity : cached.get().activities()) {
+                    auditTrail.addActivity(binaryName, activity.type(), activity.context());
+                }
+                return cached.get().bytes() != null ? cached.get().bytes() : inputClass;
+            }
+        }
+
+        final EnumMap<ILaunchPluginService.Phase, List<ILaunchPluginService>> launchPluginTransformerSet = pluginHandler.computeLaunchPluginTransformerSet(classDesc, inputClass.length == 0, reason, this.auditTrail);
         if (!needsTransforming && launchPluginTransformerSet.isEmpty()) {
             return inputClass;
         }
+        metrics.classTransformed(reason);
+
+        // Reuse the transformer work done when this class was needed for frame computation
+        if (needsTransforming && launchPluginTransformerSet.isEmpty() && ITransformerActivity.CLASSLOADING_REASON.equals(reason)) {
+            final ComputingFramesMemo.Entry memo = framesMemo.take(className, inputClass);
+            if (memo != null) {
+                auditTrail.addReason(classDesc.getClassName(), reason);
+                for (ITransformerActivity activity : memo.activities()) {
+                    auditTrail.addActivity(classDesc.getClassName(), activity.getType(), activity.getContext());
+                }
+                final ClassNode clazz = new ClassNode(Opcodes.ASM9);
+                final long parseStart = System.nanoTime();
+                new ClassReader(memo.bytes()).accept(clazz, ClassReader.SKIP_FRAMES);
+                final long writeStart = System.nanoTime();
+                metrics.record(ITransformerMetrics.Stage.PARSE, writeStart - parseStart);
+                final byte[] result = writeClass(clazz, ILaunchPluginService.ComputeFlags.COMPUTE_FRAMES);
+                metrics.record(ITransformerMetrics.Stage.WRITE, System.nanoTime() - writeStart);
+                return cacheResult(className, inputDigest, recording, inputClass, result);
+            }
+        }
 
-        ClassNode clazz = new ClassNode(Opcodes.ASM9);
+        // With only field and method transformers, and no plugins, untargeted methods are never parsed into the tree
+        final boolean selective = inputClass.length > 0 && needsTransforming && launchPluginTransformerSet.isEmpty()
+                && transformers.getTransformersFor(className, TargetType.PRE_CLASS).isEmpty()
+                && transformers.getTransformersFor(className, TargetType.CLASS).isEmpty();
+        ClassNode clazz = selective ? new TargetedMethodsClassNode(className) : new ClassNode(Opcodes.ASM9);
         Supplier<byte[]> digest;
         boolean empty;
+        ClassReader classReader = null;
         if (inputClass.length > 0) {
-            final ClassReader classReader = new ClassReader(inputClass);
-            classReader.accept(clazz, ClassReader.EXPAND_FRAMES);
-            digest = ()->getSha256().digest(inputClass);
+            final ClassParseEvent parseEvent = new ClassParseEvent();
+            parseEvent.begin();
+            final long parseStart = System.nanoTime();
+            classReader = new ClassReader(inputClass);
+            classReader.accept(clazz, needsExpandedFrames(internalName, launchPluginTransformerSet) ? ClassReader.EXPAND_FRAMES : 0);
+            metrics.record(ITransformerMetrics.Stage.PARSE, System.nanoTime() - parseStart);
+            if (parseEvent.shouldCommit()) {
+                parseEvent.className = className;
+                parseEvent.reason = reason;
+                parseEvent.size = inputClass.length;
+                parseEvent.commit();
+            }
+            digest = inputDigest != null ? inputDigest::clone : ()->getSha256().digest(inputClass);
             empty = false;
         } else {
             clazz.name = classDesc.getInternalName();
             clazz.version = 52;
             clazz.superName = "java/lang/Object";
-            digest = ()->getSha256().digest(EMPTY);
+            digest = inputDigest != null ? inputDigest::clone : ()->getSha256().digest(EMPTY);
             empty = true;
         }
         auditTrail.addReason(classDesc.getClassName(), reason);
 
-        final int preFlags = pluginHandler.offerClassNodeToPlugins(ILaunchPluginService.Phase.BEFORE, launchPluginTransformerSet.getOrDefault(ILaunchPluginService.Phase.BEFORE, Collections.emptyList()), clazz, classDesc, auditTrail, reason);
+        final int preFlags = pluginHandler.offerClassNodeToPlugins(ILaunchPluginService.Phase.BEFORE, launchPluginTransformerSet.getOrDefault(ILaunchPluginService.Phase.BEFORE, Collections.emptyList()), clazz, classDesc, auditTrail, metrics, reason);
         if (preFlags == ILaunchPluginService.ComputeFlags.NO_REWRITE && !needsTransforming && launchPluginTransformerSet.getOrDefault(ILaunchPluginService.Phase.AFTER, Collections.emptyList()).isEmpty()) {
             // Shortcut if there's no further work to do
-            return inputClass;
+            return cacheResult(className, inputDigest, recording, inputClass, inputClass);
         }
 
+        VotingContext context = null;
+        // Methods changed by transformers, if only method and field transformers changed anything
+        boolean[] dirtyMethods = null;
         if (needsTransforming) {
-            VotingContext context = new VotingContext(className, empty, digest, auditTrail.getActivityFor(className), reason);
+            context = new VotingContext(className, empty, digest, auditTrail.getActivityFor(className), reason);
 
-            List<ITransformer<ClassNode>> preClassTransformers = new ArrayList<>(transformers.getTransformersFor(className, TargetType.PRE_CLASS));
+            List<ITransformer<ClassNode>> preClassTransformers = transformers.getTransformersFor(className, TargetType.PRE_CLASS);
             clazz = this.performVote(preClassTransformers, clazz, context);
+            final int classTransformations = context.getTransformationCount();
 
             List<FieldNode> fieldList = new ArrayList<>(clazz.fields.size());
             // it's probably possible to inject "dummy" fields into this list for spawning new fields without class transform
             for (FieldNode field : clazz.fields) {
-                List<ITransformer<FieldNode>> fieldTransformers = new ArrayList<>(transformers.getTransformersFor(className, field));
+                List<ITransformer<FieldNode>> fieldTransformers = transformers.getTransformersFor(className, field);
                 fieldList.add(this.performVote(fieldTransformers, field, context));
             }
 
             // it's probably possible to inject "dummy" methods into this list for spawning new methods without class transform
             List<MethodNode> methodList = new ArrayList<>(clazz.methods.size());
-            for (MethodNode method : clazz.methods) {
-                List<ITransformer<MethodNode>> methodTransformers = new ArrayList<>(transformers.getTransformersFor(className, method));
-                methodList.add(this.performVote(methodTransformers, method, context));
+            final boolean[] methodChanged = new boolean[clazz.methods.size()];
+            for (int i = 0; i < clazz.methods.size(); i++) {
+                List<ITransformer<MethodNode>> methodTransformers = transformers.getTransformersFor(className, clazz.methods.get(i));
+                final int before = context.getTransformationCount();
+                methodList.add(this.performVote(methodTransformers, clazz.methods.get(i), context));
+                methodChanged[i] = context.getTransformationCount() != before;
             }
 
             clazz.fields = fieldList;
             clazz.methods = methodList;
-            List<ITransformer<ClassNode>> classTransformers = new ArrayList<>(transformers.getTransformersFor(className, TargetType.CLASS));
+            final int memberTransformations = context.getTransformationCount();
+            List<ITransformer<ClassNode>> classTransformers = transformers.getTransformersFor(className, TargetType.CLASS);
             clazz = this.performVote(classTransformers, clazz, context);
+            if (classTransformations == 0 && context.getTransformationCount() == memberTransformations) {
+                dirtyMethods = methodChanged;
+            }
         }
 
-        final int postFlags = pluginHandler.offerClassNodeToPlugins(ILaunchPluginService.Phase.AFTER, launchPluginTransformerSet.getOrDefault(ILaunchPluginService.Phase.AFTER, Collections.emptyList()), clazz, classDesc, auditTrail, reason);
+        final int postFlags = pluginHandler.offerClassNodeToPlugins(ILaunchPluginService.Phase.AFTER, launchPluginTransformerSet.getOrDefault(ILaunchPluginService.Phase.AFTER, Collections.emptyList()), clazz, classDesc, auditTrail, metrics, reason);
         if (preFlags == ILaunchPluginService.ComputeFlags.NO_REWRITE && postFlags == ILaunchPluginService.ComputeFlags.NO_REWRITE && !needsTransforming) {
-            return inputClass;
+            return cacheResult(className, inputDigest, recording, inputClass, inputClass);
         }
 
         //Transformers always get compute_frames
@@ -129,73 +273,262 @@ public class ClassTransformer {
         if (reason.equals(ITransformerActivity.COMPUTING_FRAMES_REASON))
             mergedFlags &= ~ILaunchPluginService.ComputeFlags.COMPUTE_FRAMES;
 
+        final ClassWriteEvent writeEvent = new ClassWriteEvent();
+        writeEvent.begin();
+        final long writeStart = System.nanoTime();
+        final byte[] result;
+        if (classReader != null && dirtyMethods != null && preFlags == ILaunchPluginService.ComputeFlags.NO_REWRITE && postFlags == ILaunchPluginService.ComputeFlags.NO_REWRITE) {
+            final BitSet parsedMethods = selective ? ((TargetedMethodsClassNode) clazz).parsedMethods : null;
+            result = writeClass(classReader, clazz, parsedMethods, dirtyMethods, mergedFlags);
+        } else if (selective) {
+            // Can't happen: without class transformers and plugins only the methods can have changed
+            throw new IllegalStateException("Selectively parsed class " + className + " cannot be written");
+        } else if (classReader != null && (mergedFlags & ILaunchPluginService.ComputeFlags.COMPUTE_FRAMES) != 0) {
+            // Only compute frames for the methods that changed, if the rest of the class allows it
+            final byte[] written = MethodFrameWriter.write(classReader, inputClass, clazz, this);
+            result = written != null ? written : writeClass(clazz, mergedFlags);
+        } else {
+            result = writeClass(clazz, mergedFlags);
+        }
+        metrics.record(ITransformerMetrics.Stage.WRITE, System.nanoTime() - writeStart);
+        if (writeEvent.shouldCommit()) {
+            writeEvent.className = className;
+            writeEvent.reason = reason;
+            writeEvent.flags = mergedFlags;
+            writeEvent.size = result.length;
+            writeEvent.commit();
+        }
+        if (recording != null && context != null && !context.isReasonObserved() && launchPluginTransformerSet.isEmpty() && reason.equals(ITransformerActivity.COMPUTING_FRAMES_REASON)) {
+            framesMemo.put(className, inputClass, result, recording.activities());
+        }
+        return cacheResult(className, inputDigest, recording, inputClass, result);
+    }
+
+    private byte[] writeClass(final ClassNode clazz, final int mergedFlags) {
         final ClassWriter cw = TransformerClassWriter.createClassWriter(mergedFlags, this, clazz);
         clazz.accept(cw);
-        if (LOGGER.isEnabled(Level.TRACE) && ITransformerActivity.CLASSLOADING_REASON.equals(reason) && LOGGER.isEnabled(Level.TRACE, CLASSDUMP)) {
-            dumpClass(cw.toByteArray(), className);
-        }
         return cw.toByteArray();
     }
 
-    private static Path tempDir;
-    private void dumpClass(final byte[] clazz, String className) {
-        if (tempDir == null) {
-            synchronized (ClassTransformer.class) {
-                if (tempDir == null) {
-                    try {
-                        tempDir = Files.createTempDirectory("classDump");
-                    } catch (IOException e) {
-                        LOGGER.error(MODLAUNCHER, "Failed to create temporary directory");
-                        return;
+    /**
+     * Write a class where only fields and the flagged methods were transformed. The writer shares the constant pool
+     * of the original class, and unchanged methods are copied verbatim from it, frames included.
+     *
+     * @param parsedMethods the indexes of the original methods present in the node, or null if all of them are
+     */
+    private byte[] writeClass(final ClassReader classReader, final ClassNode clazz, @Nullable final BitSet parsedMethods, final boolean[] dirtyMethods, final int mergedFlags) {
+        final ClassWriter cw = TransformerClassWriter.createClassWriter(classReader, mergedFlags, this, clazz);
+        final List<MethodNode> methods = clazz.methods;
+        // Everything but the methods comes from the node
+        clazz.methods = Collections.emptyList();
+        try {
+            clazz.accept(new ClassVisitor(Opcodes.ASM9, cw) {
+                @Override
+                public void visitEnd() {
+                }
+            });
+        } finally {
+            clazz.methods = methods;
+        }
+        // Methods are emitted in their original order. Returning the writer's own MethodWriter makes ASM copy the method
+        classReader.accept(new ClassVisitor(Opcodes.ASM9) {
+            private int index;
+            private int nodeIndex;
+
+            @Override
+            public MethodVisitor visitMethod(final int access, final String name, final String descriptor, final String signature, final String[] exceptions) {
+                if (parsedMethods == null || parsedMethods.get(index++)) {
+                    final int i = nodeIndex++;
+                    if (dirtyMethods[i]) {
+                        methods.get(i).accept(cw);
+                        return null;
                     }
                 }
+                return cw.visitMethod(access, name, descriptor, signature, exceptions);
             }
+        }, 0);
+        cw.visitEnd();
+        return cw.toByteArray();
+    }
+
+    /**
+     * Class node which only parses the methods targeted by a method transformer. The others are left out of the
+     * tree and are copied from the original class when it is written.
+     */
+    private final class TargetedMethodsClassNode extends ClassNode {
+        private final String className;
+        private final BitSet parsedMethods = new BitSet();
+        private int methodIndex;
+
+        TargetedMethodsClassNode(final String className) {
+            super(Opcodes.ASM9);
+            this.className = className;
         }
-        try {
-            final Path tempFile = tempDir.resolve(className + ".class");
-            Files.write(tempFile, clazz);
-            LOGGER.info(MODLAUNCHER, "Wrote {} byte class file {} to {}", clazz.length, className, tempFile);
-        } catch (IOException e) {
-            LOGGER.error(MODLAUNCHER, "Failed to write class file {}", className, e);
+
+        @Override
+        public MethodVisitor visitMethod(final int access, final String name, final String descriptor, final String signature, final String[] exceptions) {
+            final int index = methodIndex++;
+            if (transformers.getTransformersFor(className, name, descriptor).isEmpty()) {
+                return null;
+            }
+            parsedMethods.set(index);
+            return super.visitMethod(access, name, descriptor, signature, exceptions);
+        }
+    }
+
+    /**
+     * Frames are only expanded if a transformer or plugin for the class declares it needs them. Otherwise they are
+     * left compressed, which is still valid for methods that are written out unchanged.
+     */
+    private boolean needsExpandedFrames(final String internalName, final EnumMap<ILaunchPluginService.Phase, List<ILaunchPluginService>> launchPluginTransformerSet) {
+        if (transformers.needsExpandedFrames(internalName)) return true;
+        for (List<ILaunchPluginService> plugins : launchPluginTransformerSet.values()) {
+            for (ILaunchPluginService plugin : plugins) {
+                if (plugin.needsExpandedFrames()) return true;
+            }
         }
+        return false;
     }
 
+    /**
+     * Whether the class can be transformed ahead of loading: transformers target it or a launch plugin claimed it, and
+     * no plugin which is asked about each class could handle it, as those plugins expect to see only the classes
+     * actually loaded
+     */
+    boolean mayPretransform(final String internalName) {
+        if (pluginHandler.mayBeAskedAbout(internalName)) return false;
+        return transformers.mayNeedTransforming(internalName) && transformers.needsTransforming(internalName) || pluginHandler.isClaimed(internalName);
+    }
+
+    /**
+     * Whether any transformer or launch plugin might change the class, when loaded for the given reason
+     */
+    boolean mayTransform(final String internalName, final String reason) {
+        if (!transformers.mayNeedTransforming(internalName) && !pluginHandler.mayHandle(internalName)) return false;
+        return transformers.needsTransforming(internalName) || pluginHandler.anyPluginHandles(Type.getObjectType(internalName), reason);
+    }
+
+    private byte[] cacheResult(final String className, @Nullable final byte[] inputDigest, @Nullable final TransformerAuditTrail.Recording recording, final byte[] inputClass, final byte[] result) {
+        if (inputDigest != null && recording != null) {
+            transformCache.put(className, inputDigest, result == inputClass ? null : result, recording.activities());
+        }
+        return result;
+    }
+
+    /**
+     * Hand a loaded class to the class dump: the one configured for the launch, or with the CLASSDUMP marker enabled
+     * at TRACE, the transformed classes to a temporary directory.
+     */
+    private void dumpClass(final byte[] bytes, final String className, final boolean transformed) {
+        ClassDumper dumper = classDumper;
+        if (dumper == null) {
+            if (!LOGGER.isEnabled(Level.TRACE) || !LOGGER.isEnabled(Level.TRACE, CLASSDUMP)) return;
+            dumper = markerDumper();
+            if (dumper == null) return;
+        }
+        dumper.offer(className, bytes, transformed);
+    }
+
+    @Nullable
+    private static synchronized ClassDumper markerDumper() {
+        if (markerDumper == null) {
+            try {
+                markerDumper = ClassDumper.open(Files.createTempDirectory("classDump"), "transformed").orElse(null);
+            } catch (IOException e) {
+                LOGGER.error(MODLAUNCHER, "Failed to create temporary directory");
+            }
+        }
+        return markerDumper;
+    }
+
+    /**
+     * Run the voting rounds for a node. The transformers still voting are tracked in a bit mask (with a BitSet
+     * only for transformers past the 64th), so a round allocates nothing unless someone rejects or deadlocks.
+     */
     private <T> T performVote(List<ITransformer<T>> transformers, T node, VotingContext context) {
+        final int count = transformers.size();
+        if (count == 0) {
+            return node;
+        }
         context.setNode(node);
+        long remaining = count >= 64 ? -1L : (1L << count) - 1;
+        final BitSet remainingOverflow = count > 64 ? new BitSet(count) : null;
+        if (remainingOverflow != null) {
+            remainingOverflow.set(64, count);
+        }
         do {
-            final Stream<TransformerVote<T>> voteResultStream = transformers.stream().map(t -> gatherVote(t, context));
-            final Map<TransformerVoteResult, List<TransformerVote<T>>> results = voteResultStream.collect(Collectors.groupingBy(TransformerVote::getResult));
-            // Someone rejected the current state. We're done here, and cannot proceed.
-            if (results.containsKey(TransformerVoteResult.REJECT)) {
-                throw new VoteRejectedException(results.get(TransformerVoteResult.REJECT), node.getClass());
+            final TransformerVoteEvent event = new TransformerVoteEvent();
+            event.begin();
+            int yes = -1;
+            int voters = 0;
+            List<TransformerVote<T>> rejections = null;
+            long voteStart = System.nanoTime();
+            for (int i = 0; i < count; i++) {
+                if (i < 64 ? (remaining & (1L << i)) == 0 : !remainingOverflow.get(i)) continue;
+                voters++;
+                final ITransformer<T> transformer = transformers.get(i);
+                final TransformerVoteResult vote = transformer.castVote(context);
+                final long voted = System.nanoTime();
+                metrics.record(ITransformerMetrics.Stage.VOTE, transformer, voted - voteStart);
+                voteStart = voted;
+                if (vote == TransformerVoteResult.REJECT) {
+                    if (rejections == null) rejections = new ArrayList<>();
+                    rejections.add(new TransformerVote<>(vote, transformer));
+                } else if (vote == TransformerVoteResult.NO) {
+                    // "NO" voters don't wish to participate in further voting rounds
+                    if (i < 64) remaining &= ~(1L << i);
+                    else remainingOverflow.clear(i);
+                } else if (vote == TransformerVoteResult.YES && yes < 0) {
+                    yes = i;
+                }
             }
-            // Remove all the "NO" voters - they don't wish to participate in further voting rounds
-            if (results.containsKey(TransformerVoteResult.NO)) {
-                transformers.removeAll(results.get(TransformerVoteResult.NO).stream().map(TransformerVote::getTransformer).collect(Collectors.toList()));
+            // Someone rejected the current state. We're done here, and cannot proceed.
+            if (rejections != null) {
+                throw new VoteRejectedException(rejections, node.getClass());
             }
             // If there's at least one YES voter, let's apply the first one we find, remove them, and continue.
-            if (results.containsKey(TransformerVoteResult.YES)) {
-                final ITransformer<T> transformer = results.get(TransformerVoteResult.YES).get(0).getTransformer();
+            if (yes >= 0) {
+                final ITransformer<T> transformer = transformers.get(yes);
+                final long transformStart = System.nanoTime();
                 node = transformer.transform(node, context);
+                metrics.record(ITransformerMetrics.Stage.TRANSFORM, transformer, System.nanoTime() - transformStart);
+                context.transformationApplied();
                 auditTrail.addTransformerAuditTrail(context.getClassName(), ((TransformerHolder<?>)transformer).owner(), transformer);
-                transformers.remove(transformer);
+                if (yes < 64) remaining &= ~(1L << yes);
+                else remainingOverflow.clear(yes);
+                commitVoteEvent(event, context, voters, transformer);
                 continue;
             }
-            // If we get here and find a DEFER, it means everyone just voted to DEFER. That's an untenable state and we cannot proceed.
-            if (results.containsKey(TransformerVoteResult.DEFER)) {
-                throw new VoteDeadlockException(results.get(TransformerVoteResult.DEFER), node.getClass());
+            // If we get here and anyone is left, they all voted to DEFER. That's an untenable state and we cannot proceed.
+            if (remaining != 0 || (remainingOverflow != null && !remainingOverflow.isEmpty())) {
+                final List<TransformerVote<T>> deferrals = new ArrayList<>();
+                for (int i = 0; i < count; i++) {
+                    if (i < 64 ? (remaining & (1L << i)) != 0 : remainingOverflow.get(i)) {
+                        deferrals.add(new TransformerVote<>(TransformerVoteResult.DEFER, transformers.get(i)));
+                    }
+                }
+                throw new VoteDeadlockException(deferrals, node.getClass());
             }
+            commitVoteEvent(event, context, voters, null);
         }
-        while (!transformers.isEmpty());
+        while (remaining != 0 || (remainingOverflow != null && !remainingOverflow.isEmpty()));
         return node;
     }
 
-    private <T> TransformerVote<T> gatherVote(ITransformer<T> transformer, VotingContext context) {
-        TransformerVoteResult vr = transformer.castVote(context);
-        return new TransformerVote<>(vr, transformer);
+    private static void commitVoteEvent(final TransformerVoteEvent event, final VotingContext context, final int voters, @Nullable final ITransformer<?> applied) {
+        if (event.shouldCommit()) {
+            event.className = context.getClassName();
+            event.reason = context.reason();
+            event.voters = voters;
+            if (applied != null) {
+                event.service = applied instanceof TransformerHolder<?> holder && holder.owner() != null ? holder.owner().name() : null;
+                event.transformer = String.join(":", applied.labels());
+            }
+            event.commit();
+        }
     }
 
-    private MessageDigest getSha256() {
+    static MessageDigest getSha256() {
         try {
             return MessageDigest.getInstance("SHA-256");
         } catch (NoSuchAlgorithmException e) {
@@ -206,4 +539,12 @@ public class ClassTransformer {
     TransformingClassLoader getTransformingClassLoader() {
         return transformingClassLoader;
     }
+
+    TransformerMetrics getMetrics() {
+        return metrics;
+    }
+
+    TransformerAuditTrail getAuditTrail() {
+        return auditTrail;
+    }
 }
@@ -0,0 +1,67 @@
+/*
+ * ModLauncher - for launching Java programs with in-flight transformation ability.
+ *
+ *     Copyright (C) 2017-2019 cpw
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Lesser General Public License as published by
+ *     the Free Software Foundation, version 3 of the License.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Lesser General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Lesser General Public License
+ *     along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package cpw.mods.modlauncher;
+
+import cpw.mods.modlauncher.api.ITransformerActivity;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.*;
+
+/**
+ * Short-lived memo of classes transformed for frame computation, so the transformer work can be reused when the
+ * class is loaded for real. Only results that did not depend on the transformation reason are memoized.
+ *
+ * Entries are removed when they are used, and the least recently used entries are dropped beyond a fixed size.
+ */
+final class ComputingFramesMemo {
+    private static final int MAX_ENTRIES = 256;
+    private final Map<String, Entry> entries = new LinkedHashMap<>(64, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(final Map.Entry<String, Entry> eldest) {
+            return size() > MAX_ENTRIES;
+        }
+    };
+
+    /**
+     * @param input the untransformed class, compared in full as a different class must never be handed out
+     * @param bytes the transformed class, written without frames
+     * @param activities the transformer activities recorded while transforming it
+     */
+    record Entry(byte[] input, byte[] bytes, List<ITransformerActivity> activities) {}
+
+    void put(final String className, final byte[] input, final byte[] bytes, final List<ITransformerActivity> activities) {
+        final Entry entry = new Entry(input, bytes, activities);
+        synchronized (entries) {
+            entries.put(className, entry);
+        }
+    }
+
+    /**
+     * Remove and return the memoized result for the class, if it was produced from the same input
+     */
+    @Nullable
+    Entry take(final String className, final byte[] input) {
+        final Entry entry;
+        synchronized (entries) {
+            if (entries.isEmpty()) return null;
+            entry = entries.remove(className);
+        }
+        return entry != null && Arrays.equals(entry.input(), input) ? entry : null;
+    }
+}
@@ -0,0 +1,77 @@
+/*
+ * ModLauncher - for launching Java programs with in-flight transformation ability.
+ *
+ *     Copyright (C) 2017-2019 cpw
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Lesser General Public License as published by
+ *     the Free Software Foundation, version 3 of the License.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Lesser General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Lesser General Public License
+ *     along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package cpw.mods.modlauncher;
+
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Map;
+
+/**
+ * Immutable open-addressed map from strings, safe to read from any thread once constructed.
+ *
+ * Hashes, keys and values are held in parallel arrays at most half full, and probed linearly. Values can't be null.
+ */
+final class FrozenStringMap<V> {
+    private final int[] hashes;
+    private final String[] keys;
+    private final Object[] values;
+    private final int mask;
+    private final int size;
+
+    FrozenStringMap(final Map<String, ? extends V> source) {
+        int capacity = 2;
+        while (capacity < source.size() * 2) capacity <<= 1;
+        this.hashes = new int[capacity];
+        this.keys = new String[capacity];
+        this.values = new Object[capacity];
+        this.mask = capacity - 1;
+        this.size = source.size();
+        source.forEach((key, value) -> {
+            final int hash = hash(key);
+            int i = hash & mask;
+            while (keys[i] != null) i = (i + 1) & mask;
+            hashes[i] = hash;
+            keys[i] = key;
+            values[i] = value;
+        });
+    }
+
+    private static int hash(final String key) {
+        final int h = key.hashCode();
+        return h ^ (h >>> 16);
+    }
+
+    @Nullable
+    @SuppressWarnings("unchecked")
+    V get(final String key) {
+        final int hash = hash(key);
+        for (int i = hash & mask; keys[i] != null; i = (i + 1) & mask) {
+            if (hashes[i] == hash && keys[i].equals(key)) return (V) values[i];
+        }
+        return null;
+    }
+
+    boolean containsKey(final String key) {
+        return get(key) != null;
+    }
+
+    int size() {
+        return size;
+    }
+}
@@ -22,6 +22,7 @@ import cpw.mods.jarhandling.SecureJar;
 import cpw.mods.modlauncher.api.IEnvironment;
 import cpw.mods.modlauncher.api.IModuleLayerManager;
 import cpw.mods.modlauncher.api.NamedPath;
+import cpw.mods.modlauncher.jfr.LaunchPluginEvent;
 import cpw.mods.modlauncher.util.ServiceLoaderUtils;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
@@ -29,6 +30,7 @@ import org.jetbrains.annotations.Nullable;
 import org.jetbrains.annotations.VisibleForTesting;
 import org.objectweb.asm.*;
 import org.objectweb.asm.tree.*;
+import cpw.mods.modlauncher.serviceapi.ClassClaims;
 import cpw.mods.modlauncher.serviceapi.ILaunchPluginService;
 
 import java.util.*;
@@ -41,6 +43,18 @@ import static cpw.mods.modlauncher.LogMarkers.*;
 public class LaunchPluginHandler {
     private static final Logger LOGGER = LogManager.getLogger();
     private final Map<String, ILaunchPluginService> plugins;
+    // Plugins asked about each class through handlesClass
+    private final List<ILaunchPluginService> dynamicPlugins = new ArrayList<>();
+    // Plugins routed to the classes they claimed
+    private final Map<ILaunchPluginService, ClassClaims> claimingPlugins = new HashMap<>();
+    // Prefixes declared by each dynamic plugin which declared them
+    private final Map<ILaunchPluginService, ClassPrefixTrie> pluginPrefixes = new HashMap<>();
+    private volatile Routing routing;
+
+    /**
+     * @param candidatePrefixes every declared or claimed prefix, or null if any plugin may handle any class
+     */
+    private record Routing(PluginRoutingTable claims, @Nullable ClassPrefixTrie candidatePrefixes) {}
 
     public LaunchPluginHandler(final ModuleLayerHandler layerHandler) {
         this(ServiceLoaderUtils.streamServiceLoader(()->ServiceLoader.load(layerHandler.getLayer(IModuleLayerManager.Layer.BOOT).orElseThrow(), ILaunchPluginService.class),
@@ -62,43 +76,172 @@ public class LaunchPluginHandler {
                     });
         }
         LOGGER.debug(MODLAUNCHER,"Found launch plugins: [{}]", ()-> String.join(",", this.plugins.keySet()));
+        for (ILaunchPluginService plugin : this.plugins.values()) {
+            final Optional<ClassClaims> claims = plugin.classClaims();
+            if (claims.isPresent()) {
+                claimingPlugins.put(plugin, claims.get());
+                claims.get().addListener(this::buildRouting);
+            } else {
+                dynamicPlugins.add(plugin);
+                plugin.candidateClassPrefixes().ifPresent(prefixes -> pluginPrefixes.put(plugin, new ClassPrefixTrie(prefixes)));
+            }
+        }
+        buildRouting();
+    }
+
+    /**
+     * Rebuild the routing table from the current claims. Called again whenever a plugin adds claims.
+     */
+    private synchronized void buildRouting() {
+        final Map<ILaunchPluginService, Map<ILaunchPluginService.Phase, Set<String>>> claims = new HashMap<>();
+        final Set<String> allPrefixes = new HashSet<>();
+        claimingPlugins.forEach((plugin, pluginClaims) -> {
+            final Map<ILaunchPluginService.Phase, Set<String>> phaseClaims = pluginClaims.getClaims();
+            claims.put(plugin, phaseClaims);
+            phaseClaims.values().forEach(patterns -> patterns.forEach(pattern -> allPrefixes.add(PluginRoutingTable.stem(pattern))));
+        });
+        boolean unrestricted = false;
+        for (ILaunchPluginService plugin : dynamicPlugins) {
+            final ClassPrefixTrie prefixes = pluginPrefixes.get(plugin);
+            if (prefixes == null) {
+                unrestricted = true;
+                break;
+            }
+            allPrefixes.addAll(plugin.candidateClassPrefixes().orElseThrow());
+        }
+        this.routing = new Routing(new PluginRoutingTable(claims), unrestricted ? null : new ClassPrefixTrie(allPrefixes));
     }
 
     public Optional<ILaunchPluginService> get(final String name) {
         return Optional.ofNullable(plugins.get(name));
     }
 
+    Collection<ILaunchPluginService> getPlugins() {
+        return plugins.values();
+    }
+
+    /**
+     * @return the plugins handling the class in each phase
+     */
     public EnumMap<ILaunchPluginService.Phase, List<ILaunchPluginService>> computeLaunchPluginTransformerSet(final Type className, final boolean isEmpty, final String reason, final TransformerAuditTrail auditTrail) {
-        Set<ILaunchPluginService> uniqueValues = new HashSet<>();
-        final EnumMap<ILaunchPluginService.Phase, List<ILaunchPluginService>> phaseObjectEnumMap = new EnumMap<>(ILaunchPluginService.Phase.class);
-        for (ILaunchPluginService plugin : plugins.values()) {
-            for (ILaunchPluginService.Phase ph : plugin.handlesClass(className, isEmpty, reason)) {
+        final Routing routing = this.routing;
+        EnumMap<ILaunchPluginService.Phase, List<ILaunchPluginService>> phaseObjectEnumMap = routing.claims().isEmpty() ? null : routing.claims().route(className.getInternalName());
+        for (int i = 0; i < dynamicPlugins.size(); i++) {
+            final ILaunchPluginService plugin = dynamicPlugins.get(i);
+            if (!isCandidate(plugin, className)) continue;
+            final EnumSet<ILaunchPluginService.Phase> phases = plugin.handlesClass(className, isEmpty, reason);
+            if (phases.isEmpty()) continue;
+            if (phaseObjectEnumMap == null) phaseObjectEnumMap = new EnumMap<>(ILaunchPluginService.Phase.class);
+            for (ILaunchPluginService.Phase ph : phases) {
                 phaseObjectEnumMap.computeIfAbsent(ph, e -> new ArrayList<>()).add(plugin);
+            }
+        }
+        if (phaseObjectEnumMap == null) {
+            return new EnumMap<>(ILaunchPluginService.Phase.class);
+        }
+        final Set<ILaunchPluginService> uniqueValues = new HashSet<>();
+        for (List<ILaunchPluginService> phasePlugins : phaseObjectEnumMap.values()) {
+            for (ILaunchPluginService plugin : phasePlugins) {
                 if (uniqueValues.add(plugin)) {
                     plugin.customAuditConsumer(className.getClassName(), strings -> auditTrail.addPluginCustomAuditTrail(className.getClassName(), plugin, strings));
                 }
             }
         }
-        LOGGER.debug(LAUNCHPLUGIN, "LaunchPluginService {}", ()->phaseObjectEnumMap);
+        if (LOGGER.isDebugEnabled(LAUNCHPLUGIN)) {
+            LOGGER.debug(LAUNCHPLUGIN, "LaunchPluginService {}", phaseObjectEnumMap);
+        }
         return phaseObjectEnumMap;
     }
 
+    /**
+     * Whether any plugin wants to process the class, without registering audit consumers.
+     */
+    boolean anyPluginHandles(final Type className, final String reason) {
+        final Routing routing = this.routing;
+        if (!routing.claims().isEmpty() && routing.claims().matches(className.getInternalName())) {
+            return true;
+        }
+        for (ILaunchPluginService plugin : dynamicPlugins) {
+            if (isCandidate(plugin, className) && !plugin.handlesClass(className, false, reason).isEmpty()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Whether any plugin could handle the class, going only by the prefixes and claims plugins declared
+     *
+     * @param className the class name, in binary or internal form
+     */
+    boolean mayHandle(final String className) {
+        final ClassPrefixTrie candidatePrefixes = routing.candidatePrefixes();
+        return candidatePrefixes != null ? candidatePrefixes.matches(className) : !plugins.isEmpty();
+    }
+
+    /**
+     * Whether the class is claimed by a plugin through {@link ILaunchPluginService#classClaims()}
+     */
+    boolean isClaimed(final String internalName) {
+        final PluginRoutingTable claims = routing.claims();
+        return !claims.isEmpty() && claims.matches(internalName);
+    }
+
+    /**
+     * Whether a plugin which is asked about each class could handle the class, going only by the prefixes it declared
+     */
+    boolean mayBeAskedAbout(final String internalName) {
+        for (int i = 0; i < dynamicPlugins.size(); i++) {
+            final ClassPrefixTrie prefixes = pluginPrefixes.get(dynamicPlugins.get(i));
+            if (prefixes == null || prefixes.matches(internalName)) return true;
+        }
+        return false;
+    }
+
+    private boolean isCandidate(final ILaunchPluginService plugin, final Type className) {
+        final ClassPrefixTrie prefixes = pluginPrefixes.get(plugin);
+        return prefixes == null || prefixes.matches(className.getInternalName());
+    }
+
     void offerScanResultsToPlugins(List<SecureJar> scanResults) {
         plugins.forEach((n,p)->p.addResources(scanResults));
     }
 
-    int offerClassNodeToPlugins(final ILaunchPluginService.Phase phase, final List<ILaunchPluginService> plugins, @Nullable final ClassNode node, final Type className, TransformerAuditTrail auditTrail, final String reason) {
+    int offerClassNodeToPlugins(final ILaunchPluginService.Phase phase, final List<ILaunchPluginService> plugins, @Nullable final ClassNode node, final Type className, TransformerAuditTrail auditTrail, final TransformerMetrics metrics, final String reason) {
+        // checked once per class, so the log arguments are only built when they will be logged
+        final boolean debug = LOGGER.isDebugEnabled(LAUNCHPLUGIN);
         int flags = 0;
-        for (ILaunchPluginService iLaunchPluginService : plugins) {
-            LOGGER.debug(LAUNCHPLUGIN, "LauncherPluginService {} offering transform {}", iLaunchPluginService.name(), className.getClassName());
+        for (int i = 0; i < plugins.size(); i++) {
+            final ILaunchPluginService iLaunchPluginService = plugins.get(i);
+            if (debug) {
+                LOGGER.debug(LAUNCHPLUGIN, "LauncherPluginService {} offering transform {}", iLaunchPluginService.name(), className.getClassName());
+            }
+            final LaunchPluginEvent event = new LaunchPluginEvent();
+            event.begin();
+            final long start = System.nanoTime();
             final int pluginFlags = iLaunchPluginService.processClassWithFlags(phase, node, className, reason);
+            metrics.record(phase, iLaunchPluginService, System.nanoTime() - start);
+            if (event.shouldCommit()) {
+                event.className = className.getClassName();
+                event.reason = reason;
+                event.plugin = iLaunchPluginService.name();
+                event.phase = phase.name();
+                event.flags = pluginFlags;
+                event.commit();
+            }
             if (pluginFlags != ILaunchPluginService.ComputeFlags.NO_REWRITE) {
-                auditTrail.addPluginAuditTrail(className.getClassName(), iLaunchPluginService, phase);
-                LOGGER.debug(LAUNCHPLUGIN, "LauncherPluginService {} transformed {} with class compute flags {}", iLaunchPluginService.name(), className.getClassName(), pluginFlags);
+                if (auditTrail.isRecording()) {
+                    auditTrail.addPluginAuditTrail(className.getClassName(), iLaunchPluginService, phase);
+                }
+                if (debug) {
+                    LOGGER.debug(LAUNCHPLUGIN, "LauncherPluginService {} transformed {} with class compute flags {}", iLaunchPluginService.name(), className.getClassName(), pluginFlags);
+                }
                 flags |= pluginFlags;
             }
         }
-        LOGGER.debug(LAUNCHPLUGIN, "Final flags state for {} is {}", className.getClassName(), flags);
+        if (debug) {
+            LOGGER.debug(LAUNCHPLUGIN, "Final flags state for {} is {}", className.getClassName(), flags);
+        }
         return flags;
     }
 
@@ -45,10 +45,11 @@ class LaunchServiceHandler {
         return Optional.ofNullable(launchHandlerLookup.getOrDefault(name, null)).map(LaunchServiceHandlerDecorator::service);
     }
 
-    private void launch(String target, String[] arguments, ModuleLayer gameLayer, TransformingClassLoader classLoader, final LaunchPluginHandler launchPluginHandler) {
+    private void launch(String target, String[] arguments, ModuleLayer gameLayer, TransformingClassLoader classLoader, final LaunchPluginHandler launchPluginHandler, final Runnable beforeLaunch) {
         final LaunchServiceHandlerDecorator launchServiceHandlerDecorator = launchHandlerLookup.get(target);
         final NamedPath[] paths = launchServiceHandlerDecorator.service().getPaths();
         launchPluginHandler.announceLaunch(classLoader, paths);
+        beforeLaunch.run();
         LOGGER.info(MODLAUNCHER, "Launching target '{}' with arguments {}", target, hideAccessToken(arguments));
         launchServiceHandlerDecorator.launch(arguments, gameLayer);
     }
@@ -66,9 +67,16 @@ class LaunchServiceHandler {
     }
 
     public void launch(ArgumentHandler argumentHandler, ModuleLayer gameLayer, TransformingClassLoader classLoader, final LaunchPluginHandler launchPluginHandler) {
+        launch(argumentHandler, gameLayer, classLoader, launchPluginHandler, () -> {});
+    }
+
+    /**
+     * @param beforeLaunch run once the launch plugins have been told about the launch, just before the target starts
+     */
+    void launch(ArgumentHandler argumentHandler, ModuleLayer gameLayer, TransformingClassLoader classLoader, final LaunchPluginHandler launchPluginHandler, final Runnable beforeLaunch) {
         String launchTarget = argumentHandler.getLaunchTarget();
         String[] args = argumentHandler.buildArgumentList();
-        launch(launchTarget, args, gameLayer, classLoader, launchPluginHandler);
+        launch(launchTarget, args, gameLayer, classLoader, launchPluginHandler, beforeLaunch);
     }
 
     void validateLaunchTarget(final ArgumentHandler argumentHandler) {
@@ -42,6 +42,7 @@ public class Launcher {
     private final LaunchServiceHandler launchService;
     private final LaunchPluginHandler launchPlugins;
     private final ModuleLayerHandler moduleLayerHandler;
+    private final StartupTimeline timeline = new StartupTimeline();
     private TransformingClassLoader classLoader;
 
     private Launcher() {
@@ -55,7 +56,7 @@ public class Launcher {
         environment.computePropertyIfAbsent(IEnvironment.Keys.MLIMPL_VERSION.get(), s->IEnvironment.class.getPackage().getImplementationVersion());
         environment.computePropertyIfAbsent(IEnvironment.Keys.MODLIST.get(), s->new ArrayList<>());
         this.transformStore = new TransformStore();
-        this.transformationServicesHandler = new TransformationServicesHandler(this.transformStore, this.moduleLayerHandler);
+        this.transformationServicesHandler = new TransformationServicesHandler(this.transformStore, this.moduleLayerHandler, this.timeline);
         this.argumentHandler = new ArgumentHandler();
         this.launchPlugins = new LaunchPluginHandler(this.moduleLayerHandler);
     }
@@ -80,27 +81,44 @@ public class Launcher {
 
     private void run(String... args) {
         final ArgumentHandler.DiscoveryData discoveryData = this.argumentHandler.setArgs(args);
-        this.transformationServicesHandler.discoverServices(discoveryData);
+        timeline.time("discoverServices", () -> this.transformationServicesHandler.discoverServices(discoveryData));
         final var scanResults = this.transformationServicesHandler.initializeTransformationServices(this.argumentHandler, this.environment)
                 .stream().collect(Collectors.groupingBy(ITransformationService.Resource::target));
-        scanResults.getOrDefault(IModuleLayerManager.Layer.PLUGIN, List.of())
-                .stream()
-                .<SecureJar>mapMulti((resource, action) -> resource.resources().forEach(action))
-                .forEach(np->this.moduleLayerHandler.addToLayer(IModuleLayerManager.Layer.PLUGIN, np));
-        this.moduleLayerHandler.buildLayer(IModuleLayerManager.Layer.PLUGIN);
-        final var gameResults = this.transformationServicesHandler.triggerScanCompletion(this.moduleLayerHandler)
+        timeline.time("pluginLayer", () -> {
+            scanResults.getOrDefault(IModuleLayerManager.Layer.PLUGIN, List.of())
+                    .stream()
+                    .<SecureJar>mapMulti((resource, action) -> resource.resources().forEach(action))
+                    .forEach(np->this.moduleLayerHandler.addToLayer(IModuleLayerManager.Layer.PLUGIN, np));
+            this.moduleLayerHandler.buildLayer(IModuleLayerManager.Layer.PLUGIN);
+        });
+        final var gameResults = timeline.time("completeScan", () -> this.transformationServicesHandler.triggerScanCompletion(this.moduleLayerHandler))
                 .stream().collect(Collectors.groupingBy(ITransformationService.Resource::target));
         final var gameContents = Stream.of(scanResults, gameResults)
                 .flatMap(m -> m.getOrDefault(IModuleLayerManager.Layer.GAME, List.of()).stream())
                 .<SecureJar>mapMulti((resource, action) -> resource.resources().forEach(action))
                 .toList();
         gameContents.forEach(j->this.moduleLayerHandler.addToLayer(IModuleLayerManager.Layer.GAME, j));
-        this.transformationServicesHandler.initialiseServiceTransformers();
-        this.launchPlugins.offerScanResultsToPlugins(gameContents);
+        timeline.time("gatherTransformers", this.transformationServicesHandler::initialiseServiceTransformers);
+        timeline.time("offerScanResults", () -> this.launchPlugins.offerScanResultsToPlugins(gameContents));
         this.launchService.validateLaunchTarget(this.argumentHandler);
-        this.classLoader = this.transformationServicesHandler.buildTransformingClassLoader(this.launchPlugins, this.environment, this.moduleLayerHandler);
+        this.classLoader = timeline.time("gameLayer", () -> this.transformationServicesHandler.buildTransformingClassLoader(this.launchPlugins, this.environment, this.moduleLayerHandler));
+        if (this.environment.getProperty(IEnvironment.Keys.JMX.get()).orElse(false) || TransformationStatistics.isRemoteJmxEnabled()) {
+            new TransformationStatistics(this.transformStore, this.classLoader.getClassTransformer()).register();
+        }
         Thread.currentThread().setContextClassLoader(this.classLoader);
-        this.launchService.launch(this.argumentHandler, this.moduleLayerHandler.getLayer(IModuleLayerManager.Layer.GAME).orElseThrow(), this.classLoader, this.launchPlugins);
+        try {
+            // pretransformation waits for the launch plugins to be initialized
+            this.launchService.launch(this.argumentHandler, this.moduleLayerHandler.getLayer(IModuleLayerManager.Layer.GAME).orElseThrow(), this.classLoader, this.launchPlugins, () -> {
+                this.environment.getProperty(IEnvironment.Keys.PRETRANSFORM.get())
+                        .ifPresent(threads -> timeline.time("pretransform", () -> this.classLoader.pretransformClasses(this.moduleLayerHandler.getLayer(IModuleLayerManager.Layer.GAME).orElseThrow().configuration(), threads)));
+                LogManager.getLogger().debug(MODLAUNCHER, "Startup timeline: {}", timeline::toJson);
+                this.environment.getProperty(IEnvironment.Keys.STARTUPREPORT.get()).ifPresent(timeline::write);
+                this.environment.getProperty(IEnvironment.Keys.TRANSFORMERMETRICS.get())
+                        .ifPresent(metrics -> LogManager.getLogger().debug(MODLAUNCHER, "Transformation timings: {}", () -> TransformerMetrics.report(metrics, 5)));
+            });
+        } finally {
+            this.classLoader.releasePretransformedClasses();
+        }
     }
 
     public Environment environment() {
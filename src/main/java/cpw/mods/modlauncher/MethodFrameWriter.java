@@ -0,0 +1,167 @@
+/*
+ * ModLauncher - for launching Java programs with in-flight transformation ability.
+ *
+ *     Copyright (C) 2017-2019 cpw
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Lesser General Public License as published by
+ *     the Free Software Foundation, version 3 of the License.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Lesser General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Lesser General Public License
+ *     along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package cpw.mods.modlauncher;
+
+import cpw.mods.modlauncher.serviceapi.ILaunchPluginService;
+import org.jetbrains.annotations.Nullable;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.tree.ClassNode;
+import org.objectweb.asm.tree.MethodNode;
+
+import java.util.*;
+
+/**
+ * Writes a transformed class computing frames only for the methods whose code changed.
+ *
+ * The class is first written without computing anything, sharing the constant pool of the original class, so the
+ * code of an unchanged method is byte for byte identical to the original and its original frames are still valid.
+ * Frames for the changed methods are computed in a scratch class containing only those methods.
+ */
+final class MethodFrameWriter {
+    private MethodFrameWriter() {}
+
+    /**
+     * @return the written class, or null if the class changed in ways that could invalidate the original frames
+     */
+    @Nullable
+    static byte[] write(final ClassReader original, final byte[] originalBytes, final ClassNode clazz, final ClassTransformer classTransformer) {
+        // the implicit this of every method depends on the access flags, and ClassNode adds pseudo flags above 0xFFFF
+        if (clazz.version != original.readInt(4) || (clazz.version & 0xFFFF) < Opcodes.V1_6 || (clazz.access & 0xFFFF) != original.getAccess()
+                || !clazz.name.equals(original.getClassName()) || !Objects.equals(clazz.superName, original.getSuperName())
+                || !clazz.interfaces.equals(Arrays.asList(original.getInterfaces()))) {
+            return null;
+        }
+        final byte[] candidate;
+        try {
+            final ClassWriter candidateWriter = new ClassWriter(original, 0);
+            clazz.accept(candidateWriter);
+            candidate = candidateWriter.toByteArray();
+        } catch (RuntimeException e) {
+            // Changed methods can carry frames that can't even be written as they are
+            return null;
+        }
+
+        final Map<String, CodeRange> originalCode = codeRanges(original, originalBytes);
+        final Map<String, CodeRange> candidateCode = codeRanges(new ClassReader(candidate), candidate);
+        final Set<String> changed = new HashSet<>();
+        candidateCode.forEach((method, range) -> {
+            final CodeRange originalRange = originalCode.get(method);
+            if (originalRange == null || !range.sameCode(originalRange)) {
+                changed.add(method);
+            }
+        });
+        if (changed.isEmpty()) {
+            return candidate;
+        }
+        if (changed.size() == candidateCode.size()) {
+            // Every method needs frames anyway
+            return null;
+        }
+
+        final ClassNode scratch = new ClassNode(Opcodes.ASM9);
+        scratch.version = clazz.version;
+        scratch.access = clazz.access;
+        scratch.name = clazz.name;
+        scratch.superName = clazz.superName;
+        scratch.interfaces = clazz.interfaces;
+        for (MethodNode method : clazz.methods) {
+            if (changed.contains(method.name + method.desc)) {
+                scratch.methods.add(method);
+            }
+        }
+        final ClassWriter frameWriter = TransformerClassWriter.createClassWriter(ILaunchPluginService.ComputeFlags.COMPUTE_FRAMES, classTransformer, clazz);
+        scratch.accept(frameWriter);
+        final ClassNode framed = new ClassNode(Opcodes.ASM9);
+        new ClassReader(frameWriter.toByteArray()).accept(framed, 0);
+        final Map<String, MethodNode> framedMethods = new HashMap<>();
+        for (MethodNode method : framed.methods) {
+            framedMethods.put(method.name + method.desc, method);
+        }
+
+        final List<MethodNode> methods = clazz.methods;
+        final List<MethodNode> merged = new ArrayList<>(methods.size());
+        for (MethodNode method : methods) {
+            merged.add(framedMethods.getOrDefault(method.name + method.desc, method));
+        }
+        clazz.methods = merged;
+        try {
+            final ClassWriter cw = new ClassWriter(original, 0);
+            clazz.accept(cw);
+            return cw.toByteArray();
+        } finally {
+            clazz.methods = methods;
+        }
+    }
+
+    /**
+     * The access flags, maximums, code array and exception table of a method, excluding frames and other code
+     * attributes
+     */
+    private record CodeRange(int access, byte[] classFile, int start, int end) {
+        boolean sameCode(final CodeRange other) {
+            return access == other.access && Arrays.equals(classFile, start, end, other.classFile, other.start, other.end);
+        }
+    }
+
+    /**
+     * Find the code of every method, keyed by name and descriptor, walking the class file structure
+     */
+    private static Map<String, CodeRange> codeRanges(final ClassReader reader, final byte[] classFile) {
+        final Map<String, CodeRange> ranges = new HashMap<>();
+        final char[] buffer = new char[reader.getMaxStringLength()];
+        int offset = reader.header + 6;
+        offset += 2 + reader.readUnsignedShort(offset) * 2;
+        // fields
+        int count = reader.readUnsignedShort(offset);
+        offset += 2;
+        for (int i = 0; i < count; i++) {
+            offset = skipAttributes(reader, offset + 6);
+        }
+        // methods
+        count = reader.readUnsignedShort(offset);
+        offset += 2;
+        for (int i = 0; i < count; i++) {
+            final int access = reader.readUnsignedShort(offset);
+            final String key = reader.readUTF8(offset + 2, buffer) + reader.readUTF8(offset + 4, buffer);
+            int attributeCount = reader.readUnsignedShort(offset + 6);
+            offset += 8;
+            for (int j = 0; j < attributeCount; j++) {
+                final int length = reader.readInt(offset + 2);
+                if ("Code".equals(reader.readUTF8(offset, buffer))) {
+                    final int codeEnd = offset + 14 + reader.readInt(offset + 10);
+                    final int exceptionsEnd = codeEnd + 2 + reader.readUnsignedShort(codeEnd) * 8;
+                    ranges.put(key, new CodeRange(access, classFile, offset + 6, exceptionsEnd));
+                }
+                offset += 6 + length;
+            }
+        }
+        return ranges;
+    }
+
+    private static int skipAttributes(final ClassReader reader, int offset) {
+        final int attributeCount = reader.readUnsignedShort(offset);
+        offset += 2;
+        for (int i = 0; i < attributeCount; i++) {
+            offset += 6 + reader.readInt(offset + 2);
+        }
+        return offset;
+    }
+}
@@ -23,6 +23,7 @@ import cpw.mods.cl.ModuleClassLoader;
 import cpw.mods.jarhandling.SecureJar;
 import cpw.mods.modlauncher.api.IModuleLayerManager;
 import cpw.mods.modlauncher.api.NamedPath;
+import cpw.mods.modlauncher.jfr.ModuleLayerBuildEvent;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
@@ -72,6 +73,8 @@ public final class ModuleLayerHandler implements IModuleLayerManager {
     }
 
     public LayerInfo buildLayer(final Layer layer, BiFunction<Configuration, List<ModuleLayer>, ModuleClassLoader> classLoaderSupplier) {
+        final ModuleLayerBuildEvent event = new ModuleLayerBuildEvent();
+        event.begin();
         final var finder = layers.getOrDefault(layer, List.of()).stream()
                 .map(PathOrJar::build)
                 .toArray(SecureJar[]::new);
@@ -93,6 +96,11 @@ public final class ModuleLayerHandler implements IModuleLayerManager {
         final var modController = ModuleLayer.defineModules(newConf, Arrays.stream(layer.getParent()).map(completedLayers::get).map(LayerInfo::layer).toList(), f->classLoader);
         completedLayers.put(layer, new LayerInfo(modController.layer(), classLoader));
         classLoader.setFallbackClassLoader(completedLayers.get(Layer.BOOT).cl());
+        if (event.shouldCommit()) {
+            event.layer = layer.name();
+            event.jars = finder.length;
+            event.commit();
+        }
         return new LayerInfo(modController.layer(), classLoader);
     }
     public LayerInfo buildLayer(final Layer layer) {
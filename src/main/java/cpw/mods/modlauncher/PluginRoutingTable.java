@@ -0,0 +1,122 @@
+/*
+ * ModLauncher - for launching Java programs with in-flight transformation ability.
+ *
+ *     Copyright (C) 2017-2019 cpw
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Lesser General Public License as published by
+ *     the Free Software Foundation, version 3 of the License.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Lesser General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Lesser General Public License
+ *     along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package cpw.mods.modlauncher;
+
+import cpw.mods.modlauncher.serviceapi.ClassClaims;
+import cpw.mods.modlauncher.serviceapi.ILaunchPluginService;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.*;
+
+/**
+ * Routes classes to the launch plugins which claimed them through {@link ClassClaims}.
+ *
+ * Claims are held in a trie keyed by the characters of the internal class name. Walking a class name through it
+ * once finds every matching claim, and allocates nothing when there are none.
+ */
+final class PluginRoutingTable {
+    private final Node root = new Node();
+    private final boolean empty;
+
+    private record Route(ILaunchPluginService plugin, ILaunchPluginService.Phase phase) {}
+
+    private static final class Node {
+        private final Map<Character, Node> children = new HashMap<>();
+        private final List<Route> classes = new ArrayList<>();
+        private final List<Route> packageClasses = new ArrayList<>();
+        private final List<Route> subpackageClasses = new ArrayList<>();
+    }
+
+    PluginRoutingTable(final Map<ILaunchPluginService, Map<ILaunchPluginService.Phase, Set<String>>> claims) {
+        claims.forEach((plugin, phases) -> phases.forEach((phase, patterns) -> patterns.forEach(pattern -> add(pattern, new Route(plugin, phase)))));
+        this.empty = claims.values().stream().allMatch(phases -> phases.values().stream().allMatch(Set::isEmpty));
+    }
+
+    private void add(final String pattern, final Route route) {
+        final String stem = stem(pattern);
+        Node node = root;
+        for (int i = 0; i < stem.length(); i++) {
+            node = node.children.computeIfAbsent(stem.charAt(i), c -> new Node());
+        }
+        if (pattern.endsWith("**")) {
+            node.subpackageClasses.add(route);
+        } else if (pattern.endsWith("*")) {
+            node.packageClasses.add(route);
+        } else {
+            node.classes.add(route);
+        }
+    }
+
+    /**
+     * @return the pattern without its wildcard, which is a prefix of every class it matches
+     */
+    static String stem(final String pattern) {
+        return pattern.endsWith("**") ? pattern.substring(0, pattern.length() - 2) : pattern.endsWith("*") ? pattern.substring(0, pattern.length() - 1) : pattern;
+    }
+
+    boolean isEmpty() {
+        return empty;
+    }
+
+    /**
+     * @return the plugins claiming the class for each phase, or null if none do
+     */
+    @Nullable
+    EnumMap<ILaunchPluginService.Phase, List<ILaunchPluginService>> route(final String internalName) {
+        EnumMap<ILaunchPluginService.Phase, List<ILaunchPluginService>> result = null;
+        Node node = root;
+        for (int i = 0; ; i++) {
+            result = collect(result, node.subpackageClasses);
+            if (!node.packageClasses.isEmpty() && internalName.indexOf('/', i) < 0) {
+                result = collect(result, node.packageClasses);
+            }
+            if (i == internalName.length()) {
+                return collect(result, node.classes);
+            }
+            node = node.children.get(internalName.charAt(i));
+            if (node == null) {
+                return result;
+            }
+        }
+    }
+
+    /**
+     * @return whether any plugin claims the class
+     */
+    boolean matches(final String internalName) {
+        Node node = root;
+        for (int i = 0; ; i++) {
+            if (!node.subpackageClasses.isEmpty() || !node.packageClasses.isEmpty() && internalName.indexOf('/', i) < 0) return true;
+            if (i == internalName.length()) return !node.classes.isEmpty();
+            node = node.children.get(internalName.charAt(i));
+            if (node == null) return false;
+        }
+    }
+
+    @Nullable
+    private static EnumMap<ILaunchPluginService.Phase, List<ILaunchPluginService>> collect(@Nullable EnumMap<ILaunchPluginService.Phase, List<ILaunchPluginService>> result, final List<Route> routes) {
+        for (int i = 0; i < routes.size(); i++) {
+            final Route route = routes.get(i);
+            if (result == null) result = new EnumMap<>(ILaunchPluginService.Phase.class);
+            final List<ILaunchPluginService> plugins = result.computeIfAbsent(route.phase(), p -> new ArrayList<>());
+            if (!plugins.contains(route.plugin())) plugins.add(route.plugin());
+        }
+        return result;
+    }
+}
@@ -0,0 +1,154 @@
+/*
+ * ModLauncher - for launching Java programs with in-flight transformation ability.
+ *
+ *     Copyright (C) 2017-2019 cpw
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Lesser General Public License as published by
+ *     the Free Software Foundation, version 3 of the License.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Lesser General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Lesser General Public License
+ *     along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package cpw.mods.modlauncher;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.function.Supplier;
+
+import static cpw.mods.modlauncher.LogMarkers.MODLAUNCHER;
+
+/**
+ * Wall and CPU time of each step of the launch, nested under the step they ran in, reported as JSON.
+ *
+ * Steps are only timed on the thread running the launch, which is also the thread whose CPU time is measured.
+ */
+final class StartupTimeline {
+    private static final Logger LOGGER = LogManager.getLogger();
+    private final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+    private final boolean cpuTimeSupported = threads.isCurrentThreadCpuTimeSupported();
+    private final Step root;
+    private Step current;
+
+    private final class Step {
+        private final String name;
+        private final Step parent;
+        private final List<Step> children = new ArrayList<>();
+        private final long wallStart = System.nanoTime();
+        private final long cpuStart = cpuTime();
+        private long wallNanos = -1;
+        private long cpuNanos = -1;
+
+        private Step(final String name, final Step parent) {
+            this.name = name;
+            this.parent = parent;
+        }
+
+        private void end() {
+            wallNanos = System.nanoTime() - wallStart;
+            cpuNanos = cpuTime() - cpuStart;
+        }
+    }
+
+    StartupTimeline() {
+        this.root = new Step("launch", null);
+        this.current = root;
+    }
+
+    private long cpuTime() {
+        return cpuTimeSupported ? threads.getCurrentThreadCpuTime() : 0;
+    }
+
+    <T> T time(final String name, final Supplier<T> action) {
+        final Step step = new Step(name, current);
+        current.children.add(step);
+        current = step;
+        try {
+            return action.get();
+        } finally {
+            step.end();
+            current = step.parent;
+        }
+    }
+
+    void time(final String name, final Runnable action) {
+        time(name, () -> {
+            action.run();
+            return null;
+        });
+    }
+
+    /**
+     * @return the timeline so far as JSON. Steps still running are reported without times.
+     */
+    String toJson() {
+        final StringBuilder json = new StringBuilder();
+        appendStep(json, root, 0);
+        return json.append('\n').toString();
+    }
+
+    private void appendStep(final StringBuilder json, final Step step, final int depth) {
+        final String indent = "  ".repeat(depth);
+        json.append(indent).append("{\"name\": ").append(quote(step.name))
+                .append(", \"startMs\": ").append(millis(step.wallStart - root.wallStart));
+        final long wallNanos = step.wallNanos >= 0 ? step.wallNanos : System.nanoTime() - step.wallStart;
+        json.append(", \"wallMs\": ").append(millis(wallNanos));
+        if (cpuTimeSupported) {
+            final long cpuNanos = step.cpuNanos >= 0 ? step.cpuNanos : cpuTime() - step.cpuStart;
+            json.append(", \"cpuMs\": ").append(millis(cpuNanos));
+        }
+        if (!step.children.isEmpty()) {
+            json.append(", \"steps\": [\n");
+            for (int i = 0; i < step.children.size(); i++) {
+                appendStep(json, step.children.get(i), depth + 1);
+                json.append(i < step.children.size() - 1 ? ",\n" : "\n");
+            }
+            json.append(indent).append(']');
+        }
+        json.append('}');
+    }
+
+    private static String millis(final long nanos) {
+        return String.format(Locale.ROOT, "%.3f", nanos / 1_000_000.0);
+    }
+
+    private static String quote(final String value) {
+        final StringBuilder quoted = new StringBuilder(value.length() + 2).append('"');
+        for (int i = 0; i < value.length(); i++) {
+            final char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                quoted.append('\\').append(c);
+            } else if (c < 0x20) {
+                quoted.append(String.format(Locale.ROOT, "\\u%04x", (int) c));
+            } else {
+                quoted.append(c);
+            }
+        }
+        return quoted.append('"').toString();
+    }
+
+    void write(final Path report) {
+        try {
+            Files.createDirectories(report.toAbsolutePath().getParent());
+            Files.writeString(report, toJson());
+            LOGGER.info(MODLAUNCHER, "Wrote startup timeline to {}", report);
+        } catch (IOException e) {
+            LOGGER.error(MODLAUNCHER, "Failed to write startup timeline to {}", report, e);
+        }
+    }
+}
@@ -0,0 +1,256 @@
+/*
+ * ModLauncher - for launching Java programs with in-flight transformation ability.
+ *
+ *     Copyright (C) 2017-2019 cpw
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Lesser General Public License as published by
+ *     the Free Software Foundation, version 3 of the License.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Lesser General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Lesser General Public License
+ *     along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package cpw.mods.modlauncher;
+
+import cpw.mods.modlauncher.api.IEnvironment;
+import cpw.mods.modlauncher.api.ITransformerActivity;
+import cpw.mods.modlauncher.serviceapi.ILaunchPluginService;
+import cpw.mods.modlauncher.util.ServiceLoaderUtils;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.jetbrains.annotations.Nullable;
+import org.objectweb.asm.ClassReader;
+
+import java.io.*;
+import java.lang.module.ModuleDescriptor;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.stream.Stream;
+
+import static cpw.mods.modlauncher.LogMarkers.MODLAUNCHER;
+
+/**
+ * On-disk cache of transformed class bytes.
+ *
+ * Entries are stored in a directory named for a fingerprint of the transformers, transformation services and
+ * launch plugins in use, and are keyed by the SHA-256 of the untransformed class bytes. Any change to the transformer
+ * set moves the cache to a fresh directory, and the stale directories are removed.
+ *
+ * Computing frames consults the hierarchy of other classes, so the fingerprint also covers the game modules. When
+ * they can't be fingerprinted nothing is cached. Classes a launch plugin may handle are never cached, see
+ * {@link ClassTransformer}.
+ */
+final class TransformCache {
+    private static final Logger LOGGER = LogManager.getLogger();
+    private static final int MAGIC = 0x4D4C5443;
+    private static final int VERSION = 1;
+    private final Path cacheDir;
+    private volatile boolean failed;
+
+    /**
+     * A cache hit
+     * @param bytes the transformed class, or null if transformation left the class unchanged
+     * @param activities the audit trail activities recorded while transforming the class
+     */
+    record CachedClass(byte[] bytes, List<CachedActivity> activities) {}
+
+    record CachedActivity(ITransformerActivity.Type type, String[] context) {}
+
+    private TransformCache(final Path cacheDir) {
+        this.cacheDir = cacheDir;
+    }
+
+    /**
+     * @param hierarchyKey the {@link ClassHierarchyIndex#key(java.lang.module.Configuration) key} of the game modules,
+     *                     or null if they can't be fingerprinted
+     */
+    static Optional<TransformCache> open(final Path root, final TransformStore transformStore, final LaunchPluginHandler pluginHandler, @Nullable final String hierarchyKey) {
+        if (hierarchyKey == null) {
+            LOGGER.info(MODLAUNCHER, "The game modules cannot be fingerprinted, caching is disabled");
+            return Optional.empty();
+        }
+        final String fingerprint = fingerprint(transformStore, pluginHandler, hierarchyKey);
+        final Path cacheDir = root.resolve(fingerprint);
+        try {
+            Files.createDirectories(cacheDir);
+        } catch (IOException e) {
+            LOGGER.error(MODLAUNCHER, "Unable to create transformation cache directory {}, caching is disabled", cacheDir, e);
+            return Optional.empty();
+        }
+        LOGGER.info(MODLAUNCHER, "Using transformation cache {}", cacheDir);
+        removeStaleCaches(root, fingerprint);
+        return Optional.of(new TransformCache(cacheDir));
+    }
+
+    /**
+     * Computes the fingerprint of everything that can change the output of a transformation, other than the input
+     * class itself.
+     */
+    static String fingerprint(final TransformStore transformStore, final LaunchPluginHandler pluginHandler, final String hierarchyKey) {
+        final MessageDigest digest = sha256();
+        final Set<Class<?>> origins = new HashSet<>();
+        update(digest, "modlauncher " + IEnvironment.class.getPackage().getImplementationVersion());
+        update(digest, "asm " + moduleVersion(ClassReader.class).orElse(""));
+        update(digest, "java " + Runtime.version());
+        update(digest, "hierarchy " + hierarchyKey);
+        for (String description : transformStore.describeTransformers()) {
+            update(digest, description);
+        }
+        transformStore.getTransformationServices().forEach(s -> origins.add(s.getClass()));
+        pluginHandler.getPlugins().stream()
+                .sorted(Comparator.comparing(ILaunchPluginService::name))
+                .forEach(p -> {
+                    update(digest, "plugin " + p.name());
+                    origins.add(p.getClass());
+                });
+        origins.stream()
+                .map(TransformCache::describeOrigin)
+                .sorted()
+                .forEach(o -> update(digest, o));
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    private static String describeOrigin(final Class<?> clazz) {
+        final StringBuilder sb = new StringBuilder("origin ").append(clazz.getName());
+        moduleVersion(clazz).ifPresent(v -> sb.append(' ').append(v));
+        ServiceLoaderUtils.pathFor(clazz).ifPresent(p -> {
+            sb.append(' ').append(p.getFileName());
+            try {
+                sb.append(' ').append(Files.size(p)).append(' ').append(Files.getLastModifiedTime(p).toMillis());
+            } catch (IOException | UnsupportedOperationException e) {
+                // directories and virtual filesystems are described by name only
+            }
+        });
+        return sb.toString();
+    }
+
+    private static Optional<String> moduleVersion(final Class<?> clazz) {
+        return Optional.ofNullable(clazz.getModule().getDescriptor()).flatMap(ModuleDescriptor::rawVersion);
+    }
+
+    private static void removeStaleCaches(final Path root, final String fingerprint) {
+        final List<Path> stale;
+        try (Stream<Path> children = Files.list(root)) {
+            stale = children.filter(p -> !p.getFileName().toString().equals(fingerprint) && Files.isDirectory(p)).toList();
+        } catch (IOException e) {
+            LOGGER.debug(MODLAUNCHER, "Unable to list transformation cache directory {}", root, e);
+            return;
+        }
+        if (stale.isEmpty()) return;
+        final Thread cleaner = new Thread(() -> stale.forEach(TransformCache::deleteRecursively), "ModLauncher transform cache cleanup");
+        cleaner.setDaemon(true);
+        cleaner.start();
+    }
+
+    private static void deleteRecursively(final Path dir) {
+        try (Stream<Path> files = Files.walk(dir)) {
+            files.sorted(Comparator.reverseOrder()).forEach(p -> {
+                try {
+                    Files.deleteIfExists(p);
+                } catch (IOException e) {
+                    LOGGER.debug(MODLAUNCHER, "Unable to remove stale transformation cache file {}", p, e);
+                }
+            });
+        } catch (IOException e) {
+            LOGGER.debug(MODLAUNCHER, "Unable to remove stale transformation cache {}", dir, e);
+        }
+    }
+
+    Optional<CachedClass> get(final String className, final byte[] inputDigest) {
+        final Path entry = entryFor(className);
+        if (!Files.exists(entry)) return Optional.empty();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(entry)))) {
+            if (in.readInt() != MAGIC || in.readShort() != VERSION || !className.equals(in.readUTF())) {
+                return Optional.empty();
+            }
+            final byte[] digest = new byte[inputDigest.length];
+            in.readFully(digest);
+            if (!Arrays.equals(digest, inputDigest)) {
+                return Optional.empty();
+            }
+            final int activityCount = in.readInt();
+            final List<CachedActivity> activities = new ArrayList<>(activityCount);
+            for (int i = 0; i < activityCount; i++) {
+                final ITransformerActivity.Type type = ITransformerActivity.Type.values()[in.readByte()];
+                final String[] context = new String[in.readInt()];
+                for (int j = 0; j < context.length; j++) {
+                    context[j] = in.readUTF();
+                }
+                activities.add(new CachedActivity(type, context));
+            }
+            final int length = in.readInt();
+            final byte[] bytes;
+            if (length < 0) {
+                bytes = null;
+            } else {
+                bytes = new byte[length];
+                in.readFully(bytes);
+            }
+            return Optional.of(new CachedClass(bytes, activities));
+        } catch (IOException | RuntimeException e) {
+            LOGGER.debug(MODLAUNCHER, "Discarding unreadable transformation cache entry for {}", className, e);
+            return Optional.empty();
+        }
+    }
+
+    void put(final String className, final byte[] inputDigest, final byte[] bytes, final List<ITransformerActivity> activities) {
+        if (failed) return;
+        final Path entry = entryFor(className);
+        try {
+            Files.createDirectories(entry.getParent());
+            final Path temp = Files.createTempFile(entry.getParent(), entry.getFileName().toString(), ".tmp");
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+                out.writeInt(MAGIC);
+                out.writeShort(VERSION);
+                out.writeUTF(className);
+                out.write(inputDigest);
+                out.writeInt(activities.size());
+                for (ITransformerActivity activity : activities) {
+                    out.writeByte(activity.getType().ordinal());
+                    out.writeInt(activity.getContext().length);
+                    for (String context : activity.getContext()) {
+                        out.writeUTF(context);
+                    }
+                }
+                if (bytes == null) {
+                    out.writeInt(-1);
+                } else {
+                    out.writeInt(bytes.length);
+                    out.write(bytes);
+                }
+            }
+            Files.move(temp, entry, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            // Don't keep hammering a broken disk - the cache is an optimisation only
+            failed = true;
+            LOGGER.error(MODLAUNCHER, "Failed to write transformation cache entry for {}, caching is disabled for this launch", className, e);
+        }
+    }
+
+    private Path entryFor(final String className) {
+        final String hash = HexFormat.of().formatHex(sha256().digest(className.getBytes(StandardCharsets.UTF_8)));
+        return cacheDir.resolve(hash.substring(0, 2)).resolve(hash.substring(2));
+    }
+
+    private static void update(final MessageDigest digest, final String value) {
+        digest.update(value.getBytes(StandardCharsets.UTF_8));
+        digest.update((byte) 0);
+    }
+
+    static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException("HUH");
+        }
+    }
+}
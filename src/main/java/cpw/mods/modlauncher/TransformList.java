@@ -23,6 +23,7 @@ import cpw.mods.modlauncher.api.*;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.BiConsumer;
 
 /**
  * Holds onto a specific list of transformers targetting a particular node type
@@ -51,8 +52,12 @@ public class TransformList<T> {
         transformers.computeIfPresent(targetLabel, (k,l)-> { l.add(transformer); return l;});
     }
 
+    void forEach(BiConsumer<TransformTargetLabel, List<ITransformer<T>>> action) {
+        transformers.forEach(action);
+    }
+
     List<ITransformer<T>> getTransformersForLabel(TransformTargetLabel label) {
-        // thread safety - compute if absent to insert the list
-        return transformers.computeIfAbsent(label, v-> new ArrayList<>());
+        // lookups for untargeted labels must not insert empty lists
+        return transformers.getOrDefault(label, Collections.emptyList());
     }
 }
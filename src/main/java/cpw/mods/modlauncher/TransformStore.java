@@ -21,6 +21,7 @@ package cpw.mods.modlauncher;
 import cpw.mods.modlauncher.api.*;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import org.jetbrains.annotations.Nullable;
 import org.objectweb.asm.tree.*;
 
 import java.util.*;
@@ -33,7 +34,11 @@ import static cpw.mods.modlauncher.LogMarkers.*;
 public class TransformStore {
     private static final Logger LOGGER = LogManager.getLogger();
     private final Set<String> classNeedsTransforming = new HashSet<>();
+    private final Set<String> classNeedsExpandedFrames = new HashSet<>();
     private final Map<TargetType<?>, TransformList<?>> transformers;
+    private final Map<String, ClassTargets> classTargets = new HashMap<>();
+    @Nullable
+    private volatile Snapshot snapshot;
 
     public TransformStore() {
         transformers = new HashMap<>();
@@ -41,36 +46,182 @@ public class TransformStore {
             transformers.put(type, new TransformList<>(type.getNodeType()));
     }
 
+    /**
+     * The transformer lists registered for one class, indexed so that looking up a member needs no target label,
+     * and an untargeted member is rejected without allocating. The lists are shared with the {@link TransformList}s.
+     */
+    private static final class ClassTargets {
+        private static final Member[] NO_MEMBERS = new Member[0];
+        private List<? extends ITransformer<?>> preClass = Collections.emptyList();
+        private List<? extends ITransformer<?>> clazz = Collections.emptyList();
+        private Member[] fields = NO_MEMBERS;
+        private Member[] methods = NO_MEMBERS;
+
+        private record Member(String name, String desc, List<? extends ITransformer<?>> transformers) {}
+
+        private static Member[] add(final Member[] members, final Member member) {
+            for (Member existing : members) {
+                if (existing.name().equals(member.name()) && existing.desc().equals(member.desc())) return members;
+            }
+            final Member[] added = Arrays.copyOf(members, members.length + 1);
+            added[members.length] = member;
+            return added;
+        }
+
+        private static List<? extends ITransformer<?>> find(final Member[] members, final String name, final String desc) {
+            for (Member member : members) {
+                if (member.name().equals(name) && member.desc().equals(desc)) return member.transformers();
+            }
+            return Collections.emptyList();
+        }
+    }
+
+    /**
+     * Immutable copy of the lookup tables, read without locking once transformers have been gathered.
+     *
+     * @param transformedClasses whether each targeted class (by internal name) needs expanded frames
+     */
+    private record Snapshot(FrozenStringMap<ClassTargets> classTargets, FrozenStringMap<Boolean> transformedClasses, ClassNameBloomFilter transformedFilter) {}
+
+    /**
+     * Compile the registered transformers into an immutable snapshot. No transformers can be added afterwards.
+     */
+    void freeze() {
+        if (snapshot != null) return;
+        final Map<String, Boolean> transformedClasses = new HashMap<>();
+        for (String className : classNeedsTransforming) {
+            transformedClasses.put(className, classNeedsExpandedFrames.contains(className));
+        }
+        snapshot = new Snapshot(new FrozenStringMap<>(classTargets), new FrozenStringMap<>(transformedClasses), new ClassNameBloomFilter(transformedClasses.keySet()));
+        LOGGER.debug(MODLAUNCHER, "Transform store frozen with {} targeted classes", transformedClasses.size());
+    }
+
+    @Nullable
+    private ClassTargets targetsFor(final String className) {
+        final Snapshot frozen = snapshot;
+        return frozen != null ? frozen.classTargets().get(className) : classTargets.get(className);
+    }
+
+    @SuppressWarnings("unchecked")
     List<ITransformer<FieldNode>> getTransformersFor(String className, FieldNode field) {
-        TransformTargetLabel tl = new TransformTargetLabel(className, field.name);
-        TransformList<FieldNode> transformerlist = TargetType.FIELD.get(this.transformers);
-        return transformerlist.getTransformersForLabel(tl);
+        final ClassTargets targets = targetsFor(className);
+        return targets != null ? (List<ITransformer<FieldNode>>) ClassTargets.find(targets.fields, field.name, "") : Collections.emptyList();
     }
 
     List<ITransformer<MethodNode>> getTransformersFor(String className, MethodNode method) {
-        TransformTargetLabel tl = new TransformTargetLabel(className, method.name, method.desc);
-        TransformList<MethodNode> transformerlist = TargetType.METHOD.get(this.transformers);
-        return transformerlist.getTransformersForLabel(tl);
+        return getTransformersFor(className, method.name, method.desc);
     }
 
+    @SuppressWarnings("unchecked")
+    List<ITransformer<MethodNode>> getTransformersFor(String className, String methodName, String methodDesc) {
+        final ClassTargets targets = targetsFor(className);
+        return targets != null ? (List<ITransformer<MethodNode>>) ClassTargets.find(targets.methods, methodName, methodDesc) : Collections.emptyList();
+    }
+
+    @SuppressWarnings("unchecked")
     List<ITransformer<ClassNode>> getTransformersFor(String className, TargetType<ClassNode> classType) {
-        TransformTargetLabel tl = new TransformTargetLabel(className, classType);
-        TransformList<ClassNode> transformerlist = classType.get(this.transformers);
-        return transformerlist.getTransformersForLabel(tl);
+        final ClassTargets targets = targetsFor(className);
+        if (targets == null) return Collections.emptyList();
+        return (List<ITransformer<ClassNode>>) (classType == TargetType.PRE_CLASS ? targets.preClass : targets.clazz);
     }
 
     @SuppressWarnings("unchecked")
     <T> void addTransformer(TransformTargetLabel targetLabel, ITransformer<T> transformer, ITransformationService service) {
-        LOGGER.debug(MODLAUNCHER,"Adding transformer {} to {}", () -> transformer, () -> targetLabel);
+        if (snapshot != null) {
+            throw new IllegalStateException("Cannot add transformer " + transformer + " to " + targetLabel + " after the transform store is frozen");
+        }
+        if (LOGGER.isDebugEnabled(MODLAUNCHER)) {
+            LOGGER.debug(MODLAUNCHER, "Adding transformer {} to {}", transformer, targetLabel);
+        }
         classNeedsTransforming.add(targetLabel.getClassName().getInternalName());
+        if (transformer.needsExpandedFrames()) {
+            classNeedsExpandedFrames.add(targetLabel.getClassName().getInternalName());
+        }
         final TransformList<T> transformList = (TransformList<T>) this.transformers.get(targetLabel.getTargetType());
         transformList.addTransformer(targetLabel, new TransformerHolder<>(transformer, service));
+
+        final List<ITransformer<T>> list = transformList.getTransformersForLabel(targetLabel);
+        final ClassTargets targets = classTargets.computeIfAbsent(targetLabel.getClassName().getClassName(), k -> new ClassTargets());
+        final TargetType<?> targetType = targetLabel.getTargetType();
+        if (targetType == TargetType.FIELD) {
+            targets.fields = ClassTargets.add(targets.fields, new ClassTargets.Member(targetLabel.getElementName(), "", list));
+        } else if (targetType == TargetType.METHOD) {
+            targets.methods = ClassTargets.add(targets.methods, new ClassTargets.Member(targetLabel.getElementName(), targetLabel.getElementDescriptor().getDescriptor(), list));
+        } else if (targetType == TargetType.PRE_CLASS) {
+            targets.preClass = list;
+        } else {
+            targets.clazz = list;
+        }
+    }
+
+    /**
+     * Describes every registered target and the transformers applied to it, in a stable order.
+     * Used to fingerprint the transformer set for caching.
+     */
+    List<String> describeTransformers() {
+        final List<String> descriptions = new ArrayList<>();
+        for (int i = 0; i < TargetType.VALUES.length; i++) {
+            final int typeIndex = i;
+            transformers.get(TargetType.VALUES[i]).forEach((label, list) -> {
+                if (list.isEmpty()) return;
+                final StringBuilder sb = new StringBuilder();
+                sb.append(typeIndex).append(' ').append(label.getClassName().getInternalName()).append(' ').append(label.getElementName()).append(' ').append(label.getElementDescriptor());
+                for (ITransformer<?> transformer : list) {
+                    sb.append(' ').append(((TransformerHolder<?>) transformer).owner().name()).append(':').append(String.join(":", transformer.labels()));
+                }
+                descriptions.add(sb.toString());
+            });
+        }
+        Collections.sort(descriptions);
+        return descriptions;
+    }
+
+    /**
+     * @return the number of transformers registered for each target type
+     */
+    Map<String, Integer> countTransformers() {
+        final Map<String, Integer> counts = new LinkedHashMap<>();
+        for (TargetType<?> type : TargetType.VALUES) {
+            final int[] count = new int[1];
+            transformers.get(type).forEach((label, list) -> count[0] += list.size());
+            counts.put(type.getName(), count[0]);
+        }
+        return counts;
+    }
+
+    /**
+     * @return the services which registered at least one transformer
+     */
+    Set<ITransformationService> getTransformationServices() {
+        final Set<ITransformationService> services = new HashSet<>();
+        for (TargetType<?> type : TargetType.VALUES) {
+            transformers.get(type).forEach((label, list) -> list.forEach(t -> services.add(((TransformerHolder<?>) t).owner())));
+        }
+        return services;
+    }
+
+    /**
+     * Cheap check whether the class could have transformers. False positives are possible until the store is frozen.
+     * Accepts binary or internal class names.
+     */
+    boolean mayNeedTransforming(String className) {
+        final Snapshot frozen = snapshot;
+        return frozen == null || frozen.transformedFilter().mightContain(className);
     }
 
     /**
      * Requires internal class name (using '/' instead of '.')
      */
     boolean needsTransforming(String internalClassName) {
-        return classNeedsTransforming.contains(internalClassName);
+        final Snapshot frozen = snapshot;
+        return frozen != null ? frozen.transformedClasses().containsKey(internalClassName) : classNeedsTransforming.contains(internalClassName);
+    }
+
+    /**
+     * Requires internal class name (using '/' instead of '.')
+     */
+    boolean needsExpandedFrames(String internalClassName) {
+        final Snapshot frozen = snapshot;
+        return frozen != null ? Boolean.TRUE.equals(frozen.transformedClasses().get(internalClassName)) : classNeedsExpandedFrames.contains(internalClassName);
     }
 }
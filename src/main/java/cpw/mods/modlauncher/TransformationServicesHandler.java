@@ -36,18 +36,24 @@ class TransformationServicesHandler {
     private Map<String, TransformationServiceDecorator> serviceLookup;
     private final TransformStore transformStore;
     private final ModuleLayerHandler layerHandler;
+    private final StartupTimeline timeline;
 
     TransformationServicesHandler(TransformStore transformStore, ModuleLayerHandler layerHandler) {
+        this(transformStore, layerHandler, new StartupTimeline());
+    }
+
+    TransformationServicesHandler(TransformStore transformStore, ModuleLayerHandler layerHandler, StartupTimeline timeline) {
         this.transformStore = transformStore;
         this.layerHandler = layerHandler;
+        this.timeline = timeline;
     }
 
     List<ITransformationService.Resource> initializeTransformationServices(ArgumentHandler argumentHandler, Environment environment) {
-        loadTransformationServices(environment);
-        validateTransformationServices();
-        processArguments(argumentHandler, environment);
-        initialiseTransformationServices(environment);
-        return runScanningTransformationServices(environment);
+        timeline.time("loadServices", () -> loadTransformationServices(environment));
+        timeline.time("validateServices", this::validateTransformationServices);
+        timeline.time("processArguments", () -> processArguments(argumentHandler, environment));
+        timeline.time("initializeServices", () -> initialiseTransformationServices(environment));
+        return timeline.time("scanServices", () -> runScanningTransformationServices(environment));
     }
 
     TransformingClassLoader buildTransformingClassLoader(final LaunchPluginHandler pluginHandler, final Environment environment, final ModuleLayerHandler layerHandler) {
@@ -77,13 +83,14 @@ class TransformationServicesHandler {
     void initialiseServiceTransformers() {
         LOGGER.debug(MODLAUNCHER,"Transformation services loading transformers");
 
-        serviceLookup.values().forEach(s -> s.gatherTransformers(transformStore));
+        serviceLookup.values().forEach(s -> timeline.time(s.getService().name(), () -> s.gatherTransformers(transformStore)));
+        transformStore.freeze();
     }
 
     private void initialiseTransformationServices(Environment environment) {
         LOGGER.debug(MODLAUNCHER,"Transformation services initializing");
 
-        serviceLookup.values().forEach(s -> s.onInitialize(environment));
+        serviceLookup.values().forEach(s -> timeline.time(s.getService().name(), () -> s.onInitialize(environment)));
     }
 
     private List<ITransformationService.Resource> runScanningTransformationServices(Environment environment) {
@@ -91,7 +98,7 @@ class TransformationServicesHandler {
 
         return serviceLookup.values()
                 .stream()
-                .map(s -> s.runScan(environment))
+                .map(s -> timeline.time(s.getService().name(), () -> s.runScan(environment)))
                 .<ITransformationService.Resource>mapMulti(Iterable::forEach)
                 .toList();
     }
@@ -107,7 +114,7 @@ class TransformationServicesHandler {
 
     private void loadTransformationServices(Environment environment) {
         LOGGER.debug(MODLAUNCHER,"Transformation services loading");
-        serviceLookup.values().forEach(s -> s.onLoad(environment, serviceLookup.keySet()));
+        serviceLookup.values().forEach(s -> timeline.time(s.getService().name(), () -> s.onLoad(environment, serviceLookup.keySet())));
     }
 
     void discoverServices(final ArgumentHandler.DiscoveryData discoveryData) {
@@ -116,13 +123,13 @@ class TransformationServicesHandler {
         var earlyDiscoveryServices = ServiceLoaderUtils.streamServiceLoader(()->ServiceLoader.load(bootLayer, ITransformerDiscoveryService.class),  sce -> LOGGER.fatal(MODLAUNCHER, "Encountered serious error loading transformation discoverer, expect problems", sce))
                 .toList();
         var additionalPaths = earlyDiscoveryServices.stream()
-                .map(s->s.candidates(discoveryData.gameDir(), discoveryData.launchTarget()))
+                .map(s->timeline.time("candidates " + s.getClass().getName(), () -> s.candidates(discoveryData.gameDir(), discoveryData.launchTarget())))
                 .<NamedPath>mapMulti(Iterable::forEach)
                 .toList();
         LOGGER.debug(MODLAUNCHER, "Found additional transformation services from discovery services: {}", ()->additionalPaths.stream().map(ap->Arrays.toString(ap.paths())).collect(Collectors.joining()));
         additionalPaths.forEach(np->layerHandler.addToLayer(IModuleLayerManager.Layer.SERVICE, np));
-        var serviceLayer = layerHandler.buildLayer(IModuleLayerManager.Layer.SERVICE);
-        earlyDiscoveryServices.forEach(s->s.earlyInitialization(discoveryData.launchTarget(), discoveryData.arguments()));
+        var serviceLayer = timeline.time("serviceLayer", () -> layerHandler.buildLayer(IModuleLayerManager.Layer.SERVICE));
+        earlyDiscoveryServices.forEach(s->timeline.time("earlyInitialization " + s.getClass().getName(), () -> s.earlyInitialization(discoveryData.launchTarget(), discoveryData.arguments())));
         serviceLookup = ServiceLoaderUtils.streamServiceLoader(()->ServiceLoader.load(serviceLayer.layer(), ITransformationService.class), sce -> LOGGER.fatal(MODLAUNCHER, "Encountered serious error loading transformation service, expect problems", sce))
                 .collect(Collectors.toMap(ITransformationService::name, TransformationServiceDecorator::new));
         var modlist = serviceLookup.entrySet().stream().map(e->Map.of(
@@ -136,7 +143,7 @@ class TransformationServicesHandler {
 
     public List<ITransformationService.Resource> triggerScanCompletion(IModuleLayerManager moduleLayerManager) {
         return serviceLookup.values().stream()
-                .map(tsd->tsd.onCompleteScan(moduleLayerManager))
+                .map(tsd->timeline.time(tsd.getService().name(), () -> tsd.onCompleteScan(moduleLayerManager)))
                 .<ITransformationService.Resource>mapMulti(Iterable::forEach)
                 .toList();
 
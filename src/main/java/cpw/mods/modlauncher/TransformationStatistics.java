@@ -0,0 +1,116 @@
+/*
+ * ModLauncher - for launching Java programs with in-flight transformation ability.
+ *
+ *     Copyright (C) 2017-2019 cpw
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Lesser General Public License as published by
+ *     the Free Software Foundation, version 3 of the License.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Lesser General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Lesser General Public License
+ *     along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package cpw.mods.modlauncher;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.List;
+import java.util.Map;
+
+import static cpw.mods.modlauncher.LogMarkers.MODLAUNCHER;
+
+class TransformationStatistics implements TransformationStatisticsMXBean {
+    static final String OBJECT_NAME = "cpw.mods.modlauncher:type=TransformationStatistics";
+    private static final Logger LOGGER = LogManager.getLogger();
+    private final TransformStore transformStore;
+    private final ClassTransformer classTransformer;
+
+    TransformationStatistics(final TransformStore transformStore, final ClassTransformer classTransformer) {
+        this.transformStore = transformStore;
+        this.classTransformer = classTransformer;
+    }
+
+    /**
+     * Whether the JVM was started with the remote JMX agent, in which case the statistics are registered unasked
+     */
+    static boolean isRemoteJmxEnabled() {
+        return System.getProperty("com.sun.management.jmxremote") != null || System.getProperty("com.sun.management.jmxremote.port") != null;
+    }
+
+    /**
+     * Register with the platform MBean server, replacing the statistics of an earlier launch in the same JVM
+     */
+    void register() {
+        try {
+            final var server = ManagementFactory.getPlatformMBeanServer();
+            final ObjectName name = new ObjectName(OBJECT_NAME);
+            if (server.isRegistered(name)) {
+                LOGGER.info(MODLAUNCHER, "Replacing the registered transformation statistics MBean {}", OBJECT_NAME);
+                server.unregisterMBean(name);
+            }
+            server.registerMBean(this, name);
+        } catch (JMException e) {
+            LOGGER.warn(MODLAUNCHER, "Failed to register the transformation statistics MBean", e);
+        }
+    }
+
+    @Override
+    public long getTransformedClassCount() {
+        return classTransformer.getMetrics().getTransformedClassCount();
+    }
+
+    @Override
+    public Map<String, Long> getTransformedClassCountByReason() {
+        return classTransformer.getMetrics().getTransformedClassCountByReason();
+    }
+
+    @Override
+    public long getBytesIn() {
+        return classTransformer.getMetrics().getBytesIn();
+    }
+
+    @Override
+    public long getBytesOut() {
+        return classTransformer.getMetrics().getBytesOut();
+    }
+
+    @Override
+    public int getHierarchyCacheSize() {
+        return TransformerClassWriter.getClassHierarchies().size();
+    }
+
+    @Override
+    public int getAuditTrailClassCount() {
+        return classTransformer.getAuditTrail().classCount();
+    }
+
+    @Override
+    public long getAuditTrailEntryCount() {
+        return classTransformer.getAuditTrail().entryCount();
+    }
+
+    @Override
+    public Map<String, Integer> getTransformerCounts() {
+        return transformStore.countTransformers();
+    }
+
+    @Override
+    public List<String> dumpSlowestClasses(final int count) {
+        return classTransformer.getMetrics().slowestClasses(count);
+    }
+
+    @Override
+    public void clearHierarchyCache() {
+        TransformerClassWriter.getClassHierarchies().clear();
+    }
+}
@@ -0,0 +1,79 @@
+/*
+ * ModLauncher - for launching Java programs with in-flight transformation ability.
+ *
+ *     Copyright (C) 2017-2019 cpw
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Lesser General Public License as published by
+ *     the Free Software Foundation, version 3 of the License.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Lesser General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Lesser General Public License
+ *     along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package cpw.mods.modlauncher;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Live transformation statistics, registered with the platform MBean server as
+ * {@code cpw.mods.modlauncher:type=TransformationStatistics} once the launcher has built its class loader.
+ */
+public interface TransformationStatisticsMXBean {
+    /**
+     * @return the number of classes transformers or launch plugins were offered
+     */
+    long getTransformedClassCount();
+
+    /**
+     * @return the number of classes transformed, for each reason
+     */
+    Map<String, Long> getTransformedClassCountByReason();
+
+    /**
+     * @return the total size of the classes given to the transformer
+     */
+    long getBytesIn();
+
+    /**
+     * @return the total size of the classes returned by the transformer
+     */
+    long getBytesOut();
+
+    /**
+     * @return the number of class hierarchies cached for frame computation
+     */
+    int getHierarchyCacheSize();
+
+    /**
+     * @return the number of classes with an audit trail
+     */
+    int getAuditTrailClassCount();
+
+    /**
+     * @return the number of activities in all audit trails
+     */
+    long getAuditTrailEntryCount();
+
+    /**
+     * @return the number of transformers registered for each target type
+     */
+    Map<String, Integer> getTransformerCounts();
+
+    /**
+     * @param count how many classes to list, at most 100 are kept
+     * @return the slowest classes to pass through the transformer, slowest first
+     */
+    List<String> dumpSlowestClasses(int count);
+
+    /**
+     * Forget the class hierarchies cached for frame computation. They are computed again when next needed.
+     */
+    void clearHierarchyCache();
+}
@@ -23,17 +23,150 @@ import cpw.mods.modlauncher.api.ITransformer;
 import cpw.mods.modlauncher.api.ITransformerActivity;
 import cpw.mods.modlauncher.api.ITransformerAuditTrail;
 import cpw.mods.modlauncher.serviceapi.ILaunchPluginService;
+import org.jetbrains.annotations.Nullable;
 
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Collectors;
 
+/**
+ * Thread safe record of the activities performed on each class.
+ *
+ * Distinct activities are interned once and referenced by int ids, so each class only holds an append-only array
+ * of ids. Most classes share the same few activities, such as the classloading reason.
+ */
 public class TransformerAuditTrail implements ITransformerAuditTrail {
-    private Map<String, List<ITransformerActivity>> audit = new ConcurrentHashMap<>();
+    private final Map<String, ClassTrail> audit = new ConcurrentHashMap<>();
+    private final Map<TransformerActivity, Integer> activityIds = new ConcurrentHashMap<>();
+    // Shortcuts to the ids of the most common activities, which avoid building a lookup key
+    private final Map<String, Integer> reasonIds = new ConcurrentHashMap<>();
+    private final Map<ITransformer<?>, Integer> transformerIds = new ConcurrentHashMap<>();
+    private volatile TransformerActivity[] activities = new TransformerActivity[16];
+    private int activityCount;
+    private final Retention retention;
+    // Classes in the order their trails were created, when only the most recent are kept
+    @Nullable
+    private final String[] recentClasses;
+    private int nextRecent;
+    // The innermost class being recorded on each thread
+    private final ThreadLocal<Recording> recording = new ThreadLocal<>();
+
+    public enum Retention {
+        /**
+         * Keep the activities of every class
+         */
+        FULL,
+        /**
+         * Only keep the activities of classes a transformer or plugin acted on, dropping those with only a reason
+         * once they have been processed
+         */
+        TRANSFORMED_ONLY,
+        /**
+         * Only keep the activities of the most recent classes
+         */
+        RING,
+        /**
+         * Record nothing. Transformers see no earlier activities in their voting context either.
+         */
+        OFF
+    }
+
+    public TransformerAuditTrail() {
+        this(Retention.FULL);
+    }
+
+    public TransformerAuditTrail(final Retention retention) {
+        this(retention, 0);
+    }
+
+    /**
+     * @param ringSize the number of classes to keep activities for, with {@link Retention#RING}
+     */
+    public TransformerAuditTrail(final Retention retention, final int ringSize) {
+        if (retention == Retention.RING && ringSize <= 0) {
+            throw new IllegalArgumentException("The audit trail ring needs a positive size");
+        }
+        this.retention = retention;
+        this.recentClasses = retention == Retention.RING ? new String[ringSize] : null;
+    }
+
+    /**
+     * Create an audit trail for a retention policy argument: full, transformed, ring:&lt;classes&gt; or off
+     */
+    static TransformerAuditTrail forPolicy(final String policy) {
+        if (policy.startsWith("ring:")) {
+            try {
+                return new TransformerAuditTrail(Retention.RING, Integer.parseInt(policy.substring(5)));
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Invalid audit trail ring size in " + policy, e);
+            }
+        }
+        if (policy.equals("full")) {
+            return new TransformerAuditTrail(Retention.FULL);
+        } else if (policy.equals("transformed")) {
+            return new TransformerAuditTrail(Retention.TRANSFORMED_ONLY);
+        } else if (policy.equals("off")) {
+            return new TransformerAuditTrail(Retention.OFF);
+        }
+        throw new IllegalArgumentException("Unknown audit trail policy " + policy + ", expected full, transformed, ring:<classes> or off");
+    }
+
+    /**
+     * Whether activities are recorded at all
+     */
+    boolean isRecording() {
+        return retention != Retention.OFF;
+    }
 
     @Override
     public List<ITransformerActivity> getActivityFor(final String className) {
-        return Collections.unmodifiableList(getTransformerActivities(className));
+        return new ActivityList(className);
+    }
+
+    /**
+     * Start collecting the transformation activities added for a class on this thread, until the recording is
+     * closed. Unlike the class's trail, the recording is not affected by retention or by other threads.
+     */
+    Recording record(final String className) {
+        final Recording started = new Recording(className, recording.get());
+        recording.set(started);
+        return started;
+    }
+
+    /**
+     * The transformation activities of one class, collected on one thread. Recordings nest, for classes loaded
+     * while another is being transformed, and every open recording of a class collects its activities.
+     */
+    final class Recording implements AutoCloseable {
+        private final String className;
+        @Nullable
+        private final Recording outer;
+        private int[] ids = new int[0];
+        private int size;
+
+        private Recording(final String className, @Nullable final Recording outer) {
+            this.className = className;
+            this.outer = outer;
+        }
+
+        private void add(final int id) {
+            if (size == ids.length) ids = Arrays.copyOf(ids, Math.max(4, size * 2));
+            ids[size++] = id;
+        }
+
+        List<ITransformerActivity> activities() {
+            final ITransformerActivity[] recorded = new ITransformerActivity[size];
+            final TransformerActivity[] current = activities;
+            for (int i = 0; i < size; i++) {
+                recorded[i] = current[ids[i]];
+            }
+            return List.of(recorded);
+        }
+
+        @Override
+        public void close() {
+            recording.set(outer);
+        }
     }
 
     private static class TransformerActivity implements ITransformerActivity {
@@ -58,22 +191,164 @@ public class TransformerAuditTrail implements ITransformerAuditTrail {
         public String getActivityString() {
             return this.type.getLabel() + ":"+ String.join(":",this.context);
         }
+
+        @Override
+        public boolean equals(final Object obj) {
+            return obj instanceof TransformerActivity other && type == other.type && Arrays.equals(context, other.context);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * type.hashCode() + Arrays.hashCode(context);
+        }
+    }
+
+    /**
+     * The ids of the activities of one class. Appends are serialized per class, and reads need no lock: the array is
+     * published before the size that covers it, and is only ever replaced by a larger copy.
+     */
+    private static final class ClassTrail {
+        private volatile int[] ids = new int[2];
+        private volatile int size;
+        private boolean transformed;
+
+        synchronized void add(final int id, final boolean transformation) {
+            final int n = size;
+            int[] current = ids;
+            if (n == current.length) {
+                current = Arrays.copyOf(current, n * 2);
+            }
+            current[n] = id;
+            ids = current;
+            transformed |= transformation;
+            size = n + 1;
+        }
+
+        synchronized boolean isTransformed() {
+            return transformed;
+        }
+    }
+
+    /**
+     * Live read only view of the activities of a class. The trail is looked up on every call, as dropped trails are
+     * replaced by new ones if the class gets activities again.
+     */
+    private final class ActivityList extends AbstractList<ITransformerActivity> implements RandomAccess {
+        private final String className;
+
+        private ActivityList(final String className) {
+            this.className = className;
+        }
+
+        @Override
+        public ITransformerActivity get(final int index) {
+            final ClassTrail t = audit.get(className);
+            final int size = t != null ? t.size : 0;
+            if (index < 0 || index >= size) throw new IndexOutOfBoundsException(index);
+            return activities[t.ids[index]];
+        }
+
+        @Override
+        public int size() {
+            final ClassTrail t = audit.get(className);
+            return t != null ? t.size : 0;
+        }
     }
 
     public void addReason(String clazz, String reason) {
-        getTransformerActivities(clazz).add(new TransformerActivity(ITransformerActivity.Type.REASON, reason));
+        if (retention == Retention.OFF) return;
+        Integer id = reasonIds.get(reason);
+        if (id == null) {
+            id = intern(new TransformerActivity(ITransformerActivity.Type.REASON, reason));
+            reasonIds.put(reason, id);
+        }
+        append(clazz, id, false);
     }
 
     public void addPluginCustomAuditTrail(String clazz, ILaunchPluginService plugin, String... data) {
-        getTransformerActivities(clazz).add(new TransformerActivity(ITransformerActivity.Type.PLUGIN, concat(plugin.name(), data)));
+        if (retention == Retention.OFF) return;
+        append(clazz, intern(new TransformerActivity(ITransformerActivity.Type.PLUGIN, concat(plugin.name(), data))), true);
     }
 
     public void addPluginAuditTrail(String clazz, ILaunchPluginService plugin, ILaunchPluginService.Phase phase) {
-        getTransformerActivities(clazz).add(new TransformerActivity(ITransformerActivity.Type.PLUGIN, plugin.name(), phase.name().substring(0,1)));
+        if (retention == Retention.OFF) return;
+        append(clazz, intern(new TransformerActivity(ITransformerActivity.Type.PLUGIN, plugin.name(), phase.name().substring(0,1))), true);
     }
 
     public void addTransformerAuditTrail(String clazz, ITransformationService transformService, ITransformer<?> transformer) {
-        getTransformerActivities(clazz).add(new TransformerActivity(ITransformerActivity.Type.TRANSFORMER, concat(transformService.name(), transformer.labels())));
+        if (retention == Retention.OFF) return;
+        Integer id = transformerIds.get(transformer);
+        if (id == null) {
+            id = intern(new TransformerActivity(ITransformerActivity.Type.TRANSFORMER, concat(transformService.name(), transformer.labels())));
+            transformerIds.put(transformer, id);
+        }
+        append(clazz, id, true);
+    }
+
+    void addActivity(String clazz, ITransformerActivity.Type type, String... context) {
+        if (retention == Retention.OFF) return;
+        append(clazz, intern(new TransformerActivity(type, context)), type != ITransformerActivity.Type.REASON);
+    }
+
+    /**
+     * Called once a class has been processed, to drop its activities if they are not retained
+     */
+    void classProcessed(final String clazz) {
+        if (retention == Retention.TRANSFORMED_ONLY) {
+            final ClassTrail trail = audit.get(clazz);
+            if (trail != null && !trail.isTransformed()) {
+                audit.remove(clazz, trail);
+            }
+        }
+    }
+
+    private void append(final String clazz, final int id, final boolean transformation) {
+        ClassTrail trail = audit.get(clazz);
+        if (trail == null) {
+            final ClassTrail created = new ClassTrail();
+            trail = audit.putIfAbsent(clazz, created);
+            if (trail == null) {
+                trail = created;
+                if (recentClasses != null) {
+                    evictOldest(clazz);
+                }
+            }
+        }
+        trail.add(id, transformation);
+        if (transformation) {
+            for (Recording r = recording.get(); r != null; r = r.outer) {
+                if (r.className.equals(clazz)) r.add(id);
+            }
+        }
+    }
+
+    private void evictOldest(final String clazz) {
+        final String oldest;
+        synchronized (recentClasses) {
+            oldest = recentClasses[nextRecent];
+            recentClasses[nextRecent] = clazz;
+            nextRecent = (nextRecent + 1) % recentClasses.length;
+        }
+        if (oldest != null) {
+            audit.remove(oldest);
+        }
+    }
+
+    private int intern(final TransformerActivity activity) {
+        final Integer id = activityIds.get(activity);
+        return id != null ? id : activityIds.computeIfAbsent(activity, this::allocate);
+    }
+
+    private synchronized int allocate(final TransformerActivity activity) {
+        final int id = activityCount++;
+        TransformerActivity[] current = activities;
+        if (id == current.length) {
+            current = Arrays.copyOf(current, id * 2);
+        }
+        current[id] = activity;
+        // publish the array after the activity is in it, before the id can be handed out
+        activities = current;
+        return id;
     }
 
     private String[] concat(String first, String[] rest) {
@@ -82,12 +357,27 @@ public class TransformerAuditTrail implements ITransformerAuditTrail {
         System.arraycopy(rest, 0, res, 1, rest.length);
         return res;
     }
-    private List<ITransformerActivity> getTransformerActivities(final String clazz) {
-        return audit.computeIfAbsent(clazz, k->new ArrayList<>());
+
+    /**
+     * @return the number of classes with a trail
+     */
+    int classCount() {
+        return audit.size();
+    }
+
+    /**
+     * @return the number of activities in all trails
+     */
+    long entryCount() {
+        long entries = 0;
+        for (ClassTrail trail : audit.values()) {
+            entries += trail.size;
+        }
+        return entries;
     }
 
     @Override
     public String getAuditString(final String clazz) {
-        return audit.getOrDefault(clazz, Collections.emptyList()).stream().map(ITransformerActivity::getActivityString).collect(Collectors.joining(","));
+        return getActivityFor(clazz).stream().map(ITransformerActivity::getActivityString).collect(Collectors.joining(","));
     }
 }
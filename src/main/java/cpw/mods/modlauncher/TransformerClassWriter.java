@@ -19,6 +19,8 @@
 package cpw.mods.modlauncher;
 
 import cpw.mods.modlauncher.api.ITransformerActivity;
+import cpw.mods.modlauncher.api.ITransformerMetrics;
+import cpw.mods.modlauncher.jfr.FrameComputationLoadEvent;
 import cpw.mods.modlauncher.serviceapi.ILaunchPluginService;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
@@ -28,16 +30,13 @@ import org.objectweb.asm.ClassWriter;
 import org.objectweb.asm.Opcodes;
 import org.objectweb.asm.tree.ClassNode;
 
-import java.util.*;
-import java.util.concurrent.ConcurrentHashMap;
-
 class TransformerClassWriter extends ClassWriter {
     private static final Logger LOGGER = LogManager.getLogger();
-    private static final Map<String, String> CLASS_PARENTS = new ConcurrentHashMap<>();
-    private static final Map<String, Set<String>> CLASS_HIERARCHIES = new ConcurrentHashMap<>();
-    private static final Map<String, Boolean> IS_INTERFACE = new ConcurrentHashMap<>();
+    private static final ClassHierarchyTable CLASS_HIERARCHIES = new ClassHierarchyTable();
     private final ClassTransformer classTransformer;
     private final ClassNode clazzAccessor;
+    // One snapshot for the whole class, so the table being cleared meanwhile can't lose entries computed for it
+    private final ClassHierarchyTable.Table hierarchies = CLASS_HIERARCHIES.current();
     private boolean computedThis = false;
 
     public static ClassWriter createClassWriter(final int mlFlags, final ClassTransformer classTransformer, final ClassNode clazzAccessor) {
@@ -47,23 +46,45 @@ class TransformerClassWriter extends ClassWriter {
         return (writerFlag & ILaunchPluginService.ComputeFlags.COMPUTE_FRAMES) != 0 ? new TransformerClassWriter(writerFlag, classTransformer, clazzAccessor) : new ClassWriter(writerFlag);
     }
 
+    /**
+     * Create a writer that shares the constant pool of the class being transformed, so unchanged methods can be copied
+     */
+    public static ClassWriter createClassWriter(final ClassReader classReader, final int mlFlags, final ClassTransformer classTransformer, final ClassNode clazzAccessor) {
+        final int writerFlag = mlFlags & ~ILaunchPluginService.ComputeFlags.SIMPLE_REWRITE; //Strip any modlauncher-custom fields
+
+        return (writerFlag & ILaunchPluginService.ComputeFlags.COMPUTE_FRAMES) != 0 ? new TransformerClassWriter(classReader, writerFlag, classTransformer, clazzAccessor) : new ClassWriter(classReader, writerFlag);
+    }
+
     private TransformerClassWriter(final int writerFlags, final ClassTransformer classTransformer, final ClassNode clazzAccessor) {
-        super(writerFlags);
+        this(null, writerFlags, classTransformer, clazzAccessor);
+    }
+
+    private TransformerClassWriter(final ClassReader classReader, final int writerFlags, final ClassTransformer classTransformer, final ClassNode clazzAccessor) {
+        super(classReader, writerFlags);
         this.classTransformer = classTransformer;
         this.clazzAccessor = clazzAccessor;
     }
 
     @Override
     protected String getCommonSuperClass(final String type1, final String type2) {
+        final long start = System.nanoTime();
+        try {
+            return findCommonSuperClass(type1, type2);
+        } finally {
+            classTransformer.getMetrics().record(ITransformerMetrics.Stage.COMPUTE_FRAMES, System.nanoTime() - start);
+        }
+    }
+
+    private String findCommonSuperClass(final String type1, final String type2) {
         if (!computedThis) {
             computeHierarchy(clazzAccessor);
             computedThis = true;
         }
 
-        if (getSupers(type2).contains(type1)) {
+        if (hasSuper(type2, type1)) {
             return type1;
         }
-        if (getSupers(type1).contains(type2)) {
+        if (hasSuper(type1, type2)) {
             return type2;
         }
 
@@ -74,28 +95,34 @@ class TransformerClassWriter extends ClassWriter {
         String type = type1;
         do {
             type = getSuper(type);
-        } while (!getSupers(type2).contains(type));
+        } while (!hasSuper(type2, type));
         return type;
     }
 
+    /**
+     * The table of all class hierarchies computed so far, shared by all writers
+     */
+    static ClassHierarchyTable getClassHierarchies() {
+        return CLASS_HIERARCHIES;
+    }
 
-    private Set<String> getSupers(final String typeName) {
+    private boolean hasSuper(final String typeName, final String superName) {
         computeHierarchy(typeName);
-        return CLASS_HIERARCHIES.get(typeName);
+        return hierarchies.hasAncestor(typeName, superName);
     }
 
     private boolean isIntf(final String typeName) {
         //We don't need computeHierarchy as it has been called already from a different method every time this method is called
-        return IS_INTERFACE.get(typeName);
+        return hierarchies.isInterface(typeName);
     }
 
     private String getSuper(final String typeName) {
         computeHierarchy(typeName);
-        return CLASS_PARENTS.get(typeName);
+        return hierarchies.getSuper(typeName);
     }
 
     private void computeHierarchy(final ClassNode clazzNode) {
-        if (!CLASS_HIERARCHIES.containsKey(clazzNode.name)) {
+        if (!hierarchies.contains(clazzNode.name)) {
             clazzNode.accept(new SuperCollectingVisitor());
         }
     }
@@ -104,7 +131,7 @@ class TransformerClassWriter extends ClassWriter {
      * Computes the hierarchy for a specific class if it has not been computed yet
      */
     private void computeHierarchy(final String className) {
-        if (CLASS_HIERARCHIES.containsKey(className)) return; //already computed
+        if (hierarchies.contains(className)) return; //already computed
         Class<?> clz = classTransformer.getTransformingClassLoader().getLoadedClass(className.replace('/', '.'));
         if (clz != null) {
             computeHierarchyFromClass(className, clz);
@@ -119,42 +146,62 @@ class TransformerClassWriter extends ClassWriter {
      */
     private void computeHierarchyFromClass(final String name, final Class<?> clazz) {
         Class<?> superClass = clazz.getSuperclass();
-        Set<String> hierarchies = new HashSet<>();
+        String superName = null;
         if (superClass != null) {
-            String superName = superClass.getName().replace('.', '/');
-            CLASS_PARENTS.put(name, superName);
-            if (!CLASS_HIERARCHIES.containsKey(superName))
+            superName = superClass.getName().replace('.', '/');
+            if (!hierarchies.contains(superName))
                 computeHierarchyFromClass(superName, superClass);
-            hierarchies.add(name);
-            hierarchies.addAll(CLASS_HIERARCHIES.get(superName));
-        } else {
-            hierarchies.add("java/lang/Object");
         }
-        IS_INTERFACE.put(name, clazz.isInterface());
-        Arrays.stream(clazz.getInterfaces()).forEach(c->{
-            String n = c.getName().replace('.', '/');
-            if (!CLASS_HIERARCHIES.containsKey(n))
-                computeHierarchyFromClass(n, c);
-            hierarchies.add(n);
-            hierarchies.addAll(CLASS_HIERARCHIES.get(n));
-        });
-        CLASS_HIERARCHIES.put(name, hierarchies); //Only put the set in the map once it is fully populated, to prevent another thread from using incomplete data
+        final Class<?>[] interfaces = clazz.getInterfaces();
+        final String[] interfaceNames = new String[interfaces.length];
+        for (int i = 0; i < interfaces.length; i++) {
+            interfaceNames[i] = interfaces[i].getName().replace('.', '/');
+            if (!hierarchies.contains(interfaceNames[i]))
+                computeHierarchyFromClass(interfaceNames[i], interfaces[i]);
+        }
+        hierarchies.put(name, clazz.isInterface(), superName, interfaceNames); //Only put the entry in the table once its supers are, to prevent another thread from using incomplete data
     }
 
     /**
      * Computes the hierarchy for a specific class by loading the class from disk and running it through modlauncher.
+     * Classes that nothing transforms are looked up in the hierarchy index instead, if there is one.
      */
     private void computeHierarchyFromFile(final String className) {
+        final FrameComputationLoadEvent event = new FrameComputationLoadEvent();
+        event.begin();
+        final String source = loadHierarchyFromFile(className);
+        if (event.shouldCommit()) {
+            event.className = className;
+            event.writtenClass = clazzAccessor.name;
+            event.source = source;
+            event.commit();
+        }
+    }
+
+    /**
+     * @return where the hierarchy was found
+     */
+    private String loadHierarchyFromFile(final String className) {
+        final ClassHierarchyIndex index = classTransformer.getTransformingClassLoader().getHierarchyIndex();
+        if (index != null && !classTransformer.mayTransform(className, ITransformerActivity.COMPUTING_FRAMES_REASON)) {
+            final ClassHierarchyIndex.Entry entry = index.find(className);
+            if (entry != null) {
+                new SuperCollectingVisitor().visit(Opcodes.V1_8, entry.isInterface() ? Opcodes.ACC_INTERFACE : 0, className, null, entry.superName(), entry.interfaces());
+                return "index";
+            }
+        }
         try {
             byte[] classData = classTransformer.getTransformingClassLoader().buildTransformedClassNodeFor(className.replace('/', '.'), ITransformerActivity.COMPUTING_FRAMES_REASON);
             ClassReader classReader = new ClassReader(classData);
             classReader.accept(new SuperCollectingVisitor(), ClassReader.SKIP_CODE | ClassReader.SKIP_DEBUG | ClassReader.SKIP_FRAMES);
+            return "transformer";
         } catch (ClassNotFoundException e) {
             //Don't panic just yet. Do a classload on the super classloader
             //This is safe, as the TCL can't find the class, so it has to be on the super classloader, and it can't cause circulation,
             //as classes from the parent classloader cannot reference classes from the TCL, as the parent only contains libraries and std lib
             try {
                 computeHierarchyFromClass(className, Class.forName(className.replace('/', '.'), false, classTransformer.getTransformingClassLoader()));
+                return "parent";
             } catch (ClassNotFoundException classNotFoundException) {
                 classNotFoundException.addSuppressed(e);
                 LOGGER.fatal("Failed to find class {} ", className, classNotFoundException);
@@ -171,22 +218,13 @@ class TransformerClassWriter extends ClassWriter {
 
         @Override
         public void visit(final int version, final int access, final String name, final String signature, final String superName, final String[] interfaces) {
-            Set<String> hierarchies = new HashSet<>();
             if (superName != null) {
-                CLASS_PARENTS.put(name, superName);
                 computeHierarchy(superName);
-                hierarchies.add(name);
-                hierarchies.addAll(CLASS_HIERARCHIES.get(superName));
-            } else {
-                hierarchies.add("java/lang/Object");
             }
-            IS_INTERFACE.put(name, (access & Opcodes.ACC_INTERFACE) != 0);
-            Arrays.stream(interfaces).forEach(n->{
+            for (String n : interfaces) {
                 computeHierarchy(n);
-                hierarchies.add(n);
-                hierarchies.addAll(CLASS_HIERARCHIES.get(n));
-            });
-            CLASS_HIERARCHIES.put(name, hierarchies); //Only put the set in the map once it is fully populated, to prevent another thread from using incomplete data
+            }
+            hierarchies.put(name, (access & Opcodes.ACC_INTERFACE) != 0, superName, interfaces); //Only put the entry in the table once its supers are, to prevent another thread from using incomplete data
         }
     }
 }
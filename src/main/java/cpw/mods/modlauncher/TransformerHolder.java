@@ -60,6 +60,11 @@ public class TransformerHolder<T> implements ITransformer<T> {
         return wrapped.labels();
     }
 
+    @Override
+    public boolean needsExpandedFrames() {
+        return wrapped.needsExpandedFrames();
+    }
+
     public ITransformationService owner() {
         return owner;
     }
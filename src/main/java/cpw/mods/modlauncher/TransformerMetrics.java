@@ -0,0 +1,191 @@
+/*
+ * ModLauncher - for launching Java programs with in-flight transformation ability.
+ *
+ *     Copyright (C) 2017-2019 cpw
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Lesser General Public License as published by
+ *     the Free Software Foundation, version 3 of the License.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Lesser General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Lesser General Public License
+ *     along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package cpw.mods.modlauncher;
+
+import cpw.mods.modlauncher.api.ITransformer;
+import cpw.mods.modlauncher.api.ITransformerMetrics;
+import cpw.mods.modlauncher.serviceapi.ILaunchPluginService;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Transformation timings, summed in striped counters so threads loading classes in parallel don't contend.
+ */
+final class TransformerMetrics implements ITransformerMetrics {
+    private static final Stage[] STAGES = Stage.values();
+    private final LongAdder[] totals = adders();
+    private static final int SLOWEST_KEPT = 100;
+    private final LongAdder transformedClasses = new LongAdder();
+    private final Map<String, LongAdder> transformedByReason = new ConcurrentHashMap<>();
+    private final LongAdder bytesIn = new LongAdder();
+    private final LongAdder bytesOut = new LongAdder();
+    // Min-heap of the slowest classes. Faster classes are turned away by the threshold without locking
+    private final PriorityQueue<SlowClass> slowest = new PriorityQueue<>(Comparator.comparingLong(SlowClass::nanos));
+    private volatile long slowestThreshold;
+    // Keyed by the transformer or plugin instance, so a lookup never builds its name
+    private final Map<Object, Source> sources = new ConcurrentHashMap<>();
+
+    private record Source(String name, LongAdder[] nanos) {}
+
+    private record SlowClass(String className, String reason, long nanos) {}
+
+    private static LongAdder[] adders() {
+        final LongAdder[] adders = new LongAdder[STAGES.length];
+        for (int i = 0; i < adders.length; i++) {
+            adders[i] = new LongAdder();
+        }
+        return adders;
+    }
+
+    void record(final Stage stage, final long nanos) {
+        totals[stage.ordinal()].add(nanos);
+    }
+
+    void record(final Stage stage, final ITransformer<?> transformer, final long nanos) {
+        recordSource(stage, transformer, nanos);
+    }
+
+    void record(final ILaunchPluginService.Phase phase, final ILaunchPluginService plugin, final long nanos) {
+        recordSource(phase == ILaunchPluginService.Phase.BEFORE ? Stage.PLUGIN_BEFORE : Stage.PLUGIN_AFTER, plugin, nanos);
+    }
+
+    private void recordSource(final Stage stage, final Object key, final long nanos) {
+        totals[stage.ordinal()].add(nanos);
+        Source source = sources.get(key);
+        if (source == null) {
+            source = sources.computeIfAbsent(key, k -> new Source(nameOf(k), adders()));
+        }
+        source.nanos()[stage.ordinal()].add(nanos);
+    }
+
+    private static String nameOf(final Object source) {
+        if (source instanceof ILaunchPluginService plugin) {
+            return plugin.name();
+        }
+        final ITransformer<?> transformer = (ITransformer<?>) source;
+        final String labels = String.join(":", transformer.labels());
+        return transformer instanceof TransformerHolder<?> holder && holder.owner() != null ? holder.owner().name() + ":" + labels : labels;
+    }
+
+    void classTransformed(final String reason) {
+        transformedClasses.increment();
+        LongAdder count = transformedByReason.get(reason);
+        if (count == null) {
+            count = transformedByReason.computeIfAbsent(reason, r -> new LongAdder());
+        }
+        count.increment();
+    }
+
+    /**
+     * Record a class passing through the transformer, whether or not anything transformed it
+     */
+    void classProcessed(final String className, final String reason, final int inputSize, final int outputSize, final long nanos) {
+        bytesIn.add(inputSize);
+        bytesOut.add(outputSize);
+        if (nanos <= slowestThreshold) {
+            return;
+        }
+        synchronized (slowest) {
+            slowest.add(new SlowClass(className, reason, nanos));
+            if (slowest.size() > SLOWEST_KEPT) {
+                slowest.poll();
+                slowestThreshold = slowest.peek().nanos();
+            }
+        }
+    }
+
+    /**
+     * @return the slowest classes to pass through the transformer, slowest first, at most {@value SLOWEST_KEPT}
+     */
+    List<String> slowestClasses(final int count) {
+        final List<SlowClass> classes;
+        synchronized (slowest) {
+            classes = new ArrayList<>(slowest);
+        }
+        classes.sort(Comparator.comparingLong(SlowClass::nanos).reversed());
+        return classes.stream()
+                .limit(count)
+                .map(c -> c.className() + " (" + c.reason() + ") " + millis(c.nanos()))
+                .toList();
+    }
+
+    @Override
+    public long getNanos(final Stage stage) {
+        return totals[stage.ordinal()].sum();
+    }
+
+    @Override
+    public Map<String, Long> getNanosBySource(final Stage stage) {
+        final Map<String, Long> bySource = new HashMap<>();
+        for (Source source : sources.values()) {
+            final long nanos = source.nanos()[stage.ordinal()].sum();
+            if (nanos != 0) {
+                bySource.merge(source.name(), nanos, Long::sum);
+            }
+        }
+        return Collections.unmodifiableMap(bySource);
+    }
+
+    @Override
+    public long getTransformedClassCount() {
+        return transformedClasses.sum();
+    }
+
+    @Override
+    public Map<String, Long> getTransformedClassCountByReason() {
+        final Map<String, Long> byReason = new HashMap<>();
+        transformedByReason.forEach((reason, count) -> byReason.put(reason, count.sum()));
+        return Collections.unmodifiableMap(byReason);
+    }
+
+    @Override
+    public long getBytesIn() {
+        return bytesIn.sum();
+    }
+
+    @Override
+    public long getBytesOut() {
+        return bytesOut.sum();
+    }
+
+    /**
+     * Summarise the metrics for the log, one line per stage with its slowest sources
+     */
+    static String report(final ITransformerMetrics metrics, final int sourcesPerStage) {
+        final StringBuilder report = new StringBuilder();
+        report.append(metrics.getTransformedClassCount()).append(" classes transformed");
+        for (Stage stage : STAGES) {
+            report.append('\n').append(stage).append(' ').append(millis(metrics.getNanos(stage)));
+            final List<Map.Entry<String, Long>> slowest = metrics.getNanosBySource(stage).entrySet().stream()
+                    .sorted(Map.Entry.<String, Long>comparingByValue().reversed())
+                    .limit(sourcesPerStage)
+                    .toList();
+            for (int i = 0; i < slowest.size(); i++) {
+                report.append(i == 0 ? ": " : ", ").append(slowest.get(i).getKey()).append(' ').append(millis(slowest.get(i).getValue()));
+            }
+        }
+        return report.toString();
+    }
+
+    private static String millis(final long nanos) {
+        return String.format(Locale.ROOT, "%.1fms", nanos / 1_000_000.0);
+    }
+}
@@ -20,9 +20,11 @@ package cpw.mods.modlauncher;
 
 import cpw.mods.cl.ModuleClassLoader;
 import cpw.mods.modlauncher.api.*;
+import org.jetbrains.annotations.Nullable;
 import org.jetbrains.annotations.VisibleForTesting;
 
 import java.lang.module.Configuration;
+import java.nio.file.Path;
 import java.util.*;
 
 /**
@@ -33,10 +35,15 @@ public class TransformingClassLoader extends ModuleClassLoader {
         ClassLoader.registerAsParallelCapable();
     }
     private final ClassTransformer classTransformer;
+    private final ClassPretransformer pretransformer;
+    @Nullable
+    private final ClassHierarchyIndex hierarchyIndex;
 
     public TransformingClassLoader(TransformStore transformStore, LaunchPluginHandler pluginHandler, IModuleLayerManager moduleLayerHandler) {
         super("TRANSFORMER", moduleLayerHandler.getLayer(IModuleLayerManager.Layer.GAME).orElseThrow().configuration(), List.of(moduleLayerHandler.getLayer(IModuleLayerManager.Layer.SERVICE).orElseThrow()));
         this.classTransformer = new ClassTransformer(transformStore, pluginHandler, this);
+        this.pretransformer = new ClassPretransformer(classTransformer);
+        this.hierarchyIndex = null;
     }
 
     @VisibleForTesting
@@ -47,20 +54,73 @@ public class TransformingClassLoader extends ModuleClassLoader {
     @VisibleForTesting
     public TransformingClassLoader(TransformStore transformStore, LaunchPluginHandler pluginHandler, final Environment environment, final Configuration configuration, List<ModuleLayer> parentLayers, ClassLoader parentClassLoader) {
         super("TRANSFORMER", configuration, parentLayers, parentClassLoader);
-        TransformerAuditTrail tat = new TransformerAuditTrail();
+        TransformerAuditTrail tat = environment.getProperty(IEnvironment.Keys.AUDITTRAILPOLICY.get())
+                .map(TransformerAuditTrail::forPolicy)
+                .orElseGet(TransformerAuditTrail::new);
         environment.computePropertyIfAbsent(IEnvironment.Keys.AUDITTRAIL.get(), v->tat);
-        this.classTransformer = new ClassTransformer(transformStore, pluginHandler, this, tat);
+        TransformerMetrics metrics = new TransformerMetrics();
+        environment.computePropertyIfAbsent(IEnvironment.Keys.TRANSFORMERMETRICS.get(), v->metrics);
+        // cached classes replay their recorded activities, so classes cached without any must be kept apart
+        final String cacheDirectory = tat.isRecording() ? "classes" : "classes-unaudited";
+        final Optional<Path> cacheRoot = environment.getProperty(IEnvironment.Keys.TRANSFORMCACHE.get());
+        // frames are computed against the hierarchy of the game modules, so cached classes are only valid for the same modules
+        final String hierarchyKey = cacheRoot.flatMap(root -> ClassHierarchyIndex.key(configuration)).orElse(null);
+        final TransformCache transformCache = cacheRoot
+                .flatMap(root -> TransformCache.open(root.resolve(cacheDirectory), transformStore, pluginHandler, hierarchyKey))
+                .orElse(null);
+        final ClassDumper classDumper = environment.getProperty(IEnvironment.Keys.CLASSDUMP.get())
+                .flatMap(target -> ClassDumper.open(target, environment.getProperty(IEnvironment.Keys.CLASSDUMPFILTER.get()).orElse(null)))
+                .orElse(null);
+        this.classTransformer = new ClassTransformer(transformStore, pluginHandler, this, tat, transformCache, metrics, classDumper);
+        this.pretransformer = new ClassPretransformer(classTransformer);
+        this.hierarchyIndex = cacheRoot
+                .filter(root -> hierarchyKey != null)
+                .flatMap(root -> ClassHierarchyIndex.open(root.resolve("hierarchy"), configuration, hierarchyKey))
+                .orElse(null);
     }
 
     @Override
     protected byte[] maybeTransformClassBytes(final byte[] bytes, final String name, final String context) {
-        return classTransformer.transform(bytes, name, context != null ? context : ITransformerActivity.CLASSLOADING_REASON);
+        final String reason = context != null ? context : ITransformerActivity.CLASSLOADING_REASON;
+        if (ITransformerActivity.CLASSLOADING_REASON.equals(reason)) {
+            final byte[] pretransformed = pretransformer.take(name, bytes);
+            if (pretransformed != null) {
+                return pretransformed;
+            }
+        }
+        return classTransformer.transform(bytes, name, reason);
+    }
+
+    /**
+     * Transform the classes of the given configuration ahead of time, in parallel, ready for loading.
+     */
+    void pretransformClasses(final Configuration configuration, final int parallelism) {
+        pretransformer.pretransform(configuration, this, parallelism);
+    }
+
+    /**
+     * Drop the pretransformed classes which have not been loaded
+     */
+    void releasePretransformedClasses() {
+        pretransformer.release();
     }
 
     public Class<?> getLoadedClass(String name) {
         return findLoadedClass(name);
     }
 
+    /**
+     * @return the index of untransformed class hierarchies in this loader, if one is available
+     */
+    @Nullable
+    ClassHierarchyIndex getHierarchyIndex() {
+        return hierarchyIndex;
+    }
+
+    ClassTransformer getClassTransformer() {
+        return classTransformer;
+    }
+
     byte[] buildTransformedClassNodeFor(final String className, final String reason) throws ClassNotFoundException {
         return super.getMaybeTransformedClassBytes(className, reason);
     }
@@ -35,6 +35,8 @@ class VotingContext implements ITransformerVotingContext {
     private final List<ITransformerActivity> auditActivities;
     private final String reason;
     private Object node;
+    private boolean reasonObserved;
+    private int transformationCount;
 
     VotingContext(String className, boolean classExists, Supplier<byte[]> sha256sum, final List<ITransformerActivity> activities, final String reason) {
         this.className = className;
@@ -61,14 +63,43 @@ class VotingContext implements ITransformerVotingContext {
 
     @Override
     public List<ITransformerActivity> getAuditActivities() {
+        reasonObserved = true;
         return auditActivities;
     }
 
     @Override
     public String getReason() {
+        reasonObserved = true;
         return reason;
     }
 
+    /**
+     * The reason, for the launcher's own use: unlike {@link #getReason()}, reading it here does not make the result
+     * depend on it
+     */
+    String reason() {
+        return reason;
+    }
+
+    /**
+     * Whether a transformer looked at the reason for this transformation, directly or through the audit trail.
+     * If none did, the result is the same for every reason.
+     */
+    boolean isReasonObserved() {
+        return reasonObserved;
+    }
+
+    void transformationApplied() {
+        transformationCount++;
+    }
+
+    /**
+     * @return the number of transformers applied so far
+     */
+    int getTransformationCount() {
+        return transformationCount;
+    }
+
     <T> void setNode(final T node) {
         this.node = node;
     }
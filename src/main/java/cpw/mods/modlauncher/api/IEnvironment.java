@@ -102,6 +102,39 @@ public interface IEnvironment {
          * The implementation version for ModLauncher.
          */
         public static final Supplier<TypesafeMap.Key<String>> MLIMPL_VERSION = buildKey("mlimplVersion", String.class);
+        /**
+         * The root directory of the on-disk transformation cache (passed as an argument). Absent if caching is disabled.
+         */
+        public static final Supplier<TypesafeMap.Key<Path>> TRANSFORMCACHE = buildKey("transformcache", Path.class);
+        /**
+         * The number of threads used to transform classes ahead of launch (passed as an argument). Absent if disabled.
+         */
+        public static final Supplier<TypesafeMap.Key<Integer>> PRETRANSFORM = buildKey("pretransform", Integer.class);
+        /**
+         * The audit trail retention policy (passed as an argument): full, transformed, ring:&lt;classes&gt; or off. Absent means full.
+         */
+        public static final Supplier<TypesafeMap.Key<String>> AUDITTRAILPOLICY = buildKey("audittrailpolicy", String.class);
+        /**
+         * Where to write the JSON timeline of the launch steps (passed as an argument). Absent if disabled.
+         */
+        public static final Supplier<TypesafeMap.Key<Path>> STARTUPREPORT = buildKey("startupreport", Path.class);
+        /**
+         * Where to dump the classes handed to the class loader, a directory or a zip file (passed as an argument). Absent if disabled.
+         */
+        public static final Supplier<TypesafeMap.Key<Path>> CLASSDUMP = buildKey("classdump", Path.class);
+        /**
+         * Which classes to dump (passed as an argument): class names, package globs and transformed. Absent means all.
+         */
+        public static final Supplier<TypesafeMap.Key<String>> CLASSDUMPFILTER = buildKey("classdumpfilter", String.class);
+        /**
+         * Timings of the transformers and launch plugins
+         */
+        public static final Supplier<TypesafeMap.Key<ITransformerMetrics>> TRANSFORMERMETRICS = buildKey("transformermetrics", ITransformerMetrics.class);
+        /**
+         * Whether to register the transformation statistics MBean (passed as an argument). Absent means only if the
+         * JVM was started with remote JMX enabled.
+         */
+        public static final Supplier<TypesafeMap.Key<Boolean>> JMX = buildKey("jmx", Boolean.class);
     }
 
 
@@ -92,6 +92,17 @@ public interface ITransformer<T> {
         return DEFAULT_LABEL;
     }
 
+    /**
+     * Whether this transformer reads or writes stack map frames in the nodes it is given, and needs them in
+     * expanded form ({@link org.objectweb.asm.ClassReader#EXPAND_FRAMES}). Transformers that leave frames alone
+     * should return false, which lets classes be parsed faster when no other transformer needs them.
+     *
+     * @return true if frames must be expanded
+     */
+    default boolean needsExpandedFrames() {
+        return true;
+    }
+
     /**
      * Simple data holder indicating where the {@link ITransformer} can target.
      * @param className         The name of the class being targetted
@@ -0,0 +1,92 @@
+/*
+ * ModLauncher - for launching Java programs with in-flight transformation ability.
+ *
+ *     Copyright (C) 2017-2019 cpw
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Lesser General Public License as published by
+ *     the Free Software Foundation, version 3 of the License.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Lesser General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Lesser General Public License
+ *     along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package cpw.mods.modlauncher.api;
+
+import java.util.Map;
+
+/**
+ * Time spent transforming classes, by stage and by the transformer or launch plugin responsible.
+ * Times include any nested class transformation, such as classes loaded to compute frames.
+ */
+public interface ITransformerMetrics {
+    enum Stage {
+        /**
+         * Reading class bytes into a class node
+         */
+        PARSE,
+        /**
+         * Transformers voting, attributed to each transformer
+         */
+        VOTE,
+        /**
+         * Transformers transforming, attributed to each transformer
+         */
+        TRANSFORM,
+        /**
+         * Launch plugins processing classes before the transformers, attributed to each plugin
+         */
+        PLUGIN_BEFORE,
+        /**
+         * Launch plugins processing classes after the transformers, attributed to each plugin
+         */
+        PLUGIN_AFTER,
+        /**
+         * Writing class nodes back to bytes, including frame computation
+         */
+        WRITE,
+        /**
+         * Finding common super classes while computing frames
+         */
+        COMPUTE_FRAMES
+    }
+
+    /**
+     * @param stage The stage
+     * @return the total nanoseconds spent in the stage
+     */
+    long getNanos(Stage stage);
+
+    /**
+     * Retrieve the time spent in a stage by each transformer or launch plugin. Transformers are named by their
+     * service and labels, as in the audit trail, and plugins by their name.
+     * @param stage The stage
+     * @return the nanoseconds spent by each source, empty for stages which aren't attributed
+     */
+    Map<String, Long> getNanosBySource(Stage stage);
+
+    /**
+     * @return the number of classes which were transformed
+     */
+    long getTransformedClassCount();
+
+    /**
+     * @return the number of classes which were transformed for each reason
+     */
+    Map<String, Long> getTransformedClassCountByReason();
+
+    /**
+     * @return the total size of the classes given to the transformer
+     */
+    long getBytesIn();
+
+    /**
+     * @return the total size of the classes returned by the transformer
+     */
+    long getBytesOut();
+}
@@ -45,6 +45,10 @@ public final class TargetType<T> {
     public Class<T> getNodeType() {
         return this.nodeType;
     }
+
+    public String getName() {
+        return this.name;
+    }
     
     public static TargetType<?> byName(String name) {
         return Stream.of(VALUES)
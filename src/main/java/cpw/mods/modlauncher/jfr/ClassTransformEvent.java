@@ -0,0 +1,41 @@
+/*
+ * ModLauncher - for launching Java programs with in-flight transformation ability.
+ *
+ *     Copyright (C) 2017-2019 cpw
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Lesser General Public License as published by
+ *     the Free Software Foundation, version 3 of the License.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Lesser General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Lesser General Public License
+ *     along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package cpw.mods.modlauncher.jfr;
+
+import jdk.jfr.*;
+
+/**
+ * A class going through the transformer, from its original bytes to the result
+ */
+@Name("cpw.mods.modlauncher.ClassTransform")
+@Label("Class Transform")
+@Category({"ModLauncher", "Class Transformation"})
+@StackTrace(false)
+public final class ClassTransformEvent extends Event {
+    @Label("Class Name")
+    public String className;
+    @Label("Reason")
+    public String reason;
+    @Label("Input Size")
+    @DataAmount
+    public int inputSize;
+    @Label("Output Size")
+    @DataAmount
+    public int outputSize;
+}
@@ -0,0 +1,40 @@
+/*
+ * ModLauncher - for launching Java programs with in-flight transformation ability.
+ *
+ *     Copyright (C) 2017-2019 cpw
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Lesser General Public License as published by
+ *     the Free Software Foundation, version 3 of the License.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Lesser General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Lesser General Public License
+ *     along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package cpw.mods.modlauncher.jfr;
+
+import jdk.jfr.*;
+
+/**
+ * A class loaded to find its hierarchy while computing the frames of another class
+ */
+@Name("cpw.mods.modlauncher.FrameComputationLoad")
+@Label("Frame Computation Load")
+@Category({"ModLauncher", "Class Transformation"})
+@StackTrace(false)
+public final class FrameComputationLoadEvent extends Event {
+    @Label("Class Name")
+    @Description("The class whose hierarchy was needed")
+    public String className;
+    @Label("Written Class")
+    @Description("The class whose frames were being computed")
+    public String writtenClass;
+    @Label("Source")
+    @Description("Where the hierarchy came from: index, transformer or parent")
+    public String source;
+}
@@ -0,0 +1,41 @@
+/*
+ * ModLauncher - for launching Java programs with in-flight transformation ability.
+ *
+ *     Copyright (C) 2017-2019 cpw
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Lesser General Public License as published by
+ *     the Free Software Foundation, version 3 of the License.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Lesser General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Lesser General Public License
+ *     along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package cpw.mods.modlauncher.jfr;
+
+import jdk.jfr.*;
+
+/**
+ * A launch plugin processing a class in one of its phases
+ */
+@Name("cpw.mods.modlauncher.LaunchPlugin")
+@Label("Launch Plugin")
+@Category({"ModLauncher", "Class Transformation"})
+@StackTrace(false)
+public final class LaunchPluginEvent extends Event {
+    @Label("Class Name")
+    public String className;
+    @Label("Reason")
+    public String reason;
+    @Label("Plugin")
+    public String plugin;
+    @Label("Phase")
+    public String phase;
+    @Label("Compute Flags")
+    public int flags;
+}
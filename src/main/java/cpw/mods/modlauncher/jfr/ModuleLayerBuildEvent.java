@@ -0,0 +1,35 @@
+/*
+ * ModLauncher - for launching Java programs with in-flight transformation ability.
+ *
+ *     Copyright (C) 2017-2019 cpw
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Lesser General Public License as published by
+ *     the Free Software Foundation, version 3 of the License.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Lesser General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Lesser General Public License
+ *     along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package cpw.mods.modlauncher.jfr;
+
+import jdk.jfr.*;
+
+/**
+ * Resolving and defining one of the module layers
+ */
+@Name("cpw.mods.modlauncher.ModuleLayerBuild")
+@Label("Module Layer Build")
+@Category({"ModLauncher", "Module Layers"})
+@StackTrace(false)
+public final class ModuleLayerBuildEvent extends Event {
+    @Label("Layer")
+    public String layer;
+    @Label("Jars")
+    public int jars;
+}
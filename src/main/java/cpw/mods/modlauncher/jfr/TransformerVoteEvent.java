@@ -0,0 +1,43 @@
+/*
+ * ModLauncher - for launching Java programs with in-flight transformation ability.
+ *
+ *     Copyright (C) 2017-2019 cpw
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Lesser General Public License as published by
+ *     the Free Software Foundation, version 3 of the License.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Lesser General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Lesser General Public License
+ *     along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package cpw.mods.modlauncher.jfr;
+
+import jdk.jfr.*;
+
+/**
+ * One round of transformer voting on a class, field or method, including the transformation it chose
+ */
+@Name("cpw.mods.modlauncher.TransformerVote")
+@Label("Transformer Vote Round")
+@Category({"ModLauncher", "Class Transformation"})
+@StackTrace(false)
+public final class TransformerVoteEvent extends Event {
+    @Label("Class Name")
+    public String className;
+    @Label("Reason")
+    public String reason;
+    @Label("Voters")
+    public int voters;
+    @Label("Applied Service")
+    @Description("The service owning the transformer applied in this round, if any")
+    public String service;
+    @Label("Applied Transformer")
+    @Description("The labels of the transformer applied in this round, if any")
+    public String transformer;
+}
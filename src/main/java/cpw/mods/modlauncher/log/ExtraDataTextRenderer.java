@@ -51,8 +51,9 @@ public class ExtraDataTextRenderer implements TextRenderer {
             final TransformerContext classContext = currentClass.get();
             currentClass.remove();
             if (classContext != null) {
-                final Optional<String> auditLine = auditData.map(data -> data.getAuditString(classContext.getClassName()));
-                wrapped.render(" {"+ auditLine.orElse("") +"}", output, "StackTraceElement.Transformers");
+                // the audit trail may not have retained anything for this class, so leave the suffix out
+                final Optional<String> auditLine = auditData.map(data -> data.getAuditString(classContext.getClassName())).filter(line -> !line.isEmpty());
+                auditLine.ifPresent(line -> wrapped.render(" {"+ line +"}", output, "StackTraceElement.Transformers"));
             }
             return;
         }
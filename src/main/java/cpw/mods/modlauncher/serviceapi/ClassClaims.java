@@ -0,0 +1,80 @@
+/*
+ * ModLauncher - for launching Java programs with in-flight transformation ability.
+ *
+ *     Copyright (C) 2017-2019 cpw
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Lesser General Public License as published by
+ *     the Free Software Foundation, version 3 of the License.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Lesser General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Lesser General Public License
+ *     along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package cpw.mods.modlauncher.serviceapi;
+
+import java.util.*;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * The classes a launch plugin wants to process, in each {@link ILaunchPluginService.Phase}. See
+ * {@link ILaunchPluginService#classClaims()}.
+ *
+ * A claim is one of
+ * <ul>
+ *     <li>a class name, {@code "net/minecraft/client/Minecraft"}</li>
+ *     <li>a package glob, {@code "net/minecraft/client/*"}, for the classes directly in that package</li>
+ *     <li>a recursive package glob, {@code "net/minecraft/**"}, for the classes in that package and its subpackages</li>
+ * </ul>
+ * Names may use '.' or '/' as separator. Claims can be added at any time, and apply to classes processed afterwards.
+ */
+public final class ClassClaims {
+    private final Map<ILaunchPluginService.Phase, Set<String>> claims = new EnumMap<>(ILaunchPluginService.Phase.class);
+    private final List<Runnable> listeners = new CopyOnWriteArrayList<>();
+
+    /**
+     * Claim classes for a phase
+     *
+     * @param phase the phase to be called for
+     * @param patterns class names or package globs
+     * @return this
+     */
+    public ClassClaims claim(final ILaunchPluginService.Phase phase, final String... patterns) {
+        synchronized (this) {
+            final Set<String> phaseClaims = claims.computeIfAbsent(phase, p -> new LinkedHashSet<>());
+            for (String pattern : patterns) {
+                final String normalized = pattern.replace('.', '/');
+                final String stem = normalized.endsWith("**") ? normalized.substring(0, normalized.length() - 2)
+                        : normalized.endsWith("*") ? normalized.substring(0, normalized.length() - 1) : normalized;
+                // wildcards are only allowed as a whole last segment
+                if (stem.indexOf('*') >= 0 || stem.length() != normalized.length() && !stem.isEmpty() && !stem.endsWith("/")) {
+                    throw new IllegalArgumentException("Invalid class claim " + pattern);
+                }
+                phaseClaims.add(normalized);
+            }
+        }
+        listeners.forEach(Runnable::run);
+        return this;
+    }
+
+    /**
+     * @return a copy of the current claims
+     */
+    public synchronized Map<ILaunchPluginService.Phase, Set<String>> getClaims() {
+        final Map<ILaunchPluginService.Phase, Set<String>> copy = new EnumMap<>(ILaunchPluginService.Phase.class);
+        claims.forEach((phase, patterns) -> copy.put(phase, Set.copyOf(patterns)));
+        return copy;
+    }
+
+    /**
+     * Used by the launcher to be told when claims are added
+     */
+    public void addListener(final Runnable listener) {
+        listeners.add(listener);
+    }
+}
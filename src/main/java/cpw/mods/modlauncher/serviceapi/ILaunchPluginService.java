@@ -28,6 +28,8 @@ import java.nio.file.Path;
 import java.util.EnumSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
 import java.util.function.Consumer;
 
 /**
@@ -112,6 +114,33 @@ public interface ILaunchPluginService {
         return handlesClass(classType, isEmpty);
     }
 
+    /**
+     * The class name prefixes, such as packages ({@code "net/minecraft/"}) or whole class names, covering every class
+     * this plugin could ever want to handle. Classes matching none of them are not offered to
+     * {@link #handlesClass(Type, boolean, String)}, which lets classes nobody handles be skipped cheaply.
+     * Queried once, when plugins are loaded.
+     *
+     * @return the prefixes, in internal form, or empty if the plugin may handle any class
+     */
+    default Optional<Set<String>> candidateClassPrefixes() {
+        return Optional.empty();
+    }
+
+    /**
+     * Declarative alternative to {@link #handlesClass(Type, boolean, String)}. A plugin returning claims is never
+     * asked about individual classes: it is offered exactly the classes it claimed, in the claimed phases, for every
+     * reason and whether or not the class file exists. Claims can still be added after they are returned.
+     * Queried once, when plugins are loaded.
+     * <p>
+     * When the launch pretransforms classes, claimed classes are processed in parallel after
+     * {@link #initializeLaunch}, before they are loaded, and some of them may never be loaded.
+     *
+     * @return the claims of this plugin, or empty to be asked about each class instead
+     */
+    default Optional<ClassClaims> classClaims() {
+        return Optional.empty();
+    }
+
     /**
      * Each class loaded is offered to the plugin for processing.
      * Ordering between plugins is not known.
@@ -156,6 +185,17 @@ public interface ILaunchPluginService {
         return processClass(phase, classNode, classType, reason) ? ComputeFlags.COMPUTE_FRAMES : ComputeFlags.NO_REWRITE;
     }
 
+    /**
+     * Whether this plugin reads or writes stack map frames in the class nodes it processes, and needs them in
+     * expanded form ({@link org.objectweb.asm.ClassReader#EXPAND_FRAMES}). Plugins that leave frames alone
+     * should return false, which lets classes be parsed faster when no other consumer needs them.
+     *
+     * @return true if frames must be expanded
+     */
+    default boolean needsExpandedFrames() {
+        return true;
+    }
+
     /**
      * Adds a resource to this plugin for processing by it. Used by forge to hand resources to access transformers
      * for example.
@@ -22,6 +22,7 @@ import cpw.mods.niofs.union.UnionFileSystem;
 
 import java.nio.file.Path;
 import java.util.Objects;
+import java.util.Optional;
 import java.util.ServiceConfigurationError;
 import java.util.ServiceLoader;
 import java.util.function.Consumer;
@@ -50,12 +51,25 @@ public final class ServiceLoaderUtils {
             return clazz.getProtectionDomain().getCodeSource().getLocation().getFile();
         }
 
+        return pathFor(clazz)
+                .map(p -> p.getFileName().toString())
+                .orElse("MISSING FILE");
+    }
+
+    /**
+     * Find the file or directory the module containing the class was loaded from
+     * @param clazz the class
+     * @return the path, if the class comes from a module with a known location
+     */
+    public static Optional<Path> pathFor(Class<?> clazz) {
+        if (clazz.getModule().getLayer() == null) {
+            return Optional.empty();
+        }
+
         return clazz.getModule().getLayer().configuration()
                 .findModule(clazz.getModule().getName())
                 .flatMap(rm->rm.reference().location())
                 .map(Path::of)
-                .map(p -> p.getFileSystem() instanceof UnionFileSystem ufs ? ufs.getPrimaryPath() : p)
-                .map(p -> p.getFileName().toString())
-                .orElse("MISSING FILE");
+                .map(p -> p.getFileSystem() instanceof UnionFileSystem ufs ? ufs.getPrimaryPath() : p);
     }
 }
@@ -4,6 +4,8 @@ module cpw.mods.modlauncher {
     requires org.objectweb.asm.tree;
     requires org.apache.logging.log4j.core;
     requires jopt.simple;
+    requires jdk.jfr;
+    requires java.management;
     requires cpw.mods.securejarhandler;
     requires static org.jetbrains.annotations;
     exports cpw.mods.modlauncher.log;
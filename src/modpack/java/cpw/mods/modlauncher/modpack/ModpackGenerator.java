@@ -0,0 +1,143 @@
+/*
+ * ModLauncher - for launching Java programs with in-flight transformation ability.
+ *
+ *     Copyright (C) 2017-2019 cpw
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Lesser General Public License as published by
+ *     the Free Software Foundation, version 3 of the License.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Lesser General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Lesser General Public License
+ *     along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package cpw.mods.modlauncher.modpack;
+
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Label;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.jar.Attributes;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+
+/**
+ * Generates a synthetic modpack: a number of mod jars, each an automatic module {@code modpack.mod<n>} holding
+ * classes {@code modpack.mod<n>.Class<i>}. The classes form inheritance chains of the given depth, and each has
+ * a few fields and methods with loops, so transforming them needs frames.
+ */
+public final class ModpackGenerator {
+    static final int FIELDS = 4;
+    static final int METHODS = 4;
+
+    private ModpackGenerator() {
+    }
+
+    /**
+     * Generate the jars into the directory
+     *
+     * @param dir where to write the jars
+     * @param mods the number of jars
+     * @param classes the number of classes in each jar
+     * @param depth the length of the inheritance chains in each jar
+     * @return the jars written
+     */
+    public static List<Path> generate(final Path dir, final int mods, final int classes, final int depth) throws IOException {
+        if (mods < 1 || classes < 1 || depth < 1) {
+            throw new IllegalArgumentException("Invalid modpack " + mods + " mods, " + classes + " classes, depth " + depth);
+        }
+        Files.createDirectories(dir);
+        final List<Path> jars = new ArrayList<>(mods);
+        for (int mod = 0; mod < mods; mod++) {
+            final Path jar = dir.resolve("mod" + mod + ".jar");
+            final Manifest manifest = new Manifest();
+            manifest.getMainAttributes().put(Attributes.Name.MANIFEST_VERSION, "1.0");
+            manifest.getMainAttributes().put(new Attributes.Name("Automatic-Module-Name"), "modpack.mod" + mod);
+            try (OutputStream out = Files.newOutputStream(jar); JarOutputStream jarOut = new JarOutputStream(out, manifest)) {
+                for (int i = 0; i < classes; i++) {
+                    final String name = className(mod, i);
+                    final String superName = i % depth == 0 ? "java/lang/Object" : className(mod, i - 1);
+                    jarOut.putNextEntry(new JarEntry(name + ".class"));
+                    jarOut.write(generateClass(name, superName));
+                    jarOut.closeEntry();
+                }
+            }
+            jars.add(jar);
+        }
+        return jars;
+    }
+
+    static String className(final int mod, final int index) {
+        return "modpack/mod" + mod + "/Class" + index;
+    }
+
+    private static byte[] generateClass(final String name, final String superName) {
+        final ClassWriter cw = new ClassWriter(ClassWriter.COMPUTE_FRAMES) {
+            @Override
+            protected String getCommonSuperClass(final String type1, final String type2) {
+                return "java/lang/Object";
+            }
+        };
+        cw.visit(Opcodes.V17, Opcodes.ACC_PUBLIC | Opcodes.ACC_SUPER, name, null, superName, null);
+        for (int i = 0; i < FIELDS; i++) {
+            cw.visitField(Opcodes.ACC_PUBLIC, "field" + i, "I", null, null).visitEnd();
+        }
+        MethodVisitor mv = cw.visitMethod(Opcodes.ACC_PUBLIC, "<init>", "()V", null, null);
+        mv.visitCode();
+        mv.visitVarInsn(Opcodes.ALOAD, 0);
+        mv.visitMethodInsn(Opcodes.INVOKESPECIAL, superName, "<init>", "()V", false);
+        mv.visitInsn(Opcodes.RETURN);
+        mv.visitMaxs(0, 0);
+        mv.visitEnd();
+        for (int i = 0; i < METHODS; i++) {
+            mv = cw.visitMethod(Opcodes.ACC_PUBLIC, "method" + i, "(I)I", null, null);
+            mv.visitCode();
+            final Label loop = new Label();
+            final Label end = new Label();
+            mv.visitInsn(Opcodes.ICONST_0);
+            mv.visitVarInsn(Opcodes.ISTORE, 2);
+            mv.visitLabel(loop);
+            mv.visitVarInsn(Opcodes.ILOAD, 1);
+            mv.visitJumpInsn(Opcodes.IFLE, end);
+            mv.visitVarInsn(Opcodes.ILOAD, 2);
+            mv.visitVarInsn(Opcodes.ALOAD, 0);
+            mv.visitFieldInsn(Opcodes.GETFIELD, name, "field" + (i % FIELDS), "I");
+            mv.visitInsn(Opcodes.IADD);
+            mv.visitVarInsn(Opcodes.ISTORE, 2);
+            mv.visitIincInsn(1, -1);
+            mv.visitJumpInsn(Opcodes.GOTO, loop);
+            mv.visitLabel(end);
+            mv.visitVarInsn(Opcodes.ILOAD, 2);
+            mv.visitInsn(Opcodes.IRETURN);
+            mv.visitMaxs(0, 0);
+            mv.visitEnd();
+        }
+        cw.visitEnd();
+        return cw.toByteArray();
+    }
+
+    /**
+     * Usage: {@code <dir> <mods> <classes per mod> <inheritance depth>}
+     */
+    public static void main(final String... args) throws IOException {
+        if (args.length != 4) {
+            System.err.println("Usage: ModpackGenerator <dir> <mods> <classes per mod> <inheritance depth>");
+            System.exit(1);
+        }
+        final List<Path> jars = generate(Path.of(args[0]), Integer.parseInt(args[1]), Integer.parseInt(args[2]), Integer.parseInt(args[3]));
+        System.out.println("Generated " + jars.size() + " jars in " + args[0]);
+    }
+}
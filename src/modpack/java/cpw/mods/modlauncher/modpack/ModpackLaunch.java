@@ -0,0 +1,67 @@
+/*
+ * ModLauncher - for launching Java programs with in-flight transformation ability.
+ *
+ *     Copyright (C) 2017-2019 cpw
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Lesser General Public License as published by
+ *     the Free Software Foundation, version 3 of the License.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Lesser General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Lesser General Public License
+ *     along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package cpw.mods.modlauncher.modpack;
+
+import cpw.mods.modlauncher.Launcher;
+import cpw.mods.modlauncher.api.IModuleLayerManager;
+import cpw.mods.modlauncher.api.ServiceRunner;
+
+import java.lang.module.ModuleReader;
+import java.lang.module.ResolvedModule;
+import java.util.Iterator;
+import java.util.stream.Stream;
+
+/**
+ * Launch target for the {@code testharness} launch handler, with {@code -Dtest.harness.callable} set to this
+ * class. Loads every class of the GAME layer through the transforming class loader.
+ */
+public final class ModpackLaunch {
+    private static volatile int loadedClasses;
+
+    private ModpackLaunch() {
+    }
+
+    public static ServiceRunner supplier() {
+        return () -> {
+            final ClassLoader classLoader = Thread.currentThread().getContextClassLoader();
+            final ModuleLayer gameLayer = Launcher.INSTANCE.findLayerManager()
+                    .flatMap(manager -> manager.getLayer(IModuleLayerManager.Layer.GAME))
+                    .orElseThrow();
+            int loaded = 0;
+            for (ResolvedModule module : gameLayer.configuration().modules()) {
+                try (ModuleReader reader = module.reference().open(); Stream<String> resources = reader.list()) {
+                    for (Iterator<String> it = resources.iterator(); it.hasNext(); ) {
+                        final String resource = it.next();
+                        if (!resource.endsWith(".class") || resource.equals("module-info.class")) continue;
+                        Class.forName(resource.substring(0, resource.length() - 6).replace('/', '.'), false, classLoader);
+                        loaded++;
+                    }
+                }
+            }
+            loadedClasses = loaded;
+        };
+    }
+
+    /**
+     * @return the number of classes loaded by the last launch
+     */
+    public static int loadedClasses() {
+        return loadedClasses;
+    }
+}
@@ -0,0 +1,149 @@
+/*
+ * ModLauncher - for launching Java programs with in-flight transformation ability.
+ *
+ *     Copyright (C) 2017-2019 cpw
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Lesser General Public License as published by
+ *     the Free Software Foundation, version 3 of the License.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Lesser General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Lesser General Public License
+ *     along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package cpw.mods.modlauncher.modpack;
+
+import cpw.mods.jarhandling.SecureJar;
+import cpw.mods.modlauncher.api.*;
+import joptsimple.ArgumentAcceptingOptionSpec;
+import joptsimple.OptionSpecBuilder;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.tree.*;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.function.BiFunction;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.stream.Stream;
+
+/**
+ * Puts the jars of a generated modpack in the GAME layer, and transforms its classes.
+ *
+ * {@code --modpack.dir} is the directory of jars written by {@link ModpackGenerator}. {@code --modpack.transformers}
+ * is the number of transformers, spread evenly over the classes and cycling through CLASS, METHOD and FIELD
+ * transformers.
+ */
+public class ModpackTransformationService implements ITransformationService {
+    private ArgumentAcceptingOptionSpec<String> dirOption;
+    private ArgumentAcceptingOptionSpec<Integer> transformersOption;
+    private List<Path> jars = List.of();
+    private int transformerCount;
+
+    @Override
+    public String name() {
+        return "modpack";
+    }
+
+    @Override
+    public void arguments(final BiFunction<String, String, OptionSpecBuilder> argumentBuilder) {
+        dirOption = argumentBuilder.apply("dir", "Directory of generated modpack jars").withRequiredArg();
+        transformersOption = argumentBuilder.apply("transformers", "Number of transformers to apply to the modpack").withRequiredArg().ofType(Integer.class).defaultsTo(0);
+    }
+
+    @Override
+    public void argumentValues(final OptionResult option) {
+        final String dir = option.value(dirOption);
+        transformerCount = option.value(transformersOption);
+        if (dir == null) return;
+        try (Stream<Path> files = Files.list(Path.of(dir))) {
+            jars = files.filter(p -> p.getFileName().toString().endsWith(".jar")).sorted().toList();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public void initialize(final IEnvironment environment) {
+    }
+
+    @Override
+    public void onLoad(final IEnvironment env, final Set<String> otherServices) {
+    }
+
+    @Override
+    public List<Resource> completeScan(final IModuleLayerManager layerManager) {
+        return List.of(new Resource(IModuleLayerManager.Layer.GAME, jars.stream().map(SecureJar::from).toList()));
+    }
+
+    @Override
+    public List<? extends ITransformer<?>> transformers() {
+        if (transformerCount == 0) return List.of();
+        final List<String> classes = new ArrayList<>();
+        for (Path jar : jars) {
+            try (JarFile jarFile = new JarFile(jar.toFile())) {
+                jarFile.stream()
+                        .map(JarEntry::getName)
+                        .filter(name -> name.endsWith(".class") && !name.equals("module-info.class"))
+                        .map(name -> name.substring(0, name.length() - 6).replace('/', '.'))
+                        .forEach(classes::add);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        final List<ITransformer<?>> transformers = new ArrayList<>(transformerCount);
+        for (int i = 0; i < transformerCount; i++) {
+            final String className = classes.get((int) ((long) i * classes.size() / transformerCount));
+            if (i % 3 == 0) {
+                transformers.add(new ModpackTransformer<>(TargetType.CLASS, ITransformer.Target.targetClass(className), "class" + i));
+            } else if (i % 3 == 1) {
+                transformers.add(new ModpackTransformer<>(TargetType.METHOD, ITransformer.Target.targetMethod(className, "method" + (i % ModpackGenerator.METHODS), "(I)I"), "method" + i));
+            } else {
+                transformers.add(new ModpackTransformer<>(TargetType.FIELD, ITransformer.Target.targetField(className, "field" + (i % ModpackGenerator.FIELDS)), "field" + i));
+            }
+        }
+        return transformers;
+    }
+
+    private record ModpackTransformer<T>(TargetType<T> type, Target<T> target, String label) implements ITransformer<T> {
+        @Override
+        public T transform(final T input, final ITransformerVotingContext context) {
+            if (input instanceof ClassNode classNode) {
+                classNode.fields.add(new FieldNode(Opcodes.ACC_PUBLIC | Opcodes.ACC_STATIC, label, "I", null, null));
+            } else if (input instanceof MethodNode methodNode) {
+                methodNode.instructions.insert(new InsnNode(Opcodes.NOP));
+            } else if (input instanceof FieldNode fieldNode) {
+                fieldNode.access |= Opcodes.ACC_VOLATILE;
+            }
+            return input;
+        }
+
+        @Override
+        public TransformerVoteResult castVote(final ITransformerVotingContext context) {
+            return TransformerVoteResult.YES;
+        }
+
+        @Override
+        public Set<Target<T>> targets() {
+            return Set.of(target);
+        }
+
+        @Override
+        public TargetType<T> getTargetType() {
+            return type;
+        }
+
+        @Override
+        public String[] labels() {
+            return new String[] { label };
+        }
+    }
+}
@@ -0,0 +1,11 @@
+module cpw.mods.modlauncher.modpack {
+    requires cpw.mods.modlauncher;
+    requires cpw.mods.securejarhandler;
+    requires org.objectweb.asm;
+    requires org.objectweb.asm.tree;
+    requires jopt.simple;
+
+    exports cpw.mods.modlauncher.modpack;
+
+    provides cpw.mods.modlauncher.api.ITransformationService with cpw.mods.modlauncher.modpack.ModpackTransformationService;
+}
@@ -0,0 +1,175 @@
+/*
+ * ModLauncher - for launching Java programs with in-flight transformation ability.
+ *
+ *     Copyright (C) 2017-2019 cpw
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Lesser General Public License as published by
+ *     the Free Software Foundation, version 3 of the License.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Lesser General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Lesser General Public License
+ *     along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+
+package cpw.mods.modlauncher.test;
+
+import cpw.mods.modlauncher.*;
+import cpw.mods.modlauncher.api.*;
+import joptsimple.OptionException;
+import joptsimple.OptionParser;
+import joptsimple.OptionSet;
+import org.jetbrains.annotations.NotNull;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.tree.ClassNode;
+import org.objectweb.asm.tree.FieldNode;
+import org.powermock.reflect.Whitebox;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.*;
+import java.util.function.*;
+import java.util.zip.ZipFile;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Test the background class dump
+ */
+class ClassDumperTests {
+    @Test
+    void testZipDumpKeepsTransformedClassesInPackage(@TempDir Path dir) throws Exception {
+        final TransformStore transformStore = new TransformStore();
+        final LaunchPluginHandler lph = new LaunchPluginHandler(Whitebox.<ModuleLayerHandler>invokeConstructor(ModuleLayerHandler.class));
+        Whitebox.invokeMethod(transformStore, "addTransformer", new TransformTargetLabel("test.dump.Changed", "dummyfield"), fieldTransformer(), new MockTransformerService());
+        Whitebox.invokeMethod(transformStore, "addTransformer", new TransformTargetLabel("test.other.Changed", "dummyfield"), fieldTransformer(), new MockTransformerService());
+
+        final Path zip = dir.resolve("dump").resolve("classes.zip");
+        final Object dumper = openDumper(zip, "test.dump.**, transformed");
+        final ClassTransformer classTransformer = newClassTransformer(transformStore, lph, dumper);
+        final byte[] changed = transform(classTransformer, "test.dump.Changed");
+        transform(classTransformer, "test.dump.Unchanged");
+        transform(classTransformer, "test.other.Changed");
+        Whitebox.invokeMethod(dumper, "close");
+
+        try (ZipFile zipFile = new ZipFile(zip.toFile())) {
+            final List<String> entries = zipFile.stream().map(e -> e.getName()).toList();
+            assertAll("Only the transformed class in the package is dumped",
+                    () -> assertEquals(List.of("test/dump/Changed.class"), entries),
+                    () -> assertArrayEquals(changed, zipFile.getInputStream(zipFile.getEntry("test/dump/Changed.class")).readAllBytes())
+            );
+        }
+    }
+
+    @Test
+    void testDirectoryDumpKeepsPackageClasses(@TempDir Path dir) throws Exception {
+        final TransformStore transformStore = new TransformStore();
+        final LaunchPluginHandler lph = new LaunchPluginHandler(Whitebox.<ModuleLayerHandler>invokeConstructor(ModuleLayerHandler.class));
+        final Object dumper = openDumper(dir, "test/dump/*,test.other.Single");
+        final ClassTransformer classTransformer = newClassTransformer(transformStore, lph, dumper);
+        final byte[] direct = transform(classTransformer, "test.dump.Direct");
+        transform(classTransformer, "test.dump.sub.Nested");
+        transform(classTransformer, "test.other.Single");
+        transform(classTransformer, "test.other.Another");
+        Whitebox.invokeMethod(dumper, "close");
+        // offered after closing, ignored
+        transform(classTransformer, "test.dump.Late");
+
+        assertAll("Classes directly in the package and named classes are dumped",
+                () -> assertArrayEquals(direct, Files.readAllBytes(dir.resolve("test/dump/Direct.class"))),
+                () -> assertTrue(Files.exists(dir.resolve("test/other/Single.class"))),
+                () -> assertFalse(Files.exists(dir.resolve("test/dump/sub"))),
+                () -> assertFalse(Files.exists(dir.resolve("test/other/Another.class"))),
+                () -> assertFalse(Files.exists(dir.resolve("test/dump/Late.class"))),
+                () -> assertEquals(0L, (long) Whitebox.invokeMethod(dumper, "dropped"))
+        );
+    }
+
+    @Test
+    void testInvalidFilter(@TempDir Path dir) {
+        assertThrows(IllegalArgumentException.class, () -> openDumper(dir, "test/*/Foo"));
+        assertThrows(IllegalArgumentException.class, () -> openDumper(dir, "test/Foo*"));
+    }
+
+    @Test
+    void testCloseAfterWriteFailure(@TempDir Path dir) throws Exception {
+        final Object dumper = openDumper(dir, null);
+        // not a valid file name, so the writer gives up
+        Whitebox.invokeMethod(dumper, "offer", "test.Bad\u0000Name", new byte[] { 1 }, true);
+        for (int i = 0; i < 5000; i++) {
+            Whitebox.invokeMethod(dumper, "offer", "test.Class" + i, new byte[] { 1 }, true);
+        }
+        assertTimeoutPreemptively(Duration.ofSeconds(10), () -> Whitebox.invokeMethod(dumper, "close"), "Closing never waits on a writer that stopped");
+    }
+
+    @Test
+    void testInvalidFilterArgument() throws Exception {
+        final ArgumentHandler argumentHandler = new ArgumentHandler();
+        Whitebox.invokeMethod(argumentHandler, "setArgs", (Object) new String[] { "--classDumpFilter", "test/*/Foo" });
+        // a new environment would replace the keys of a running launcher's one
+        final Environment environment = Launcher.INSTANCE != null ? Launcher.INSTANCE.environment() : Whitebox.invokeConstructor(Environment.class, new Class[]{ Launcher.class }, new Object[]{ null });
+        final Consumer<OptionParser> parserConsumer = parser -> {};
+        final BiConsumer<OptionSet, BiFunction<String, OptionSet, ITransformationService.OptionResult>> resultConsumer = (options, results) -> {};
+        assertThrows(OptionException.class, () -> Whitebox.invokeMethod(argumentHandler, "processArguments", environment, parserConsumer, resultConsumer));
+    }
+
+    private static Object openDumper(final Path target, final String filter) throws Exception {
+        final Optional<?> dumper = Whitebox.invokeMethod(Class.forName("cpw.mods.modlauncher.ClassDumper"), "open", target, filter);
+        assertTrue(dumper.isPresent());
+        return dumper.get();
+    }
+
+    private static ClassTransformer newClassTransformer(final TransformStore transformStore, final LaunchPluginHandler lph, final Object dumper) throws Exception {
+        final Class<?> cacheClass = Class.forName("cpw.mods.modlauncher.TransformCache");
+        final Class<?> metricsClass = Class.forName("cpw.mods.modlauncher.TransformerMetrics");
+        return Whitebox.invokeConstructor(ClassTransformer.class, new Class[] { TransformStore.class, LaunchPluginHandler.class, TransformingClassLoader.class, TransformerAuditTrail.class, cacheClass, metricsClass, dumper.getClass() }, new Object[] { transformStore, lph, null, new TransformerAuditTrail(), null, Whitebox.invokeConstructor(metricsClass), dumper });
+    }
+
+    private static byte[] transform(final ClassTransformer classTransformer, final String className) throws Exception {
+        ClassNode node = new ClassNode();
+        node.superName = "java/lang/Object";
+        node.version = 52;
+        node.name = className.replace('.', '/');
+        node.fields.add(new FieldNode(Opcodes.ACC_PUBLIC, "dummyfield", "Ljava/lang/String;", null, null));
+        ClassWriter cw = new ClassWriter(Opcodes.ASM5);
+        node.accept(cw);
+        return Whitebox.invokeMethod(classTransformer, "transform", new Class[]{byte[].class, String.class, String.class}, cw.toByteArray(), className, ITransformerActivity.CLASSLOADING_REASON);
+    }
+
+    private static ITransformer<FieldNode> fieldTransformer() {
+        return new ITransformer<>() {
+            @NotNull
+            @Override
+            public FieldNode transform(FieldNode input, ITransformerVotingContext context) {
+                input.value = "CHEESE";
+                return input;
+            }
+
+            @NotNull
+            @Override
+            public TransformerVoteResult castVote(ITransformerVotingContext context) {
+                return TransformerVoteResult.YES;
+            }
+
+            @NotNull
+            @Override
+            public Set<Target<FieldNode>> targets() {
+                return Collections.emptySet();
+            }
+
+            @Override
+            public TargetType<FieldNode> getTargetType() {
+                return TargetType.FIELD;
+            }
+        };
+    }
+}
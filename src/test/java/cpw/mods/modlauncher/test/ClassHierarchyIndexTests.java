@@ -0,0 +1,58 @@
+/*
+ * ModLauncher - for launching Java programs with in-flight transformation ability.
+ *
+ *     Copyright (C) 2017-2019 cpw
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Lesser General Public License as published by
+ *     the Free Software Foundation, version 3 of the License.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Lesser General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Lesser General Public License
+ *     along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package cpw.mods.modlauncher.test;
+
+import cpw.mods.cl.JarModuleFinder;
+import cpw.mods.jarhandling.SecureJar;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.powermock.reflect.Whitebox;
+
+import java.lang.module.Configuration;
+import java.lang.module.ModuleFinder;
+import java.nio.file.Path;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Test the persisted class hierarchy index
+ */
+class ClassHierarchyIndexTests {
+    @Test
+    void testIndexRoundTrip(@TempDir Path dir) throws Exception {
+        SecureJar testJars = SecureJar.from(Path.of(System.getProperty("testJars.location")));
+        Configuration configuration = ModuleLayer.boot().configuration().resolveAndBind(JarModuleFinder.of(testJars), ModuleFinder.ofSystem(), Set.of("cpw.mods.modlauncher.testjars"));
+        final Class<?> indexClass = Class.forName("cpw.mods.modlauncher.ClassHierarchyIndex");
+        final Path indexFile = dir.resolve("test.idx");
+        Whitebox.invokeMethod(indexClass, "write", indexFile, configuration);
+        final Object index = Whitebox.invokeMethod(indexClass, "map", indexFile);
+
+        final Object testClass = Whitebox.invokeMethod(index, "find", "cpw/mods/modlauncher/testjar/TestClass");
+        final Object serviceLoader = Whitebox.invokeMethod(index, "find", "cpw/mods/modlauncher/testjar/TestServiceLoader");
+        final Object serviceInterface = Whitebox.invokeMethod(index, "find", "cpw/mods/modlauncher/testjar/ITestServiceLoader");
+        assertAll("Index contains the declared hierarchy",
+                () -> assertEquals("java/lang/Object", Whitebox.invokeMethod(testClass, "superName")),
+                () -> assertFalse((Boolean) Whitebox.invokeMethod(testClass, "isInterface")),
+                () -> assertArrayEquals(new String[] { "cpw/mods/modlauncher/testjar/ITestServiceLoader" }, Whitebox.invokeMethod(serviceLoader, "interfaces")),
+                () -> assertTrue((Boolean) Whitebox.invokeMethod(serviceInterface, "isInterface")),
+                () -> assertNull(Whitebox.invokeMethod(index, "find", "cpw/mods/modlauncher/testjar/Missing"))
+        );
+    }
+}
@@ -0,0 +1,62 @@
+/*
+ * ModLauncher - for launching Java programs with in-flight transformation ability.
+ *
+ *     Copyright (C) 2017-2019 cpw
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Lesser General Public License as published by
+ *     the Free Software Foundation, version 3 of the License.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Lesser General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Lesser General Public License
+ *     along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package cpw.mods.modlauncher.test;
+
+import org.junit.jupiter.api.Test;
+import org.powermock.reflect.Whitebox;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Test the interned class hierarchy table used for frame computation
+ */
+class ClassHierarchyTableTests {
+    @Test
+    void testAncestorQueries() throws Exception {
+        final Object table = Whitebox.invokeConstructor(Class.forName("cpw.mods.modlauncher.ClassHierarchyTable"));
+        put(table, "java/lang/Object", false, null);
+        put(table, "test/Iface", true, "java/lang/Object");
+        put(table, "test/Base", false, "java/lang/Object", "test/Iface");
+        put(table, "test/Child", false, "test/Base");
+
+        assertAll("Ancestors are found through super classes and interfaces",
+                () -> assertTrue(hasAncestor(table, "test/Child", "test/Child")),
+                () -> assertTrue(hasAncestor(table, "test/Child", "test/Base")),
+                () -> assertTrue(hasAncestor(table, "test/Child", "test/Iface")),
+                () -> assertTrue(hasAncestor(table, "test/Child", "java/lang/Object")),
+                () -> assertFalse(hasAncestor(table, "test/Base", "test/Child")),
+                () -> assertTrue(hasAncestor(table, "java/lang/Object", "java/lang/Object")),
+                () -> assertEquals("test/Base", Whitebox.invokeMethod(table, "getSuper", "test/Child")),
+                () -> assertTrue((Boolean) Whitebox.invokeMethod(table, "isInterface", "test/Iface")),
+                () -> assertEquals(4, (Integer) Whitebox.invokeMethod(table, "size"))
+        );
+
+        Whitebox.invokeMethod(table, "clear");
+        assertFalse((Boolean) Whitebox.invokeMethod(table, "contains", "test/Child"));
+        assertEquals(0, (Integer) Whitebox.invokeMethod(table, "size"));
+    }
+
+    private static void put(Object table, String name, boolean isInterface, String superName, String... interfaces) throws Exception {
+        Whitebox.invokeMethod(table, "put", new Class[] { String.class, boolean.class, String.class, String[].class }, name, isInterface, superName, interfaces);
+    }
+
+    private static boolean hasAncestor(Object table, String name, String ancestor) throws Exception {
+        return Whitebox.invokeMethod(table, "hasAncestor", name, ancestor);
+    }
+}
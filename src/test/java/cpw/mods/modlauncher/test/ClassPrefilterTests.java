@@ -0,0 +1,101 @@
+/*
+ * ModLauncher - for launching Java programs with in-flight transformation ability.
+ *
+ *     Copyright (C) 2017-2019 cpw
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Lesser General Public License as published by
+ *     the Free Software Foundation, version 3 of the License.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Lesser General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Lesser General Public License
+ *     along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package cpw.mods.modlauncher.test;
+
+import cpw.mods.modlauncher.LaunchPluginHandler;
+import cpw.mods.modlauncher.TransformerAuditTrail;
+import cpw.mods.modlauncher.api.ITransformerActivity;
+import cpw.mods.modlauncher.serviceapi.ILaunchPluginService;
+import org.junit.jupiter.api.Test;
+import org.objectweb.asm.Type;
+import org.powermock.reflect.Whitebox;
+
+import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Test the prefilters which skip classes no transformer or plugin could touch
+ */
+class ClassPrefilterTests {
+    @Test
+    void testPrefixTrie() throws Exception {
+        final Object trie = Whitebox.invokeConstructor(Class.forName("cpw.mods.modlauncher.ClassPrefixTrie"), new Class[] { Collection.class }, new Object[] { List.of("net/minecraft/", "com/example/Single") });
+        assertAll("Prefixes match in either name form",
+                () -> assertTrue((Boolean) Whitebox.invokeMethod(trie, "matches", "net/minecraft/client/Main")),
+                () -> assertTrue((Boolean) Whitebox.invokeMethod(trie, "matches", "net.minecraft.client.Main")),
+                () -> assertTrue((Boolean) Whitebox.invokeMethod(trie, "matches", "com.example.Single")),
+                () -> assertFalse((Boolean) Whitebox.invokeMethod(trie, "matches", "net/minecraftforge/Main")),
+                () -> assertFalse((Boolean) Whitebox.invokeMethod(trie, "matches", "net/mine")),
+                () -> assertFalse((Boolean) Whitebox.invokeMethod(trie, "matches", "java/lang/String"))
+        );
+    }
+
+    @Test
+    void testBloomFilter() throws Exception {
+        final List<String> names = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            names.add("test/pkg/Class" + i);
+        }
+        final Object filter = Whitebox.invokeConstructor(Class.forName("cpw.mods.modlauncher.ClassNameBloomFilter"), new Class[] { Collection.class }, new Object[] { names });
+        for (String name : names) {
+            assertTrue((Boolean) Whitebox.invokeMethod(filter, "mightContain", name), name);
+            assertTrue((Boolean) Whitebox.invokeMethod(filter, "mightContain", name.replace('/', '.')), name);
+        }
+        int falsePositives = 0;
+        for (int i = 0; i < 1000; i++) {
+            if ((Boolean) Whitebox.invokeMethod(filter, "mightContain", "other/pkg/Class" + i)) falsePositives++;
+        }
+        assertTrue(falsePositives < 50, "False positive rate is low: " + falsePositives);
+    }
+
+    @Test
+    void testDeclaredPluginPrefixes() throws Exception {
+        final AtomicInteger queries = new AtomicInteger();
+        final LaunchPluginHandler handler = new LaunchPluginHandler(Stream.of(new ILaunchPluginService() {
+            @Override
+            public String name() {
+                return "prefixed";
+            }
+
+            @Override
+            public EnumSet<Phase> handlesClass(Type classType, boolean isEmpty) {
+                queries.incrementAndGet();
+                return EnumSet.of(Phase.BEFORE);
+            }
+
+            @Override
+            public Optional<Set<String>> candidateClassPrefixes() {
+                return Optional.of(Set.of("test/claimed/"));
+            }
+        }));
+        final TransformerAuditTrail auditTrail = new TransformerAuditTrail();
+        assertFalse((Boolean) Whitebox.invokeMethod(handler, "mayHandle", "test.other.Thing"));
+        assertTrue((Boolean) Whitebox.invokeMethod(handler, "mayHandle", "test.claimed.Thing"));
+        final var unclaimed = handler.computeLaunchPluginTransformerSet(Type.getObjectType("test/other/Thing"), false, ITransformerActivity.CLASSLOADING_REASON, auditTrail);
+        assertTrue(unclaimed.isEmpty());
+        unclaimed.put(ILaunchPluginService.Phase.AFTER, List.of());
+        assertTrue(handler.computeLaunchPluginTransformerSet(Type.getObjectType("test/other/Thing"), false, ITransformerActivity.CLASSLOADING_REASON, auditTrail).isEmpty(), "Callers may not see each other's changes");
+        assertEquals(0, queries.get(), "Plugin is not asked about classes outside its prefixes");
+        assertFalse(handler.computeLaunchPluginTransformerSet(Type.getObjectType("test/claimed/Thing"), false, ITransformerActivity.CLASSLOADING_REASON, auditTrail).isEmpty());
+        assertEquals(1, queries.get());
+    }
+}
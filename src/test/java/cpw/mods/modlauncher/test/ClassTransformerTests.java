@@ -21,23 +21,39 @@ package cpw.mods.modlauncher.test;
 import cpw.mods.modlauncher.*;
 import cpw.mods.modlauncher.api.ITransformationService;
 import cpw.mods.modlauncher.api.ITransformer;
+import cpw.mods.modlauncher.api.ITransformerActivity;
+import cpw.mods.modlauncher.api.ITransformerMetrics;
 import cpw.mods.modlauncher.api.ITransformerVotingContext;
 import cpw.mods.modlauncher.api.TargetType;
 import cpw.mods.modlauncher.api.TransformerVoteResult;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
 import org.apache.logging.log4j.Level;
 import org.apache.logging.log4j.MarkerManager;
 import org.apache.logging.log4j.core.config.Configurator;
 import org.jetbrains.annotations.NotNull;
+import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.objectweb.asm.ClassReader;
 import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Label;
+import org.objectweb.asm.MethodVisitor;
 import org.objectweb.asm.Opcodes;
 import org.objectweb.asm.tree.ClassNode;
 import org.objectweb.asm.tree.FieldNode;
+import org.objectweb.asm.tree.InsnNode;
+import org.objectweb.asm.tree.MethodNode;
 import org.powermock.reflect.Whitebox;
 
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.Collections;
+import java.util.List;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -45,6 +61,19 @@ import static org.junit.jupiter.api.Assertions.*;
  * Test core transformer functionality
  */
 class ClassTransformerTests {
+    private TransformStore transformStore;
+    private TransformerAuditTrail auditTrail;
+    private ClassTransformer classTransformer;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        transformStore = new TransformStore();
+        final ModuleLayerHandler layerHandler = Whitebox.invokeConstructor(ModuleLayerHandler.class);
+        final LaunchPluginHandler lph = new LaunchPluginHandler(layerHandler);
+        auditTrail = new TransformerAuditTrail();
+        classTransformer = Whitebox.invokeConstructor(ClassTransformer.class, new Class[] { TransformStore.class, LaunchPluginHandler.class, TransformingClassLoader.class, TransformerAuditTrail.class }, new Object[] { transformStore, lph, null, auditTrail });
+    }
+
     @Test
     void testClassTransformer() throws Exception {
         MarkerManager.getMarker("CLASSDUMP");
@@ -90,6 +119,351 @@ class ClassTransformerTests {
         );
     }
 
+    @Test
+    void testComputingFramesResultReused() throws Exception {
+        final AtomicInteger plainCount = new AtomicInteger();
+        final AtomicInteger reasonCount = new AtomicInteger();
+        addTransformer(new TransformTargetLabel("test.PlainClass", "dummyfield"), countingFieldTransformer(plainCount, false));
+        addTransformer(new TransformTargetLabel("test.ReasonClass", "dummyfield"), countingFieldTransformer(reasonCount, true));
+
+        for (String className : List.of("test.PlainClass", "test.ReasonClass")) {
+            final byte[] input = dummyClass(className);
+            transform(input, className, ITransformerActivity.COMPUTING_FRAMES_REASON);
+            final byte[] result = transform(input, className, ITransformerActivity.CLASSLOADING_REASON);
+            ClassNode cn = new ClassNode();
+            new ClassReader(result).accept(cn, 0);
+            assertEquals("CHEESE", cn.fields.get(0).value);
+            assertEquals(2, auditTrail.getActivityFor(className).stream().filter(a -> a.getType() == ITransformerActivity.Type.TRANSFORMER).count());
+        }
+        assertEquals(1, plainCount.get(), "Reason independent transformation is reused");
+        assertEquals(2, reasonCount.get(), "Reason dependent transformation is repeated");
+    }
+
+    @Test
+    void testComputingFramesMemoComparesInput() throws Exception {
+        final Object memo = Whitebox.invokeConstructor(Class.forName("cpw.mods.modlauncher.ComputingFramesMemo"));
+        // same length and same Arrays.hashCode
+        final byte[] input = { 0, 31 };
+        final byte[] colliding = { 1, 0 };
+        Whitebox.invokeMethod(memo, "put", "test.Memo", input, new byte[] { 42 }, List.of());
+        assertNull(Whitebox.invokeMethod(memo, "take", "test.Memo", colliding), "A different class is never handed out");
+        Whitebox.invokeMethod(memo, "put", "test.Memo", input, new byte[] { 42 }, List.of());
+        assertNotNull(Whitebox.invokeMethod(memo, "take", "test.Memo", input.clone()));
+    }
+
+    @Test
+    void testMethodTransformKeepsOtherMethods() throws Exception {
+        addTransformer(Whitebox.invokeConstructor(TransformTargetLabel.class, new Class[] { String.class, String.class, String.class }, new Object[] { "test.MethodClass", "first", "()I" }), returnValueTransformer());
+
+        ClassWriter cw = new ClassWriter(ClassWriter.COMPUTE_FRAMES);
+        cw.visit(Opcodes.V17, Opcodes.ACC_PUBLIC, "test/MethodClass", null, "java/lang/Object", null);
+        for (String name : List.of("first", "second")) {
+            MethodVisitor mv = cw.visitMethod(Opcodes.ACC_PUBLIC | Opcodes.ACC_STATIC, name, "()I", null, null);
+            mv.visitCode();
+            mv.visitInsn(Opcodes.ICONST_1);
+            mv.visitInsn(Opcodes.IRETURN);
+            mv.visitMaxs(0, 0);
+            mv.visitEnd();
+        }
+        cw.visitEnd();
+
+        final Class<?> clazz = define("test.MethodClass", transform(cw.toByteArray(), "test.MethodClass", ITransformerActivity.CLASSLOADING_REASON));
+        assertEquals(5, clazz.getMethod("first").invoke(null));
+        assertEquals(1, clazz.getMethod("second").invoke(null));
+    }
+
+    @Test
+    void testSelectiveParseCopiesUntargetedMethods() throws Exception {
+        // only the middle method is parsed, the ones around it are copied from the original class
+        addTransformer(Whitebox.invokeConstructor(TransformTargetLabel.class, new Class[] { String.class, String.class, String.class }, new Object[] { "test.SelectiveClass", "second", "()I" }), returnValueTransformer());
+
+        ClassWriter cw = new ClassWriter(ClassWriter.COMPUTE_FRAMES);
+        cw.visit(Opcodes.V17, Opcodes.ACC_PUBLIC, "test/SelectiveClass", null, "java/lang/Object", null);
+        int value = 1;
+        for (String name : List.of("first", "second", "third")) {
+            MethodVisitor mv = cw.visitMethod(Opcodes.ACC_PUBLIC | Opcodes.ACC_STATIC, name, "()I", null, null);
+            mv.visitCode();
+            mv.visitIntInsn(Opcodes.BIPUSH, value++);
+            mv.visitInsn(Opcodes.IRETURN);
+            mv.visitMaxs(0, 0);
+            mv.visitEnd();
+        }
+        cw.visitEnd();
+
+        final Class<?> clazz = define("test.SelectiveClass", transform(cw.toByteArray(), "test.SelectiveClass", ITransformerActivity.CLASSLOADING_REASON));
+        assertAll("Untargeted methods are kept as they were",
+                () -> assertEquals(1, clazz.getMethod("first").invoke(null)),
+                () -> assertEquals(5, clazz.getMethod("second").invoke(null)),
+                () -> assertEquals(3, clazz.getMethod("third").invoke(null)),
+                () -> assertEquals(3, clazz.getDeclaredMethods().length)
+        );
+    }
+
+    @Test
+    void testClassTransformKeepsUnchangedFrames() throws Exception {
+        addTransformer(new TransformTargetLabel("test.FramesClass", TargetType.CLASS), compressedFramesTransformer(input -> {
+            final MethodNode first = input.methods.stream().filter(m -> m.name.equals("first")).findFirst().orElseThrow();
+            first.instructions.set(first.instructions.getFirst(), new InsnNode(Opcodes.ICONST_5));
+        }));
+
+        ClassWriter cw = new ClassWriter(ClassWriter.COMPUTE_FRAMES) {
+            @Override
+            protected String getCommonSuperClass(String type1, String type2) {
+                return "java/lang/Object";
+            }
+        };
+        cw.visit(Opcodes.V17, Opcodes.ACC_PUBLIC, "test/FramesClass", null, "java/lang/Object", null);
+        // first(b) returns 1 or 2, and needs a frame after its branch
+        MethodVisitor mv = cw.visitMethod(Opcodes.ACC_PUBLIC | Opcodes.ACC_STATIC, "first", "(Z)I", null, null);
+        mv.visitCode();
+        mv.visitInsn(Opcodes.ICONST_1);
+        mv.visitVarInsn(Opcodes.ILOAD, 0);
+        Label end = new Label();
+        mv.visitJumpInsn(Opcodes.IFNE, end);
+        mv.visitInsn(Opcodes.POP);
+        mv.visitInsn(Opcodes.ICONST_2);
+        mv.visitLabel(end);
+        mv.visitInsn(Opcodes.IRETURN);
+        mv.visitMaxs(0, 0);
+        mv.visitEnd();
+        // pick merges two classes that can't be found, so its frames can't be recomputed without a classloader
+        mv = cw.visitMethod(Opcodes.ACC_PUBLIC | Opcodes.ACC_STATIC, "pick", "(ZLjava/lang/Object;)Ljava/lang/Object;", null, null);
+        mv.visitCode();
+        mv.visitVarInsn(Opcodes.ILOAD, 0);
+        Label other = new Label();
+        Label merge = new Label();
+        mv.visitJumpInsn(Opcodes.IFEQ, other);
+        mv.visitVarInsn(Opcodes.ALOAD, 1);
+        mv.visitTypeInsn(Opcodes.CHECKCAST, "test/MissingA");
+        mv.visitJumpInsn(Opcodes.GOTO, merge);
+        mv.visitLabel(other);
+        mv.visitVarInsn(Opcodes.ALOAD, 1);
+        mv.visitTypeInsn(Opcodes.CHECKCAST, "test/MissingB");
+        mv.visitLabel(merge);
+        mv.visitInsn(Opcodes.ARETURN);
+        mv.visitMaxs(0, 0);
+        mv.visitEnd();
+        cw.visitEnd();
+
+        final Class<?> clazz = define("test.FramesClass", transform(cw.toByteArray(), "test.FramesClass", ITransformerActivity.CLASSLOADING_REASON));
+        assertEquals(5, clazz.getMethod("first", boolean.class).invoke(null, true));
+        assertEquals(2, clazz.getMethod("first", boolean.class).invoke(null, false));
+    }
+
+    @Test
+    void testAccessChangeRecomputesFrames() throws Exception {
+        // the code is unchanged, but its frames no longer start with this
+        addTransformer(new TransformTargetLabel("test.AccessClass", TargetType.CLASS), compressedFramesTransformer(input ->
+                input.methods.stream().filter(m -> m.name.equals("flip")).findFirst().orElseThrow().access |= Opcodes.ACC_STATIC));
+
+        ClassWriter cw = new ClassWriter(ClassWriter.COMPUTE_FRAMES);
+        cw.visit(Opcodes.V17, Opcodes.ACC_PUBLIC, "test/AccessClass", null, "java/lang/Object", null);
+        MethodVisitor mv = cw.visitMethod(Opcodes.ACC_PUBLIC, "flip", "()I", null, null);
+        mv.visitCode();
+        // the frame after the branch appends local 1 to the implicit locals
+        mv.visitInsn(Opcodes.ICONST_1);
+        mv.visitVarInsn(Opcodes.ISTORE, 1);
+        mv.visitVarInsn(Opcodes.ILOAD, 1);
+        Label one = new Label();
+        mv.visitJumpInsn(Opcodes.IFNE, one);
+        mv.visitInsn(Opcodes.ICONST_2);
+        mv.visitInsn(Opcodes.IRETURN);
+        mv.visitLabel(one);
+        mv.visitVarInsn(Opcodes.ILOAD, 1);
+        mv.visitInsn(Opcodes.IRETURN);
+        mv.visitMaxs(0, 0);
+        mv.visitEnd();
+        cw.visitEnd();
+
+        final Class<?> clazz = define("test.AccessClass", transform(cw.toByteArray(), "test.AccessClass", ITransformerActivity.CLASSLOADING_REASON));
+        assertEquals(1, clazz.getMethod("flip").invoke(null));
+    }
+
+    @Test
+    void testTransformerTimingsRecorded() throws Exception {
+        addTransformer(new TransformTargetLabel("test.DummyClass", "dummyfield"), fieldNodeTransformer1());
+        transform(dummyClass("test.DummyClass"), "test.DummyClass", "testing");
+        transform(dummyClass("test.DummyClass"), "test.Untouched", "testing");
+
+        final ITransformerMetrics metrics = Whitebox.invokeMethod(classTransformer, "getMetrics");
+        assertAll("Timings are attributed to the transformer",
+                () -> assertEquals(1, metrics.getTransformedClassCount()),
+                () -> assertTrue(metrics.getNanos(ITransformerMetrics.Stage.PARSE) > 0),
+                () -> assertTrue(metrics.getNanos(ITransformerMetrics.Stage.WRITE) > 0),
+                () -> assertEquals(Set.of("test:default"), metrics.getNanosBySource(ITransformerMetrics.Stage.TRANSFORM).keySet()),
+                () -> assertEquals(metrics.getNanos(ITransformerMetrics.Stage.VOTE), metrics.getNanosBySource(ITransformerMetrics.Stage.VOTE).getOrDefault("test:default", 0L)),
+                () -> assertTrue(metrics.getNanosBySource(ITransformerMetrics.Stage.PARSE).isEmpty())
+        );
+    }
+
+    @Test
+    void testFlightRecorderEvents() throws Exception {
+        addTransformer(new TransformTargetLabel("test.DummyClass", "dummyfield"), fieldNodeTransformer1());
+        final byte[] input = dummyClass("test.DummyClass");
+        final Path dump = Files.createTempFile("modlauncher", ".jfr");
+        try (Recording recording = new Recording()) {
+            recording.enable("cpw.mods.modlauncher.ClassTransform");
+            recording.enable("cpw.mods.modlauncher.ClassParse");
+            recording.enable("cpw.mods.modlauncher.TransformerVote");
+            recording.enable("cpw.mods.modlauncher.ClassWrite");
+            recording.start();
+            transform(input, "test.DummyClass", "testing");
+            recording.stop();
+            recording.dump(dump);
+        }
+        final List<RecordedEvent> events = RecordingFile.readAllEvents(dump).stream()
+                .filter(e -> "test.DummyClass".equals(e.getString("className")))
+                .toList();
+        Files.delete(dump);
+        final RecordedEvent vote = events.stream().filter(e -> e.getEventType().getName().equals("cpw.mods.modlauncher.TransformerVote")).findFirst().orElseThrow();
+        assertAll("Every stage is recorded",
+                () -> assertEquals(Set.of("cpw.mods.modlauncher.ClassTransform", "cpw.mods.modlauncher.ClassParse", "cpw.mods.modlauncher.TransformerVote", "cpw.mods.modlauncher.ClassWrite"),
+                        events.stream().map(e -> e.getEventType().getName()).collect(Collectors.toSet())),
+                () -> assertEquals("test", vote.getString("service")),
+                () -> assertEquals("testing", vote.getString("reason")),
+                () -> assertEquals(1, vote.getInt("voters"))
+        );
+    }
+
+    @Test
+    void testFlightRecordingKeepsComputingFramesMemo() throws Exception {
+        final AtomicInteger count = new AtomicInteger();
+        addTransformer(new TransformTargetLabel("test.RecordedClass", "dummyfield"), countingFieldTransformer(count, false));
+        final byte[] input = dummyClass("test.RecordedClass");
+        try (Recording recording = new Recording()) {
+            recording.enable("cpw.mods.modlauncher.TransformerVote");
+            recording.start();
+            transform(input, "test.RecordedClass", ITransformerActivity.COMPUTING_FRAMES_REASON);
+            transform(input, "test.RecordedClass", ITransformerActivity.CLASSLOADING_REASON);
+            recording.stop();
+        }
+        assertEquals(1, count.get(), "Recording vote events does not stop the frame computation result being reused");
+    }
+
+    private void addTransformer(final TransformTargetLabel label, final ITransformer<?> transformer) throws Exception {
+        Whitebox.invokeMethod(transformStore, "addTransformer", label, transformer, new MockTransformerService());
+    }
+
+    private byte[] transform(final byte[] input, final String className, final String reason) throws Exception {
+        return Whitebox.invokeMethod(classTransformer, "transform", new Class[]{byte[].class, String.class, String.class}, input, className, reason);
+    }
+
+    /**
+     * A class with a single String field, dummyfield
+     */
+    private static byte[] dummyClass(final String className) {
+        ClassNode dummyClass = new ClassNode();
+        dummyClass.superName = "java/lang/Object";
+        dummyClass.version = 52;
+        dummyClass.name = className.replace('.', '/');
+        dummyClass.fields.add(new FieldNode(Opcodes.ACC_PUBLIC, "dummyfield", "Ljava/lang/String;", null, null));
+        ClassWriter cw = new ClassWriter(Opcodes.ASM5);
+        dummyClass.accept(cw);
+        return cw.toByteArray();
+    }
+
+    private Class<?> define(final String className, final byte[] bytes) {
+        return new ClassLoader(getClass().getClassLoader()) {
+            Class<?> define() {
+                return defineClass(className, bytes, 0, bytes.length);
+            }
+        }.define();
+    }
+
+    /**
+     * A class transformer which leaves the frames of the class as read, compressed
+     */
+    private ITransformer<ClassNode> compressedFramesTransformer(final Consumer<ClassNode> transformation) {
+        return new ITransformer<>() {
+            @NotNull
+            @Override
+            public ClassNode transform(ClassNode input, ITransformerVotingContext context) {
+                transformation.accept(input);
+                return input;
+            }
+
+            @NotNull
+            @Override
+            public TransformerVoteResult castVote(ITransformerVotingContext context) {
+                return TransformerVoteResult.YES;
+            }
+
+            @Override
+            public boolean needsExpandedFrames() {
+                return false;
+            }
+
+            @NotNull
+            @Override
+            public Set<Target<ClassNode>> targets() {
+                return Collections.emptySet();
+            }
+
+            @Override
+            public TargetType<ClassNode> getTargetType() {
+                return TargetType.CLASS;
+            }
+        };
+    }
+
+    private ITransformer<MethodNode> returnValueTransformer() {
+        return new ITransformer<>() {
+            @NotNull
+            @Override
+            public MethodNode transform(MethodNode input, ITransformerVotingContext context) {
+                input.instructions.set(input.instructions.getFirst(), new InsnNode(Opcodes.ICONST_5));
+                return input;
+            }
+
+            @NotNull
+            @Override
+            public TransformerVoteResult castVote(ITransformerVotingContext context) {
+                return TransformerVoteResult.YES;
+            }
+
+            @NotNull
+            @Override
+            public Set<Target<MethodNode>> targets() {
+                return Collections.emptySet();
+            }
+
+            @Override
+            public TargetType<MethodNode> getTargetType() {
+                return TargetType.METHOD;
+            }
+        };
+    }
+
+    private ITransformer<FieldNode> countingFieldTransformer(AtomicInteger count, boolean readsReason) {
+        return new ITransformer<>() {
+            @NotNull
+            @Override
+            public FieldNode transform(FieldNode input, ITransformerVotingContext context) {
+                count.incrementAndGet();
+                input.value = "CHEESE";
+                return input;
+            }
+
+            @NotNull
+            @Override
+            public TransformerVoteResult castVote(ITransformerVotingContext context) {
+                if (readsReason) context.getReason();
+                return TransformerVoteResult.YES;
+            }
+
+            @NotNull
+            @Override
+            public Set<Target<FieldNode>> targets() {
+                return Collections.emptySet();
+            }
+
+            @Override
+            public TargetType<FieldNode> getTargetType() {
+                return TargetType.FIELD;
+            }
+        };
+    }
+
     private ITransformer<FieldNode> fieldNodeTransformer1() {
         return new ITransformer<>() {
             @NotNull
@@ -0,0 +1,284 @@
+/*
+ * ModLauncher - for launching Java programs with in-flight transformation ability.
+ *
+ *     Copyright (C) 2017-2019 cpw
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Lesser General Public License as published by
+ *     the Free Software Foundation, version 3 of the License.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Lesser General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Lesser General Public License
+ *     along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package cpw.mods.modlauncher.test;
+
+import cpw.mods.cl.JarModuleFinder;
+import cpw.mods.jarhandling.SecureJar;
+import cpw.mods.modlauncher.*;
+import cpw.mods.modlauncher.api.*;
+import org.jetbrains.annotations.NotNull;
+import org.junit.jupiter.api.Test;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Label;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.tree.InsnNode;
+import org.objectweb.asm.tree.MethodNode;
+import org.powermock.reflect.Whitebox;
+
+import java.io.OutputStream;
+import java.lang.module.Configuration;
+import java.lang.module.ModuleFinder;
+import java.lang.reflect.Method;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.jar.Attributes;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Load a tree of interdependent transformed classes from many threads at once
+ */
+class ConcurrentClassLoadingTests {
+    private static final String MODULE = "cpw.mods.modlauncher.stress";
+    private static final String PACKAGE = "cpw/mods/modlauncher/stress/";
+    private static final int CLASSES = 2000;
+    private static final int THREADS = 16;
+    private static final int ROUNDS = 2;
+    // built before any environment below, as a new environment replaces the keys of the launcher's one
+    private static final LaunchPluginHandler PLUGIN_HANDLER = new LaunchPluginHandler(Stream.empty());
+
+    @Test
+    void testConcurrentClassLoading() throws Exception {
+        final Path jar = writeTree();
+        final LaunchPluginHandler lph = PLUGIN_HANDLER;
+        final ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        try {
+            for (int round = 0; round < ROUNDS; round++) {
+                final Object hierarchies = Whitebox.invokeMethod(Class.forName("cpw.mods.modlauncher.TransformerClassWriter"), "getClassHierarchies");
+                Whitebox.invokeMethod(hierarchies, "clear");
+                loadConcurrently(jar, lph, executor, round, false);
+            }
+        } finally {
+            executor.shutdownNow();
+            Files.delete(jar);
+        }
+    }
+
+    @Test
+    void testClearingHierarchiesWhileLoading() throws Exception {
+        final Path jar = writeTree();
+        final LaunchPluginHandler lph = PLUGIN_HANDLER;
+        final ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        try {
+            loadConcurrently(jar, lph, executor, 0, true);
+        } finally {
+            executor.shutdownNow();
+            Files.delete(jar);
+        }
+    }
+
+    /**
+     * @param clearing whether to keep clearing the hierarchy table, as the statistics MBean can, while classes load
+     */
+    private void loadConcurrently(final Path jar, final LaunchPluginHandler lph, final ExecutorService executor, final int round, final boolean clearing) throws Exception {
+        final Environment environment = Whitebox.invokeConstructor(Environment.class, new Class[]{ Launcher.class }, new Object[]{ null });
+        final TransformingClassLoader tcl = createTransformingClassLoader(jar, lph, environment);
+        final CountDownLatch start = new CountDownLatch(1);
+        final List<Future<Class<?>[]>> results = new ArrayList<>();
+        for (int t = 0; t < THREADS; t++) {
+            final Random random = new Random(round * THREADS + t);
+            final List<Integer> order = IntStream.range(0, CLASSES).boxed().collect(Collectors.toCollection(ArrayList::new));
+            Collections.shuffle(order, random);
+            results.add(executor.submit(() -> {
+                final Class<?>[] loaded = new Class<?>[CLASSES];
+                start.await();
+                for (int i : order) {
+                    loaded[i] = Class.forName(className(i), true, tcl);
+                }
+                return loaded;
+            }));
+        }
+        final Object clearedTable = Whitebox.invokeMethod(Class.forName("cpw.mods.modlauncher.TransformerClassWriter"), "getClassHierarchies");
+        final Thread clearer = new Thread(() -> {
+            while (!Thread.currentThread().isInterrupted()) {
+                try {
+                    Whitebox.invokeMethod(clearedTable, "clear");
+                    Thread.sleep(1);
+                } catch (InterruptedException e) {
+                    return;
+                } catch (Exception e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        });
+        start.countDown();
+        if (clearing) clearer.start();
+        final List<Class<?>[]> loaded = new ArrayList<>();
+        try {
+            for (Future<Class<?>[]> result : results) {
+                loaded.add(result.get(5, TimeUnit.MINUTES));
+            }
+        } finally {
+            clearer.interrupt();
+            clearer.join();
+        }
+
+        final ITransformerAuditTrail auditTrail = environment.getProperty(IEnvironment.Keys.AUDITTRAIL.get()).orElseThrow();
+        final Object hierarchies = Whitebox.invokeMethod(Class.forName("cpw.mods.modlauncher.TransformerClassWriter"), "getClassHierarchies");
+        final Class<?>[] classes = loaded.get(0);
+        for (int i = 0; i < CLASSES; i++) {
+            final int index = i;
+            for (Class<?>[] other : loaded) {
+                assertSame(classes[i], other[i], "Every thread got the same class for " + className(i));
+            }
+            assertEquals(i == 0 ? Object.class : classes[(i - 1) / 2], classes[i].getSuperclass());
+            final Method pick = classes[i].getMethod("pick", boolean.class);
+            assertSame(classes[(i * 7 + 1) % CLASSES], pick.invoke(null, true).getClass());
+            assertSame(classes[(i * 13 + 5) % CLASSES], pick.invoke(null, false).getClass());
+            assertEquals(1, auditTrail.getActivityFor(className(i)).stream()
+                    .filter(a -> a.getType() == ITransformerActivity.Type.REASON && a.getContext()[0].equals(ITransformerActivity.CLASSLOADING_REASON))
+                    .count(), () -> "Class was loaded once " + className(index));
+            // threads computing frames at the same time may each read the same class, so only check it was transformed
+            assertTrue(auditTrail.getActivityFor(className(i)).stream().anyMatch(a -> a.getType() == ITransformerActivity.Type.TRANSFORMER), () -> "Class was transformed " + className(index));
+            final String internalName = PACKAGE + "Node" + i;
+            if ((Boolean) Whitebox.invokeMethod(hierarchies, "contains", internalName)) {
+                assertEquals(i == 0 ? "java/lang/Object" : PACKAGE + "Node" + (i - 1) / 2, Whitebox.invokeMethod(hierarchies, "getSuper", internalName));
+            }
+        }
+    }
+
+    private TransformingClassLoader createTransformingClassLoader(final Path jar, final LaunchPluginHandler lph, final Environment environment) throws Exception {
+        final List<ITransformer<?>> transformers = new ArrayList<>();
+        for (int i = 0; i < CLASSES; i++) {
+            transformers.add(new PickTransformer(className(i)));
+        }
+        final MockTransformerService mockTransformerService = new MockTransformerService() {
+            @NotNull
+            @Override
+            public List<? extends ITransformer<?>> transformers() {
+                return transformers;
+            }
+        };
+
+        final TransformStore transformStore = new TransformStore();
+        final TransformationServiceDecorator sd = Whitebox.invokeConstructor(TransformationServiceDecorator.class, mockTransformerService);
+        sd.gatherTransformers(transformStore);
+
+        final JarModuleFinder finder = JarModuleFinder.of(SecureJar.from(jar));
+        final Configuration configuration = ModuleLayer.boot().configuration().resolveAndBind(finder, ModuleFinder.ofSystem(), Set.of(MODULE));
+        final TransformingClassLoader tcl = new TransformingClassLoader(transformStore, lph, environment, configuration, List.of(ModuleLayer.boot()));
+        ModuleLayer.boot().defineModules(configuration, s -> tcl);
+        return tcl;
+    }
+
+    private static String className(final int index) {
+        return PACKAGE.replace('/', '.') + "Node" + index;
+    }
+
+    /**
+     * Node i extends node (i - 1) / 2, and its pick method merges two nodes elsewhere in the tree, so computing its
+     * frames needs their hierarchies
+     */
+    private static Path writeTree() throws Exception {
+        final Path jar = Files.createTempFile("modlauncher-stress", ".jar");
+        final Manifest manifest = new Manifest();
+        manifest.getMainAttributes().put(Attributes.Name.MANIFEST_VERSION, "1.0");
+        manifest.getMainAttributes().put(new Attributes.Name("Automatic-Module-Name"), MODULE);
+        try (OutputStream out = Files.newOutputStream(jar); JarOutputStream jarOut = new JarOutputStream(out, manifest)) {
+            for (int i = 0; i < CLASSES; i++) {
+                jarOut.putNextEntry(new JarEntry(PACKAGE + "Node" + i + ".class"));
+                jarOut.write(generateNode(i));
+                jarOut.closeEntry();
+            }
+        }
+        return jar;
+    }
+
+    private static byte[] generateNode(final int index) {
+        final String name = PACKAGE + "Node" + index;
+        final String superName = index == 0 ? "java/lang/Object" : PACKAGE + "Node" + (index - 1) / 2;
+        final ClassWriter cw = new ClassWriter(ClassWriter.COMPUTE_FRAMES) {
+            @Override
+            protected String getCommonSuperClass(final String type1, final String type2) {
+                int a = Integer.parseInt(type1.substring(PACKAGE.length() + 4));
+                int b = Integer.parseInt(type2.substring(PACKAGE.length() + 4));
+                while (a != b) {
+                    if (a > b) a = (a - 1) / 2;
+                    else b = (b - 1) / 2;
+                }
+                return PACKAGE + "Node" + a;
+            }
+        };
+        cw.visit(Opcodes.V17, Opcodes.ACC_PUBLIC | Opcodes.ACC_SUPER, name, null, superName, null);
+        MethodVisitor mv = cw.visitMethod(Opcodes.ACC_PUBLIC, "<init>", "()V", null, null);
+        mv.visitCode();
+        mv.visitVarInsn(Opcodes.ALOAD, 0);
+        mv.visitMethodInsn(Opcodes.INVOKESPECIAL, superName, "<init>", "()V", false);
+        mv.visitInsn(Opcodes.RETURN);
+        mv.visitMaxs(0, 0);
+        mv.visitEnd();
+        mv = cw.visitMethod(Opcodes.ACC_PUBLIC | Opcodes.ACC_STATIC, "pick", "(Z)Ljava/lang/Object;", null, null);
+        mv.visitCode();
+        final Label other = new Label();
+        final Label done = new Label();
+        mv.visitVarInsn(Opcodes.ILOAD, 0);
+        mv.visitJumpInsn(Opcodes.IFEQ, other);
+        newNode(mv, (index * 7 + 1) % CLASSES);
+        mv.visitJumpInsn(Opcodes.GOTO, done);
+        mv.visitLabel(other);
+        newNode(mv, (index * 13 + 5) % CLASSES);
+        mv.visitLabel(done);
+        mv.visitInsn(Opcodes.ARETURN);
+        mv.visitMaxs(0, 0);
+        mv.visitEnd();
+        cw.visitEnd();
+        return cw.toByteArray();
+    }
+
+    private static void newNode(final MethodVisitor mv, final int index) {
+        mv.visitTypeInsn(Opcodes.NEW, PACKAGE + "Node" + index);
+        mv.visitInsn(Opcodes.DUP);
+        mv.visitMethodInsn(Opcodes.INVOKESPECIAL, PACKAGE + "Node" + index, "<init>", "()V", false);
+    }
+
+    private record PickTransformer(String className) implements ITransformer<MethodNode> {
+        @NotNull
+        @Override
+        public MethodNode transform(MethodNode input, ITransformerVotingContext context) {
+            input.instructions.insert(new InsnNode(Opcodes.NOP));
+            return input;
+        }
+
+        @NotNull
+        @Override
+        public TransformerVoteResult castVote(ITransformerVotingContext context) {
+            return TransformerVoteResult.YES;
+        }
+
+        @NotNull
+        @Override
+        public Set<Target<MethodNode>> targets() {
+            return Set.of(Target.targetMethod(className, "pick", "(Z)Ljava/lang/Object;"));
+        }
+
+        @Override
+        public TargetType<MethodNode> getTargetType() {
+            return TargetType.METHOD;
+        }
+    }
+}
@@ -0,0 +1,81 @@
+/*
+ * ModLauncher - for launching Java programs with in-flight transformation ability.
+ *
+ *     Copyright (C) 2017-2019 cpw
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Lesser General Public License as published by
+ *     the Free Software Foundation, version 3 of the License.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Lesser General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Lesser General Public License
+ *     along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package cpw.mods.modlauncher.test;
+
+import cpw.mods.modlauncher.LaunchPluginHandler;
+import cpw.mods.modlauncher.TransformerAuditTrail;
+import cpw.mods.modlauncher.api.ITransformerActivity;
+import cpw.mods.modlauncher.serviceapi.ClassClaims;
+import cpw.mods.modlauncher.serviceapi.ILaunchPluginService;
+import cpw.mods.modlauncher.serviceapi.ILaunchPluginService.Phase;
+import org.junit.jupiter.api.Test;
+import org.objectweb.asm.Type;
+import org.powermock.reflect.Whitebox;
+
+import java.util.*;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Test routing classes to launch plugins by their declared class claims
+ */
+class LaunchPluginClaimsTests {
+    @Test
+    void testClaimedClassesAreRouted() throws Exception {
+        final ClassClaims claims = new ClassClaims()
+                .claim(Phase.BEFORE, "test/exact/One", "test.deep.**")
+                .claim(Phase.AFTER, "test/pkg/*");
+        final ILaunchPluginService plugin = new ILaunchPluginService() {
+            @Override
+            public String name() {
+                return "claiming";
+            }
+
+            @Override
+            public EnumSet<Phase> handlesClass(Type classType, boolean isEmpty) {
+                throw new IllegalStateException("Claiming plugins are not asked about classes");
+            }
+
+            @Override
+            public Optional<ClassClaims> classClaims() {
+                return Optional.of(claims);
+            }
+        };
+        final LaunchPluginHandler handler = new LaunchPluginHandler(Stream.of(plugin));
+
+        assertAll("Claims route classes to their phases",
+                () -> assertEquals(Map.of(Phase.BEFORE, List.of(plugin)), route(handler, "test/exact/One")),
+                () -> assertEquals(Map.of(), route(handler, "test/exact/Two")),
+                () -> assertEquals(Map.of(Phase.BEFORE, List.of(plugin)), route(handler, "test/deep/a/b/C")),
+                () -> assertEquals(Map.of(Phase.AFTER, List.of(plugin)), route(handler, "test/pkg/Thing")),
+                () -> assertEquals(Map.of(), route(handler, "test/pkg/sub/Thing")),
+                () -> assertFalse((Boolean) Whitebox.invokeMethod(handler, "mayHandle", "test.other.Thing")),
+                () -> assertTrue((Boolean) Whitebox.invokeMethod(handler, "mayHandle", "test.pkg.Thing"))
+        );
+
+        claims.claim(Phase.AFTER, "test/exact/Two");
+        assertEquals(Map.of(Phase.AFTER, List.of(plugin)), route(handler, "test/exact/Two"), "Later claims are routed");
+        assertThrows(IllegalArgumentException.class, () -> claims.claim(Phase.BEFORE, "test/*/Thing"));
+    }
+
+    private static Map<Phase, List<ILaunchPluginService>> route(LaunchPluginHandler handler, String internalName) {
+        return handler.computeLaunchPluginTransformerSet(Type.getObjectType(internalName), false, ITransformerActivity.CLASSLOADING_REASON, new TransformerAuditTrail());
+    }
+}
@@ -27,13 +27,17 @@ import cpw.mods.modlauncher.api.ITransformationService;
 import joptsimple.OptionSet;
 import joptsimple.OptionSpec;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 import org.powermock.reflect.Whitebox;
 
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.lang.management.ManagementFactory;
 import java.lang.reflect.Field;
 import java.net.URL;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
@@ -96,6 +100,19 @@ class LauncherTests {
         }
     }
 
+    @Test
+    void testStartupReport(@TempDir Path dir) throws Exception {
+        final Path startupReport = dir.resolve("startup.json");
+        Launcher.main("--version", "1.0", "--launchTarget", "mockLaunch", "--test.mods", "A,B,C,cpw.mods.modlauncher.testjar.TestClass", "--accessToken", "SUPERSECRET!", "--startupReport", startupReport.toString());
+        final String timeline = Files.readString(startupReport);
+        assertAll("startup timeline is written",
+                () -> assertTrue(timeline.startsWith("{\"name\": \"launch\"")),
+                () -> assertTrue(timeline.contains("{\"name\": \"initializeServices\"")),
+                () -> assertTrue(timeline.contains("{\"name\": \"test\"")),
+                () -> assertTrue(timeline.contains("\"cpuMs\": ") || !ManagementFactory.getThreadMXBean().isCurrentThreadCpuTimeSupported())
+        );
+    }
+
     private void assertFindResource(Class<?> loaded) throws Exception {
         Object instance = loaded.getDeclaredConstructor().newInstance();
         URL resource = (URL) Whitebox.getField(loaded, "resource").get(instance);
@@ -0,0 +1,190 @@
+/*
+ * ModLauncher - for launching Java programs with in-flight transformation ability.
+ *
+ *     Copyright (C) 2017-2019 cpw
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Lesser General Public License as published by
+ *     the Free Software Foundation, version 3 of the License.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Lesser General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Lesser General Public License
+ *     along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package cpw.mods.modlauncher.test;
+
+import cpw.mods.modlauncher.*;
+import cpw.mods.modlauncher.api.*;
+import cpw.mods.modlauncher.serviceapi.ILaunchPluginService;
+import org.jetbrains.annotations.NotNull;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+import org.objectweb.asm.tree.ClassNode;
+import org.objectweb.asm.tree.FieldNode;
+import org.powermock.reflect.Whitebox;
+
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Test the on-disk transformation cache
+ */
+class TransformCacheTests {
+    @Test
+    void testCacheHitSkipsTransformers(@TempDir Path cacheRoot) throws Exception {
+        final AtomicInteger transformCount = new AtomicInteger();
+        final TransformStore transformStore = new TransformStore();
+        final ModuleLayerHandler layerHandler = Whitebox.invokeConstructor(ModuleLayerHandler.class);
+        final LaunchPluginHandler lph = new LaunchPluginHandler(layerHandler);
+        Whitebox.invokeMethod(transformStore, "addTransformer", new TransformTargetLabel("test.DummyClass", "dummyfield"), fieldTransformer(transformCount), new MockTransformerService());
+
+        final byte[] input = dummyClass();
+
+        final TransformerAuditTrail firstTrail = new TransformerAuditTrail();
+        final byte[] first = Whitebox.invokeMethod(newClassTransformer(cacheRoot, transformStore, lph, firstTrail), "transform", new Class[]{byte[].class, String.class, String.class}, input, "test.DummyClass", ITransformerActivity.CLASSLOADING_REASON);
+        final TransformerAuditTrail secondTrail = new TransformerAuditTrail();
+        final byte[] second = Whitebox.invokeMethod(newClassTransformer(cacheRoot, transformStore, lph, secondTrail), "transform", new Class[]{byte[].class, String.class, String.class}, input, "test.DummyClass", ITransformerActivity.CLASSLOADING_REASON);
+
+        assertAll("Second launch is served from the cache",
+                () -> assertEquals(1, transformCount.get()),
+                () -> assertArrayEquals(first, second),
+                () -> assertEquals(firstTrail.getAuditString("test.DummyClass"), secondTrail.getAuditString("test.DummyClass")),
+                () -> {
+                    ClassNode cn = new ClassNode();
+                    new ClassReader(second).accept(cn, 0);
+                    assertEquals("CHEESE", cn.fields.get(0).value);
+                }
+        );
+
+        // Other reasons are never cached
+        Whitebox.invokeMethod(newClassTransformer(cacheRoot, transformStore, lph, new TransformerAuditTrail()), "transform", new Class[]{byte[].class, String.class, String.class}, input, "test.DummyClass", ITransformerActivity.COMPUTING_FRAMES_REASON);
+        assertEquals(2, transformCount.get());
+    }
+
+    @Test
+    void testComputedFramesFollowGameModules(@TempDir Path cacheRoot) throws Exception {
+        final AtomicInteger transformCount = new AtomicInteger();
+        final TransformStore transformStore = new TransformStore();
+        final ModuleLayerHandler layerHandler = Whitebox.invokeConstructor(ModuleLayerHandler.class);
+        final LaunchPluginHandler lph = new LaunchPluginHandler(layerHandler);
+        Whitebox.invokeMethod(transformStore, "addTransformer", new TransformTargetLabel("test.DummyClass", "dummyfield"), fieldTransformer(transformCount), new MockTransformerService());
+        final byte[] input = dummyClass();
+
+        transform(newClassTransformer(cacheRoot, transformStore, lph, new TransformerAuditTrail(), "modules-a"), input);
+        transform(newClassTransformer(cacheRoot, transformStore, lph, new TransformerAuditTrail(), "modules-a"), input);
+        assertEquals(1, transformCount.get(), "Same game modules are served from the cache");
+        transform(newClassTransformer(cacheRoot, transformStore, lph, new TransformerAuditTrail(), "modules-b"), input);
+        assertEquals(2, transformCount.get(), "Changed game modules miss the cache");
+        final Optional<?> unfingerprinted = (Optional<?>) Whitebox.getMethod(Class.forName("cpw.mods.modlauncher.TransformCache"), "open", Path.class, TransformStore.class, LaunchPluginHandler.class, String.class).invoke(null, cacheRoot, transformStore, lph, null);
+        assertTrue(unfingerprinted.isEmpty(), "Nothing is cached without a game module fingerprint");
+
+        // let the stale cache cleanup finish before the directory is deleted
+        for (Thread thread : Thread.getAllStackTraces().keySet()) {
+            if (thread.getName().equals("ModLauncher transform cache cleanup")) thread.join();
+        }
+    }
+
+    @Test
+    void testPluginHandledClassesAreNotCached(@TempDir Path cacheRoot) throws Exception {
+        final AtomicInteger transformCount = new AtomicInteger();
+        final AtomicInteger processCount = new AtomicInteger();
+        final TransformStore transformStore = new TransformStore();
+        final LaunchPluginHandler lph = new LaunchPluginHandler(Stream.of(new ILaunchPluginService() {
+            @Override
+            public String name() {
+                return "counting";
+            }
+
+            @Override
+            public EnumSet<Phase> handlesClass(Type classType, boolean isEmpty) {
+                return EnumSet.of(Phase.AFTER);
+            }
+
+            @Override
+            public boolean processClass(Phase phase, ClassNode classNode, Type classType) {
+                processCount.incrementAndGet();
+                return false;
+            }
+        }));
+        Whitebox.invokeMethod(transformStore, "addTransformer", new TransformTargetLabel("test.DummyClass", "dummyfield"), fieldTransformer(transformCount), new MockTransformerService());
+        final byte[] input = dummyClass();
+
+        transform(newClassTransformer(cacheRoot, transformStore, lph, new TransformerAuditTrail()), input);
+        transform(newClassTransformer(cacheRoot, transformStore, lph, new TransformerAuditTrail()), input);
+        assertAll("The plugin is offered the class on every launch",
+                () -> assertEquals(2, processCount.get()),
+                () -> assertEquals(2, transformCount.get())
+        );
+    }
+
+    private static byte[] dummyClass() {
+        ClassNode dummyClass = new ClassNode();
+        dummyClass.superName = "java/lang/Object";
+        dummyClass.version = 52;
+        dummyClass.name = "test/DummyClass";
+        dummyClass.fields.add(new FieldNode(Opcodes.ACC_PUBLIC, "dummyfield", "Ljava/lang/String;", null, null));
+        ClassWriter cw = new ClassWriter(Opcodes.ASM5);
+        dummyClass.accept(cw);
+        return cw.toByteArray();
+    }
+
+    private static void transform(final ClassTransformer classTransformer, final byte[] input) throws Exception {
+        Whitebox.invokeMethod(classTransformer, "transform", new Class[]{byte[].class, String.class, String.class}, input, "test.DummyClass", ITransformerActivity.CLASSLOADING_REASON);
+    }
+
+    private static ClassTransformer newClassTransformer(final Path cacheRoot, final TransformStore transformStore, final LaunchPluginHandler lph, final TransformerAuditTrail tat) throws Exception {
+        return newClassTransformer(cacheRoot, transformStore, lph, tat, "modules");
+    }
+
+    private static ClassTransformer newClassTransformer(final Path cacheRoot, final TransformStore transformStore, final LaunchPluginHandler lph, final TransformerAuditTrail tat, final String hierarchyKey) throws Exception {
+        final Class<?> cacheClass = Class.forName("cpw.mods.modlauncher.TransformCache");
+        final Optional<?> cache = (Optional<?>) Whitebox.getMethod(cacheClass, "open", Path.class, TransformStore.class, LaunchPluginHandler.class, String.class).invoke(null, cacheRoot, transformStore, lph, hierarchyKey);
+        assertTrue(cache.isPresent());
+        return Whitebox.invokeConstructor(ClassTransformer.class, new Class[] { TransformStore.class, LaunchPluginHandler.class, TransformingClassLoader.class, TransformerAuditTrail.class, cacheClass }, new Object[] { transformStore, lph, null, tat, cache.get() });
+    }
+
+    private static ITransformer<FieldNode> fieldTransformer(final AtomicInteger transformCount) {
+        return new ITransformer<>() {
+            @NotNull
+            @Override
+            public FieldNode transform(FieldNode input, ITransformerVotingContext context) {
+                transformCount.incrementAndGet();
+                input.value = "CHEESE";
+                return input;
+            }
+
+            @NotNull
+            @Override
+            public TransformerVoteResult castVote(ITransformerVotingContext context) {
+                return TransformerVoteResult.YES;
+            }
+
+            @NotNull
+            @Override
+            public Set<Target<FieldNode>> targets() {
+                return Collections.emptySet();
+            }
+
+            @Override
+            public TargetType<FieldNode> getTargetType() {
+                return TargetType.FIELD;
+            }
+        };
+    }
+}
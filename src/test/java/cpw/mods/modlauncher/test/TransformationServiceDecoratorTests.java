@@ -37,6 +37,9 @@ import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
 import static org.junit.jupiter.api.Assertions.assertAll;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 class TransformationServiceDecoratorTests {
@@ -68,6 +71,60 @@ class TransformationServiceDecoratorTests {
         );
     }
 
+    @Test
+    void testMemberLookupsUseClassIndex() throws Exception {
+        MockTransformerService mockTransformerService = new MockTransformerService() {
+            @NotNull
+            @Override
+            public List<? extends ITransformer<?>> transformers() {
+                return Stream.of(classNodeTransformer, methodNodeTransformer).collect(Collectors.toList());
+            }
+        };
+        TransformStore store = new TransformStore();
+        TransformationServiceDecorator sd = Whitebox.invokeConstructor(TransformationServiceDecorator.class, mockTransformerService);
+        sd.gatherTransformers(store);
+
+        final List<?> targeted = Whitebox.invokeMethod(store, "getTransformersFor", new Class[] { String.class, String.class, String.class }, "cheesy.PuffMethod", "fish", "()V");
+        final List<?> otherDesc = Whitebox.invokeMethod(store, "getTransformersFor", new Class[] { String.class, String.class, String.class }, "cheesy.PuffMethod", "fish", "()I");
+        final List<?> otherClass = Whitebox.invokeMethod(store, "getTransformersFor", new Class[] { String.class, String.class, String.class }, "cheese.Puffs", "fish", "()V");
+        final List<?> classTransformers = Whitebox.invokeMethod(store, "getTransformersFor", new Class[] { String.class, TargetType.class }, "cheese.Puffs", TargetType.CLASS);
+        final List<?> preClassTransformers = Whitebox.invokeMethod(store, "getTransformersFor", new Class[] { String.class, TargetType.class }, "cheese.Puffs", TargetType.PRE_CLASS);
+        Map<TargetType<?>, TransformList<?>> transformers = Whitebox.getInternalState(store, "transformers");
+        assertAll(
+                () -> assertEquals(1, targeted.size(), "targeted method is found"),
+                () -> assertTrue(otherDesc.isEmpty(), "method with another descriptor is not targeted"),
+                () -> assertTrue(otherClass.isEmpty(), "method in another class is not targeted"),
+                () -> assertEquals(1, classTransformers.size(), "class transformer is found"),
+                () -> assertTrue(preClassTransformers.isEmpty(), "no pre class transformer"),
+                () -> assertEquals(1, getTransformers(transformers.get(TargetType.METHOD)).size(), "lookups do not add labels")
+        );
+    }
+
+    @Test
+    void testFrozenStoreLookups() throws Exception {
+        MockTransformerService mockTransformerService = new MockTransformerService() {
+            @NotNull
+            @Override
+            public List<? extends ITransformer<?>> transformers() {
+                return Stream.of(classNodeTransformer, methodNodeTransformer).collect(Collectors.toList());
+            }
+        };
+        TransformStore store = new TransformStore();
+        TransformationServiceDecorator sd = Whitebox.invokeConstructor(TransformationServiceDecorator.class, mockTransformerService);
+        sd.gatherTransformers(store);
+        Whitebox.invokeMethod(store, "freeze");
+
+        final List<?> targeted = Whitebox.invokeMethod(store, "getTransformersFor", new Class[] { String.class, String.class, String.class }, "cheesy.PuffMethod", "fish", "()V");
+        final List<?> classTransformers = Whitebox.invokeMethod(store, "getTransformersFor", new Class[] { String.class, TargetType.class }, "cheese.Puffs", TargetType.CLASS);
+        assertAll(
+                () -> assertEquals(1, targeted.size(), "targeted method is found"),
+                () -> assertEquals(1, classTransformers.size(), "class transformer is found"),
+                () -> assertTrue((Boolean) Whitebox.invokeMethod(store, "needsTransforming", "cheese/Puffs"), "targeted class needs transforming"),
+                () -> assertFalse((Boolean) Whitebox.invokeMethod(store, "needsTransforming", "cheese/Other"), "untargeted class does not need transforming"),
+                () -> assertThrows(IllegalStateException.class, () -> sd.gatherTransformers(store), "frozen store rejects transformers")
+        );
+    }
+
     private static <T> Map<TransformTargetLabel, List<ITransformer<T>>> getTransformers(TransformList<T> list) {
         try {
             return Whitebox.invokeMethod(list, "getTransformers");
@@ -0,0 +1,103 @@
+/*
+ * ModLauncher - for launching Java programs with in-flight transformation ability.
+ *
+ *     Copyright (C) 2017-2019 cpw
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Lesser General Public License as published by
+ *     the Free Software Foundation, version 3 of the License.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Lesser General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Lesser General Public License
+ *     along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package cpw.mods.modlauncher.test;
+
+import cpw.mods.modlauncher.*;
+import cpw.mods.modlauncher.api.*;
+import org.jetbrains.annotations.NotNull;
+import org.junit.jupiter.api.Test;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.tree.ClassNode;
+import org.objectweb.asm.tree.FieldNode;
+import org.powermock.reflect.Whitebox;
+
+import javax.management.JMX;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Test the transformation statistics MBean
+ */
+class TransformationStatisticsTests {
+    @Test
+    void testStatisticsMBean() throws Exception {
+        final TransformStore transformStore = new TransformStore();
+        final ModuleLayerHandler layerHandler = Whitebox.invokeConstructor(ModuleLayerHandler.class);
+        final LaunchPluginHandler lph = new LaunchPluginHandler(layerHandler);
+        final ClassTransformer classTransformer = Whitebox.invokeConstructor(ClassTransformer.class, new Class[] { TransformStore.class, LaunchPluginHandler.class, TransformingClassLoader.class }, new Object[] { transformStore, lph, null });
+        Whitebox.invokeMethod(transformStore, "addTransformer", new TransformTargetLabel("test.DummyClass", "dummyfield"), new FieldTransformer(), new MockTransformerService());
+
+        ClassNode dummyClass = new ClassNode();
+        dummyClass.superName = "java/lang/Object";
+        dummyClass.version = 52;
+        dummyClass.name = "test/DummyClass";
+        dummyClass.fields.add(new FieldNode(Opcodes.ACC_PUBLIC, "dummyfield", "Ljava/lang/String;", null, null));
+        ClassWriter cw = new ClassWriter(Opcodes.ASM5);
+        dummyClass.accept(cw);
+        final byte[] input = cw.toByteArray();
+        final byte[] output = Whitebox.invokeMethod(classTransformer, "transform", new Class[]{byte[].class, String.class, String.class}, input, "test.DummyClass", ITransformerActivity.CLASSLOADING_REASON);
+
+        final Object statistics = Whitebox.invokeConstructor(Class.forName("cpw.mods.modlauncher.TransformationStatistics"), new Class[] { TransformStore.class, ClassTransformer.class }, new Object[] { transformStore, classTransformer });
+        Whitebox.invokeMethod(statistics, "register");
+        final TransformationStatisticsMXBean bean = JMX.newMXBeanProxy(ManagementFactory.getPlatformMBeanServer(), new ObjectName("cpw.mods.modlauncher:type=TransformationStatistics"), TransformationStatisticsMXBean.class);
+        assertAll("Statistics are readable over JMX",
+                () -> assertEquals(1, bean.getTransformedClassCount()),
+                () -> assertEquals(Map.of(ITransformerActivity.CLASSLOADING_REASON, 1L), bean.getTransformedClassCountByReason()),
+                () -> assertEquals(input.length, bean.getBytesIn()),
+                () -> assertEquals(output.length, bean.getBytesOut()),
+                () -> assertEquals(1, bean.getAuditTrailClassCount()),
+                () -> assertEquals(2, bean.getAuditTrailEntryCount()),
+                () -> assertEquals(1, bean.getTransformerCounts().get("FIELD")),
+                () -> assertEquals(0, bean.getTransformerCounts().get("CLASS")),
+                () -> assertTrue(bean.dumpSlowestClasses(5).get(0).startsWith("test.DummyClass (classloading)"))
+        );
+        bean.clearHierarchyCache();
+        assertEquals(0, bean.getHierarchyCacheSize());
+    }
+
+    private static class FieldTransformer implements ITransformer<FieldNode> {
+        @NotNull
+        @Override
+        public FieldNode transform(FieldNode input, ITransformerVotingContext context) {
+            input.value = "CHEESE";
+            return input;
+        }
+
+        @NotNull
+        @Override
+        public TransformerVoteResult castVote(ITransformerVotingContext context) {
+            return TransformerVoteResult.YES;
+        }
+
+        @NotNull
+        @Override
+        public Set<Target<FieldNode>> targets() {
+            return Collections.emptySet();
+        }
+
+        @Override
+        public TargetType<FieldNode> getTargetType() {
+            return TargetType.FIELD;
+        }
+    }
+}
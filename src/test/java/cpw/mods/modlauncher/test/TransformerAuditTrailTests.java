@@ -0,0 +1,207 @@
+/*
+ * ModLauncher - for launching Java programs with in-flight transformation ability.
+ *
+ *     Copyright (C) 2017-2019 cpw
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU Lesser General Public License as published by
+ *     the Free Software Foundation, version 3 of the License.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU Lesser General Public License for more details.
+ *
+ *     You should have received a copy of the GNU Lesser General Public License
+ *     along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package cpw.mods.modlauncher.test;
+
+import cpw.mods.modlauncher.ArgumentHandler;
+import cpw.mods.modlauncher.Environment;
+import cpw.mods.modlauncher.Launcher;
+import cpw.mods.modlauncher.TransformerAuditTrail;
+import cpw.mods.modlauncher.api.ITransformationService;
+import cpw.mods.modlauncher.api.ITransformer;
+import cpw.mods.modlauncher.api.ITransformerActivity;
+import cpw.mods.modlauncher.api.ITransformerVotingContext;
+import cpw.mods.modlauncher.api.TargetType;
+import cpw.mods.modlauncher.api.TransformerVoteResult;
+import cpw.mods.modlauncher.serviceapi.ILaunchPluginService;
+import joptsimple.OptionException;
+import joptsimple.OptionParser;
+import joptsimple.OptionSet;
+import org.jetbrains.annotations.NotNull;
+import org.junit.jupiter.api.Test;
+import org.objectweb.asm.Type;
+import org.objectweb.asm.tree.ClassNode;
+import org.powermock.reflect.Whitebox;
+
+import java.util.*;
+import java.util.function.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Test the audit trail of class activities
+ */
+class TransformerAuditTrailTests {
+    @Test
+    void testConcurrentAppends() throws Exception {
+        final TransformerAuditTrail auditTrail = new TransformerAuditTrail();
+        final List<ITransformerActivity> activities = auditTrail.getActivityFor("test.Shared");
+        final List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 8; t++) {
+            final String reason = "reason" + t;
+            threads.add(new Thread(() -> {
+                for (int i = 0; i < 1000; i++) {
+                    auditTrail.addReason("test.Shared", reason);
+                }
+            }));
+        }
+        threads.forEach(Thread::start);
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(8000, activities.size(), "The view sees every appended activity");
+        assertEquals(8, activities.stream().map(ITransformerActivity::getActivityString).distinct().count());
+        assertTrue(auditTrail.getActivityFor("test.Missing").isEmpty());
+    }
+
+    @Test
+    void testTransformedOnlyRetention() throws Exception {
+        final TransformerAuditTrail auditTrail = new TransformerAuditTrail(TransformerAuditTrail.Retention.TRANSFORMED_ONLY);
+        auditTrail.addReason("test.Plain", ITransformerActivity.CLASSLOADING_REASON);
+        auditTrail.addReason("test.Transformed", ITransformerActivity.CLASSLOADING_REASON);
+        auditTrail.addTransformerAuditTrail("test.Transformed", new MockTransformerService(), new LabelledTransformer());
+        Whitebox.invokeMethod(auditTrail, "classProcessed", "test.Plain");
+        Whitebox.invokeMethod(auditTrail, "classProcessed", "test.Transformed");
+
+        assertAll("Only transformed classes keep their activities",
+                () -> assertTrue(auditTrail.getActivityFor("test.Plain").isEmpty()),
+                () -> assertEquals("re:classloading,xf:test:mock", auditTrail.getAuditString("test.Transformed"))
+        );
+    }
+
+    @Test
+    void testViewFollowsReplacedTrail() throws Exception {
+        final TransformerAuditTrail auditTrail = new TransformerAuditTrail(TransformerAuditTrail.Retention.TRANSFORMED_ONLY);
+        final List<ITransformerActivity> view = auditTrail.getActivityFor("test.Reloaded");
+        auditTrail.addReason("test.Reloaded", ITransformerActivity.COMPUTING_FRAMES_REASON);
+        assertEquals(1, view.size());
+        Whitebox.invokeMethod(auditTrail, "classProcessed", "test.Reloaded");
+        assertTrue(view.isEmpty(), "View sees the trail dropped");
+        auditTrail.addReason("test.Reloaded", ITransformerActivity.CLASSLOADING_REASON);
+        auditTrail.addTransformerAuditTrail("test.Reloaded", new MockTransformerService(), new LabelledTransformer());
+        assertAll("View sees the new trail",
+                () -> assertEquals(2, view.size()),
+                () -> assertEquals(ITransformerActivity.CLASSLOADING_REASON, view.get(0).getContext()[0])
+        );
+    }
+
+    @Test
+    void testRingRetention() throws Exception {
+        final TransformerAuditTrail auditTrail = Whitebox.invokeMethod(TransformerAuditTrail.class, "forPolicy", "ring:2");
+        auditTrail.addReason("test.First", ITransformerActivity.CLASSLOADING_REASON);
+        auditTrail.addReason("test.Second", ITransformerActivity.CLASSLOADING_REASON);
+        auditTrail.addReason("test.First", ITransformerActivity.COMPUTING_FRAMES_REASON);
+        auditTrail.addReason("test.Third", ITransformerActivity.CLASSLOADING_REASON);
+
+        assertAll("Only the most recent classes keep their activities",
+                () -> assertTrue(auditTrail.getActivityFor("test.First").isEmpty()),
+                () -> assertEquals("re:classloading", auditTrail.getAuditString("test.Second")),
+                () -> assertEquals("re:classloading", auditTrail.getAuditString("test.Third"))
+        );
+    }
+
+    @Test
+    void testOffRetention() throws Exception {
+        final TransformerAuditTrail auditTrail = Whitebox.invokeMethod(TransformerAuditTrail.class, "forPolicy", "off");
+        auditTrail.addReason("test.Transformed", ITransformerActivity.CLASSLOADING_REASON);
+        auditTrail.addTransformerAuditTrail("test.Transformed", new MockTransformerService(), new LabelledTransformer());
+
+        assertAll("Nothing is recorded",
+                () -> assertTrue(auditTrail.getActivityFor("test.Transformed").isEmpty()),
+                () -> assertEquals("", auditTrail.getAuditString("test.Transformed")),
+                () -> assertThrows(IllegalArgumentException.class, () -> Whitebox.invokeMethod(TransformerAuditTrail.class, "forPolicy", "ring:none")),
+                () -> assertThrows(IllegalArgumentException.class, () -> Whitebox.invokeMethod(TransformerAuditTrail.class, "forPolicy", "sometimes"))
+        );
+    }
+
+    @Test
+    void testRecordingSurvivesEviction() throws Exception {
+        final TransformerAuditTrail auditTrail = Whitebox.invokeMethod(TransformerAuditTrail.class, "forPolicy", "ring:1");
+        final Object recording = Whitebox.invokeMethod(auditTrail, "record", "test.Outer");
+        auditTrail.addReason("test.Outer", ITransformerActivity.CLASSLOADING_REASON);
+        auditTrail.addTransformerAuditTrail("test.Outer", new MockTransformerService(), new LabelledTransformer());
+        // a class loaded for frame computation pushes the outer class out of the ring
+        final Object nested = Whitebox.invokeMethod(auditTrail, "record", "test.Nested");
+        auditTrail.addReason("test.Nested", ITransformerActivity.COMPUTING_FRAMES_REASON);
+        auditTrail.addPluginAuditTrail("test.Nested", new NamedPlugin(), ILaunchPluginService.Phase.BEFORE);
+        Whitebox.invokeMethod(nested, "close");
+        auditTrail.addPluginAuditTrail("test.Outer", new NamedPlugin(), ILaunchPluginService.Phase.AFTER);
+        final List<ITransformerActivity> outer = Whitebox.invokeMethod(recording, "activities");
+        final List<ITransformerActivity> inner = Whitebox.invokeMethod(nested, "activities");
+        Whitebox.invokeMethod(recording, "close");
+
+        assertAll("Recordings keep their own class's transformation activities",
+                () -> assertEquals(List.of("xf:test:mock", "pl:named:A"), outer.stream().map(ITransformerActivity::getActivityString).toList()),
+                () -> assertEquals(List.of("pl:named:B"), inner.stream().map(ITransformerActivity::getActivityString).toList()),
+                () -> assertEquals("pl:named:A", auditTrail.getAuditString("test.Outer"))
+        );
+    }
+
+    @Test
+    void testInvalidPolicyArgument() throws Exception {
+        final ArgumentHandler argumentHandler = new ArgumentHandler();
+        Whitebox.invokeMethod(argumentHandler, "setArgs", (Object) new String[] { "--auditTrail", "sometimes" });
+        // a new environment would replace the keys of a running launcher's one
+        final Environment environment = Launcher.INSTANCE != null ? Launcher.INSTANCE.environment() : Whitebox.invokeConstructor(Environment.class, new Class[]{ Launcher.class }, new Object[]{ null });
+        final Consumer<OptionParser> parserConsumer = parser -> {};
+        final BiConsumer<OptionSet, BiFunction<String, OptionSet, ITransformationService.OptionResult>> resultConsumer = (options, results) -> {};
+        assertThrows(OptionException.class, () -> Whitebox.invokeMethod(argumentHandler, "processArguments", environment, parserConsumer, resultConsumer));
+    }
+
+    private static class NamedPlugin implements ILaunchPluginService {
+        @Override
+        public String name() {
+            return "named";
+        }
+
+        @Override
+        public EnumSet<Phase> handlesClass(Type classType, boolean isEmpty) {
+            return EnumSet.noneOf(Phase.class);
+        }
+    }
+
+    private static class LabelledTransformer implements ITransformer<ClassNode> {
+        @NotNull
+        @Override
+        public ClassNode transform(ClassNode input, ITransformerVotingContext context) {
+            return input;
+        }
+
+        @NotNull
+        @Override
+        public TransformerVoteResult castVote(ITransformerVotingContext context) {
+            return TransformerVoteResult.YES;
+        }
+
+        @NotNull
+        @Override
+        public Set<Target<ClassNode>> targets() {
+            return Collections.emptySet();
+        }
+
+        @Override
+        public TargetType<ClassNode> getTargetType() {
+            return TargetType.CLASS;
+        }
+
+        @Override
+        public String[] labels() {
+            return new String[] { "mock" };
+        }
+    }
+}
@@ -23,30 +23,154 @@ import cpw.mods.jarhandling.SecureJar;
 import cpw.mods.modlauncher.*;
 import cpw.mods.modlauncher.api.IEnvironment;
 import cpw.mods.modlauncher.api.ITransformer;
+import cpw.mods.modlauncher.api.ITransformerActivity;
+import cpw.mods.modlauncher.api.ITransformerAuditTrail;
 import cpw.mods.modlauncher.api.TypesafeMap;
+import cpw.mods.modlauncher.serviceapi.ClassClaims;
+import cpw.mods.modlauncher.serviceapi.ILaunchPluginService;
 import org.jetbrains.annotations.NotNull;
 import org.junit.jupiter.api.Test;
+import org.objectweb.asm.Type;
+import org.objectweb.asm.tree.ClassNode;
 import org.powermock.reflect.Whitebox;
 
 import java.lang.module.Configuration;
 import java.lang.module.ModuleFinder;
 import java.lang.reflect.Constructor;
 import java.nio.file.Path;
+import java.util.EnumSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
-import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.*;
 
 /**
  * Test class loader
  */
 class TransformingClassLoaderTests {
     private static final String TARGET_CLASS = "cpw.mods.modlauncher.testjar.TestClass";
+    private static final String CLAIMED_CLASS = "cpw.mods.modlauncher.testjar.TestServiceLoader";
 
     @Test
     void testClassLoader() throws Exception {
+        Configuration configuration = createTestJarsConfiguration();
+        TransformingClassLoader tcl = createTransformingClassLoader(configuration, Whitebox.invokeConstructor(Environment.class, new Class[]{ Launcher.class }, new Object[]{ null }));
+        ModuleLayer.boot().defineModules(configuration, s -> tcl);
+
+        final Class<?> aClass = Class.forName(TARGET_CLASS, true, tcl);
+        assertEquals(Whitebox.getField(aClass, "testfield").getType(), String.class);
+        assertEquals(Whitebox.getField(aClass, "testfield").get(null), "CHEESE!");
+
+        final Class<?> newClass = tcl.loadClass(TARGET_CLASS);
+        assertEquals(aClass, newClass, "Class instance is the same from Class.forName and tcl.loadClass");
+    }
+
+    @Test
+    void testPretransformedClassLoader() throws Exception {
+        Configuration configuration = createTestJarsConfiguration();
+        Environment environment = Whitebox.invokeConstructor(Environment.class, new Class[]{ Launcher.class }, new Object[]{ null });
+        TransformingClassLoader tcl = createTransformingClassLoader(configuration, environment);
+        ModuleLayer.boot().defineModules(configuration, s -> tcl);
+        ITransformerAuditTrail auditTrail = environment.getProperty(IEnvironment.Keys.AUDITTRAIL.get()).orElseThrow();
+
+        Whitebox.invokeMethod(tcl, "pretransformClasses", configuration, 2);
+        final Object pretransformer = Whitebox.getInternalState(tcl, "pretransformer");
+        final Map<String, ?> parked = Whitebox.getInternalState(pretransformer, "parked");
+        assertAll("Pretransforming leaves no trace until the class is loaded",
+                () -> assertTrue(parked.containsKey(TARGET_CLASS)),
+                () -> assertTrue(auditTrail.getActivityFor(TARGET_CLASS).isEmpty())
+        );
+
+        final Class<?> aClass = Class.forName(TARGET_CLASS, true, tcl);
+        assertEquals(Whitebox.getField(aClass, "testfield").get(null), "CHEESE!");
+        assertAll("The pretransformed class is accounted for when loaded",
+                () -> assertTrue(parked.isEmpty()),
+                () -> assertEquals(1, auditTrail.getActivityFor(TARGET_CLASS).stream().filter(a -> a.getType() == ITransformerActivity.Type.REASON).count(), "Class was not transformed again when loaded"),
+                () -> assertEquals(1, auditTrail.getActivityFor(TARGET_CLASS).stream().filter(a -> a.getType() == ITransformerActivity.Type.TRANSFORMER).count())
+        );
+    }
+
+    @Test
+    void testStalePretransformedClassDiscarded() throws Exception {
+        Configuration configuration = createTestJarsConfiguration();
+        Environment environment = Whitebox.invokeConstructor(Environment.class, new Class[]{ Launcher.class }, new Object[]{ null });
+        TransformingClassLoader tcl = createTransformingClassLoader(configuration, environment);
+        Whitebox.invokeMethod(tcl, "pretransformClasses", configuration, 1);
+        final Object pretransformer = Whitebox.getInternalState(tcl, "pretransformer");
+        final Map<String, ?> parked = Whitebox.getInternalState(pretransformer, "parked");
+        final Object parkedClass = parked.get(TARGET_CLASS);
+        assertNotNull(parkedClass);
+        final byte[] other = ((byte[]) Whitebox.getInternalState(parkedClass, "bytes")).clone();
+        other[other.length - 1]++;
+        assertNull(Whitebox.invokeMethod(pretransformer, "take", TARGET_CLASS, other), "Parked class is only handed out for the bytes it was made from");
+        assertTrue(parked.isEmpty());
+    }
+
+    @Test
+    void testClaimedClassesPretransformed() throws Exception {
+        Configuration configuration = createTestJarsConfiguration();
+        Environment environment = Whitebox.invokeConstructor(Environment.class, new Class[]{ Launcher.class }, new Object[]{ null });
+        AtomicInteger processed = new AtomicInteger();
+        LaunchPluginHandler lph = new LaunchPluginHandler(Stream.of(new ILaunchPluginService() {
+            @Override
+            public String name() {
+                return "claiming";
+            }
+
+            @Override
+            public EnumSet<Phase> handlesClass(Type classType, boolean isEmpty) {
+                return EnumSet.noneOf(Phase.class);
+            }
+
+            @Override
+            public Optional<ClassClaims> classClaims() {
+                return Optional.of(new ClassClaims().claim(Phase.AFTER, CLAIMED_CLASS));
+            }
+
+            @Override
+            public boolean processClass(Phase phase, ClassNode classNode, Type classType) {
+                processed.incrementAndGet();
+                return false;
+            }
+        }));
+        TransformingClassLoader tcl = createTransformingClassLoader(configuration, environment, lph);
+        Whitebox.invokeMethod(tcl, "pretransformClasses", configuration, 1);
+        final Map<String, ?> parked = Whitebox.getInternalState(Whitebox.getInternalState(tcl, "pretransformer"), "parked");
+        assertAll("Claimed classes are pretransformed along with the targeted ones",
+                () -> assertTrue(parked.containsKey(CLAIMED_CLASS)),
+                () -> assertTrue(parked.containsKey(TARGET_CLASS)),
+                () -> assertEquals(1, processed.get())
+        );
+    }
+
+    @Test
+    void testIdlePretransformedClassesReleased() throws Exception {
+        Configuration configuration = createTestJarsConfiguration();
+        Environment environment = Whitebox.invokeConstructor(Environment.class, new Class[]{ Launcher.class }, new Object[]{ null });
+        TransformingClassLoader tcl = createTransformingClassLoader(configuration, environment);
+        final Object pretransformer = Whitebox.invokeConstructor(Class.forName("cpw.mods.modlauncher.ClassPretransformer"), new Class[]{ ClassTransformer.class, long.class, long.class }, new Object[]{ Whitebox.getInternalState(tcl, "classTransformer"), Long.MAX_VALUE, 50L });
+        Whitebox.invokeMethod(pretransformer, "pretransform", configuration, tcl, 1);
+        final Map<String, ?> parked = Whitebox.getInternalState(pretransformer, "parked");
+        assertFalse(parked.isEmpty());
+        final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!parked.isEmpty() && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        assertTrue(parked.isEmpty(), "Parked classes are released once none are taken for a while");
+    }
+
+    private TransformingClassLoader createTransformingClassLoader(Configuration configuration, Environment environment) throws Exception {
+        ModuleLayerHandler layerHandler = Whitebox.invokeConstructor(ModuleLayerHandler.class);
+        return createTransformingClassLoader(configuration, environment, new LaunchPluginHandler(layerHandler));
+    }
+
+    private TransformingClassLoader createTransformingClassLoader(Configuration configuration, Environment environment, LaunchPluginHandler lph) throws Exception {
         MockTransformerService mockTransformerService = new MockTransformerService() {
             @NotNull
             @Override
@@ -56,24 +180,12 @@ class TransformingClassLoaderTests {
         };
 
         TransformStore transformStore = new TransformStore();
-        ModuleLayerHandler layerHandler = Whitebox.invokeConstructor(ModuleLayerHandler.class);
-        LaunchPluginHandler lph = new LaunchPluginHandler(layerHandler);
         TransformationServiceDecorator sd = Whitebox.invokeConstructor(TransformationServiceDecorator.class, mockTransformerService);
         sd.gatherTransformers(transformStore);
         
-        Environment environment = Whitebox.invokeConstructor(Environment.class, new Class[]{ Launcher.class }, new Object[]{ null });
         new TypesafeMap(IEnvironment.class);
         Constructor<TransformingClassLoader> constructor = Whitebox.getConstructor(TransformingClassLoader.class, TransformStore.class, LaunchPluginHandler.class, Environment.class, Configuration.class, List.class);
-        Configuration configuration = createTestJarsConfiguration();
-        TransformingClassLoader tcl = constructor.newInstance(transformStore, lph, environment, configuration, List.of(ModuleLayer.boot()));
-        ModuleLayer.boot().defineModules(configuration, s -> tcl);
-        
-        final Class<?> aClass = Class.forName(TARGET_CLASS, true, tcl);
-        assertEquals(Whitebox.getField(aClass, "testfield").getType(), String.class);
-        assertEquals(Whitebox.getField(aClass, "testfield").get(null), "CHEESE!");
-
-        final Class<?> newClass = tcl.loadClass(TARGET_CLASS);
-        assertEquals(aClass, newClass, "Class instance is the same from Class.forName and tcl.loadClass");
+        return constructor.newInstance(transformStore, lph, environment, configuration, List.of(ModuleLayer.boot()));
     }
     
     private Configuration createTestJarsConfiguration() {
@@ -11,6 +11,8 @@ open module cpw.mods.modlauncher.test {
     requires org.apache.logging.log4j;
     requires org.apache.logging.log4j.core;
     requires jopt.simple;
+    requires jdk.jfr;
+    requires java.management;
     requires static org.jetbrains.annotations;
 
     exports cpw.mods.modlauncher.test;